@@ -0,0 +1,119 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Scoring resources, model and corpus shared by the benchmarks of one fork,
+ * loaded once per trial. The paths are JMH parameters and default to the
+ * files the filter itself uses in the working directory:
+ * <pre>
+ * -p dictionary=dict.txt -p model=model.bin -p lm=big_test.arpa -p spellDict=words.utf-8.txt
+ * </pre>
+ * Without -p english and -p turkish the corpus is the synthetic one of
+ * {@link PipelineBenchmark}, made from the dictionary with a fixed seed, so
+ * the benchmarks need nothing but the resources.
+ *
+ * Every stage gets the input it has in the filter: the raw pairs, the
+ * normalized ones, the ones that pass the initial filter, the spell checker
+ * text of those, and their feature vectors.
+ *
+ * @author Eray
+ */
+@State(Scope.Benchmark)
+public class BenchmarkCorpus {
+    @Param("dict.txt")
+    public String dictionary;
+    @Param("model.bin")
+    public String model;
+    @Param(ScoringResources.DEFAULT_LM_FILE)
+    public String lm;
+    @Param(ScoringResources.DEFAULT_SPELL_DICTIONARY)
+    public String spellDict;
+    @Param("")
+    public String english;
+    @Param("")
+    public String turkish;
+    @Param("2000")
+    public int pairs;
+
+    ScoringResources resources;
+    QualityModel qualityModel;
+    FeatureExtractor extractor;
+    PairProcessor processor;
+    List<SentencePair> corpus;
+    List<String[]> normalized;
+    List<String[]> scored;
+    List<String> spellInput;
+    List<double[]> vectors;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception
+    {
+        resources = ScoringResources.load(dictionary, lm, spellDict);
+        qualityModel = QualityModel.open(model);
+        if(english.isEmpty())
+        {
+            corpus = PipelineBenchmark.syntheticCorpus(resources.getDictionary(), pairs, 42);
+        }
+        else
+        {
+            corpus = new ArrayList<>();
+            try (PairSource source = new ReaderPairSource(new File(english), new File(turkish)))
+            {
+                List<SentencePair> batch;
+                while(corpus.size() < pairs && !(batch = source.nextBatch(Math.min(256, pairs - corpus.size()))).isEmpty())
+                {
+                    corpus.addAll(batch);
+                }
+            }
+        }
+        extractor = new FeatureExtractor(resources);
+        processor = new PairProcessor(extractor, qualityModel);
+        normalized = new ArrayList<>();
+        scored = new ArrayList<>();
+        spellInput = new ArrayList<>();
+        vectors = new ArrayList<>();
+        SentenceNormalizer normalizer = new SentenceNormalizer();
+        for(SentencePair pair : corpus)
+        {
+            String[] sentences = {normalizer.normalize(pair.getEnglish()), normalizer.normalize(pair.getTurkish())};
+            normalized.add(sentences);
+            if(ParallelSentenceClassifier.initialFilter(sentences[0], sentences[1]))
+            {
+                scored.add(sentences);
+                spellInput.add(normalizer.forSpellChecker(sentences[0]));
+                vectors.add(extractor.extract(sentences[0], sentences[1]));
+            }
+        }
+        if(scored.isEmpty())
+        {
+            throw new IllegalStateException("Hiçbir çift ilk süzgeçten geçmedi.");
+        }
+    }
+
+    /** Position of one benchmark thread in the corpus lists. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+
+        int next(int size)
+        {
+            if(next >= size)
+            {
+                next = 0;
+            }
+            return next++;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The Weka forest against {@link FlatForest} on the feature rows of
+ * {@link BenchmarkCorpus}, one row per call and in batches of
+ * {@link #BATCH} rows (scores are per row in both cases). With -prof gc the
+ * flat forest should show no allocation per row:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar ForestBenchmarks -prof gc -rf json -rff forest.json
+ * </pre>
+ * FlatForest.main checks that both give the same distributions.
+ *
+ * @author Eray
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class ForestBenchmarks {
+    static final int BATCH = 256;
+
+    /** The corpus rows, packed BATCH at a time, and room for the results. */
+    @State(Scope.Thread)
+    public static class Rows {
+        FlatForest forest;
+        double[][] batches;
+        double[] results;
+        double[] distribution;
+        int count;
+        int next = 0;
+        int nextBatch = 0;
+
+        @Setup(Level.Trial)
+        public void pack(BenchmarkCorpus data)
+        {
+            forest = data.qualityModel.getFlatForest();
+            if(forest == null)
+            {
+                throw new IllegalStateException("Orman düzleştirilemedi.");
+            }
+            count = data.vectors.size();
+            batches = new double[(count + BATCH - 1) / BATCH][BATCH * FeatureExtractor.FEATURE_COUNT];
+            for(int b = 0; b < batches.length; b++)
+            {
+                for(int i = 0; i < BATCH; i++)
+                {
+                    System.arraycopy(data.vectors.get((b * BATCH + i) % count), 0, batches[b], i * FeatureExtractor.FEATURE_COUNT, FeatureExtractor.FEATURE_COUNT);
+                }
+            }
+            results = new double[BATCH * forest.getNumClasses()];
+            distribution = new double[forest.getNumClasses()];
+        }
+
+        int next()
+        {
+            if(next >= count)
+            {
+                next = 0;
+            }
+            return next++;
+        }
+
+        int nextBatch()
+        {
+            if(nextBatch >= batches.length)
+            {
+                nextBatch = 0;
+            }
+            return nextBatch++;
+        }
+    }
+
+    @Benchmark
+    public double[] wekaRow(BenchmarkCorpus data, Rows rows) throws Exception
+    {
+        return data.qualityModel.wekaDistribution(data.vectors.get(rows.next()));
+    }
+
+    @Benchmark
+    public double[] flatRow(BenchmarkCorpus data, Rows rows)
+    {
+        rows.forest.distribution(data.vectors.get(rows.next()), rows.distribution);
+        return rows.distribution;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void wekaBatch(BenchmarkCorpus data, Rows rows, Blackhole blackhole) throws Exception
+    {
+        int first = rows.nextBatch() * BATCH;
+        for(int i = 0; i < BATCH; i++)
+        {
+            blackhole.consume(data.qualityModel.wekaDistribution(data.vectors.get((first + i) % rows.count)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] flatBatch(Rows rows)
+    {
+        rows.forest.distributions(rows.batches[rows.nextBatch()], FeatureExtractor.FEATURE_COUNT, BATCH, rows.results);
+        return rows.results;
+    }
+}
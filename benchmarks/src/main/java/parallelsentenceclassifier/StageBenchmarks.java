@@ -0,0 +1,95 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import com.swabunga.spell.engine.SpellDictionaryHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One benchmark per stage of the filter, each taking the next pair of
+ * {@link BenchmarkCorpus} per call. Throughput mode gives calls (for "pair",
+ * pairs) per second, sample mode the latency percentiles, and the GC
+ * profiler the bytes allocated per call (gc.alloc.rate.norm):
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar StageBenchmarks -prof gc -rf json -rff stages.json
+ * </pre>
+ *
+ * @author Eray
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class StageBenchmarks {
+    @Benchmark
+    public String initialize(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor)
+    {
+        SentencePair pair = data.corpus.get(cursor.next(data.corpus.size()));
+        ParallelSentenceClassifier.initialize(pair.getEnglish());
+        return ParallelSentenceClassifier.initialize(pair.getTurkish());
+    }
+
+    @Benchmark
+    public boolean initialFilter(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor)
+    {
+        String[] pair = data.normalized.get(cursor.next(data.normalized.size()));
+        return ParallelSentenceClassifier.initialFilter(pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public int wordCount(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor)
+    {
+        String[] pair = data.scored.get(cursor.next(data.scored.size()));
+        return ParallelSentenceClassifier.WordCount(pair[0]) + ParallelSentenceClassifier.WordCount(pair[1]);
+    }
+
+    @Benchmark
+    public double contentFilter(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor)
+    {
+        String[] pair = data.scored.get(cursor.next(data.scored.size()));
+        return new ContentFilter(data.resources.getDictionaryIndex(), pair[0], pair[1]).get_ratio();
+    }
+
+    @Benchmark
+    public List<String> jazzySpellChecker(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor)
+    {
+        String text = data.spellInput.get(cursor.next(data.spellInput.size()));
+        return new JazzySpellChecker((SpellDictionaryHashMap)data.resources.getSpellChecker().getDictionary()).getMisspelledWords(text);
+    }
+
+    @Benchmark
+    public int spellCheckService(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor)
+    {
+        return data.resources.getSpellChecker().countMisspelledWords(data.spellInput.get(cursor.next(data.spellInput.size())));
+    }
+
+    @Benchmark
+    public double ngramScore(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor)
+    {
+        String[] pair = data.scored.get(cursor.next(data.scored.size()));
+        return new NgramScore(data.resources.getLanguageModel(), pair[0]).score;
+    }
+
+    @Benchmark
+    public double[] randomForest(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor) throws Exception
+    {
+        return data.qualityModel.wekaDistribution(data.vectors.get(cursor.next(data.vectors.size())));
+    }
+
+    @Benchmark
+    public ScoredPair pair(BenchmarkCorpus data, BenchmarkCorpus.Cursor cursor) throws Exception
+    {
+        return data.processor.process(data.corpus.get(cursor.next(data.corpus.size())));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * -train output: one ARFF data row per scored pair.
+ *
+ * The numbers are written with two decimals exactly as String.format("%.2f")
+ * did, but without the formatter and independent of the default locale, and
+ * the rows go through one large buffer.
+ *
+ * @author Eray
+ */
+public class ArffRowSink implements PairSink {
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final Writer out;
+    private final PairLabels labels;
+    private final StringBuilder row = new StringBuilder(128);
+
+    public ArffRowSink(OutputStream out)
+    {
+        this(out, null);
+    }
+
+    /**
+     * @param labels class of every row, null to write every row as
+     * 'kalitesiz' to be relabeled by hand
+     */
+    public ArffRowSink(OutputStream out, PairLabels labels)
+    {
+        this.out = new BufferedWriter(new OutputStreamWriter(out), 1 << 20);
+        this.labels = labels;
+    }
+
+    public void writeHeader() throws IOException
+    {
+        out.write("@relation parallel_sentence_quality" + NEWLINE);
+        for(String name : FeatureExtractor.FEATURE_NAMES)
+        {
+            out.write("@attribute " + name + " numeric" + NEWLINE);
+        }
+        out.write("@attribute class {'kaliteli', 'kalitesiz'}" + NEWLINE);
+        out.write("@data" + NEWLINE);
+    }
+
+    @Override
+    public void write(ScoredPair pair) throws IOException
+    {
+        if(!pair.isScored())
+        {
+            return;
+        }
+        row.setLength(0);
+        for(double d : pair.getFeatures())
+        {
+            appendTwoDecimals(row, d);
+            row.append(',');
+        }
+        row.append('\'').append(labels == null ? "kalitesiz" : labels.get(pair.getLineNumber())).append('\'').append(NEWLINE);
+        out.append(row);
+    }
+
+    /**
+     * Appends value as String.format("%.2f") prints it in the root locale.
+     * That rounds the shortest decimal form of the value half up (1.005 gives
+     * 1.01), so the few values that lie on a tie, and very large ones, are
+     * left to the formatter.
+     */
+    public static void appendTwoDecimals(StringBuilder out, double value)
+    {
+        double magnitude = Math.abs(value);
+        if(!(magnitude < 1e6))
+        {
+            out.append(String.format(Locale.ROOT, "%.2f", value));
+            return;
+        }
+        double scaled = magnitude * 100;
+        long hundredths = (long)scaled;
+        double fraction = scaled - hundredths;
+        if(Math.abs(fraction - 0.5) < 1e-6)
+        {
+            out.append(String.format(Locale.ROOT, "%.2f", value));
+            return;
+        }
+        if(fraction > 0.5)
+        {
+            hundredths++;
+        }
+        if(Double.doubleToRawLongBits(value) < 0)
+        {
+            out.append('-');
+        }
+        out.append(hundredths / 100).append('.');
+        int cents = (int)(hundredths % 100);
+        out.append((char)('0' + cents / 10)).append((char)('0' + cents % 10));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out.flush();
+        if(labels != null)
+        {
+            labels.close();
+        }
+    }
+
+    /**
+     * Compares {@link #appendTwoDecimals} with String.format("%.2f") on
+     * edge cases and random values of the ranges the features take, and
+     * times both. Usage: ArffRowSink [count]
+     */
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        double[] values = new double[count];
+        double[] edges = {0, -0.0, 0.005, 0.015, 1.005, 2.675, 0.125, -0.001, -0.005, -1.005, 0.994999, 0.995, 99.995, 999999.995,
+            1e6, -1e6, 1e20, 1.0 / 3, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE};
+        Random random = new Random(42);
+        for(int i = 0; i < count; i++)
+        {
+            if(i < edges.length)
+            {
+                values[i] = edges[i];
+                continue;
+            }
+            switch(i % 4)
+            {
+                case 0: values[i] = random.nextInt(60); break;
+                case 1: values[i] = -200 * random.nextDouble(); break;
+                case 2: values[i] = (double)random.nextInt(60) / (1 + random.nextInt(60)); break;
+                default: values[i] = random.nextInt(100000) / 1000.0; break;
+            }
+        }
+        int mismatches = 0;
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < count; i++)
+        {
+            String expected = String.format(Locale.ROOT, "%.2f", values[i]);
+            text.setLength(0);
+            appendTwoDecimals(text, values[i]);
+            if(!expected.equals(text.toString()))
+            {
+                mismatches++;
+                System.out.println(values[i] + "\n  beklenen: " + expected + "\n  bulunan:  " + text);
+            }
+        }
+        System.out.println(count + " sayı, " + mismatches + " fark.");
+        long sink = 0;
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(double value : values)
+            {
+                sink += String.format("%.2f", value).replaceAll(",", ".").length();
+            }
+            long old = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(double value : values)
+            {
+                text.setLength(0);
+                appendTwoDecimals(text, value);
+                sink += text.length();
+            }
+            long now = System.nanoTime() - start;
+            System.out.println(String.format("tur %d: eski %.1f ns/sayı, yeni %.1f ns/sayı", round + 1, (double) old / count, (double) now / count));
+        }
+        System.out.println("(" + sink + ")");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,762 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offline conversion of an ARPA language model into the memory mapped format
+ * read by {@link MappedLanguageModel}.
+ *
+ * The ARPA file is parsed with the same rules as Berkeley LM's ArpaLmReader
+ * (UTF-8, tab separated columns, words split on single spaces, .gz allowed).
+ * Like Berkeley, every suffix of an n-gram must itself be an entry, so
+ * missing suffixes are added without probability and backoff, and the
+ * prefixes of such an n-gram are added as well. Berkeley's two pass loader
+ * also wipes the values of a real n-gram whose own suffix was missing once a
+ * longer n-gram with the same problem contains it; that is reproduced too,
+ * because it changes scores.
+ *
+ * Probabilities and backoffs are stored as 16 bit codes into a per-order
+ * codebook. As long as an order has at most 65535 distinct values the
+ * codebook holds them all and nothing is lost. Otherwise neighbouring values
+ * are merged into equally populated bins represented by their mean, and the
+ * largest resulting error is printed.
+ *
+ * Usage: ArpaConverter &lt;arpa_file&gt; &lt;binary_file&gt;
+ *
+ * @author Eray
+ */
+public class ArpaConverter {
+    private static final int MAX_CODES = MappedLanguageModel.ABSENT;
+
+    private final Map<String,Integer> wordIds = new HashMap<>();
+    private final List<String> words = new ArrayList<>();
+    private final FloatArray unigramProbs = new FloatArray();
+    private final FloatArray unigramBackoffs = new FloatArray();
+    private final BitSet unigrams = new BitSet();
+    private final BitSet realUnigrams = new BitSet();
+    private final List<NgramTable> tables = new ArrayList<>();
+    private int order;
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length != 2)
+        {
+            System.err.println("Kullanım: ArpaConverter <arpa_file> <binary_file>");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        ArpaConverter converter = new ArpaConverter();
+        converter.read(args[0]);
+        converter.write(args[1]);
+        System.err.println("Dönüştürme " + (System.currentTimeMillis() - start) + " ms sürdü.");
+    }
+
+    public void read(String arpaFile) throws IOException
+    {
+        InputStream in = new FileInputStream(arpaFile);
+        if(arpaFile.endsWith(".gz"))
+        {
+            in = new GZIPInputStream(in);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
+        {
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                if(line.startsWith("ngram "))
+                {
+                    order++;
+                }
+                if(line.contains("\\1-grams:"))
+                {
+                    break;
+                }
+            }
+            if(order < 1)
+            {
+                throw new IOException("ARPA başlığı bulunamadı: " + arpaFile);
+            }
+            for(int k = 2; k <= order; k++)
+            {
+                tables.add(new NgramTable());
+            }
+            int length = 1;
+            while((line = reader.readLine()) != null)
+            {
+                if(line.isEmpty())
+                {
+                    continue;
+                }
+                if(line.charAt(0) == '\\')
+                {
+                    if(!line.startsWith("\\end"))
+                    {
+                        length++;
+                        if(length > order)
+                        {
+                            break;
+                        }
+                    }
+                    continue;
+                }
+                addLine(line, length);
+            }
+        }
+    }
+
+    private void addLine(String line, int length) throws IOException
+    {
+        int firstTab = line.indexOf('\t');
+        int secondTab = line.indexOf('\t', firstTab + 1);
+        float prob = Float.parseFloat(line.substring(0, firstTab));
+        float backoff = secondTab < 0 ? 0.0f : Float.parseFloat(line.substring(secondTab + 1));
+        if(prob > 0.0)
+        {
+            throw new IOException("Hatalı ARPA satırı: " + line);
+        }
+        String[] tokens = line.substring(firstTab + 1, secondTab < 0 ? line.length() : secondTab).split(" ", -1);
+        if(tokens.length != length)
+        {
+            throw new IOException(length + "-gram bekleniyordu: " + line);
+        }
+        int[] ngram = new int[length];
+        for(int i = 0; i < length; i++)
+        {
+            ngram[i] = wordId(tokens[i]);
+        }
+        if(length == 1)
+        {
+            setUnigram(ngram[0], prob, backoff);
+            realUnigrams.set(ngram[0]);
+            return;
+        }
+        long context = ensure(ngram, 1, length);
+        NgramTable table = tables.get(length - 2);
+        int index = table.put(context << 32 | ngram[0], prob, backoff, true);
+        // Berkeley only stores an n-gram in its first pass when the whole
+        // suffix chain was stored before it
+        boolean stored = length == 2 ? realUnigrams.get(ngram[1]) : tables.get(length - 3).stored.get((int)context);
+        table.stored.set(index, stored);
+        if(!stored)
+        {
+            // Its second pass then adds every prefix and suffix that the first
+            // pass did not store, without probability, even over real entries.
+            for(int end = length - 1; end >= 2; end--)
+            {
+                erase(end, ensure(ngram, 0, end));
+            }
+            for(int start = 1; start <= length - 2; start++)
+            {
+                erase(length - start, ensure(ngram, start, length));
+            }
+        }
+    }
+
+    private void erase(int length, long index)
+    {
+        NgramTable table = tables.get(length - 2);
+        if(!table.stored.get((int)index))
+        {
+            table.probs.set((int)index, Float.NaN);
+            table.backoffs.set((int)index, Float.NaN);
+        }
+    }
+
+    /** Dense index of ngram[from..to), adding it and its suffixes as empty entries when missing. */
+    private long ensure(int[] ngram, int from, int to)
+    {
+        int word = ngram[to - 1];
+        if(!unigrams.get(word))
+        {
+            setUnigram(word, Float.NaN, Float.NaN);
+        }
+        long context = word;
+        for(int i = to - 2; i >= from; i--)
+        {
+            NgramTable table = tables.get(to - i - 2);
+            long key = context << 32 | ngram[i];
+            int index = table.indexOf(key);
+            if(index < 0)
+            {
+                index = table.put(key, Float.NaN, Float.NaN, false);
+            }
+            context = index;
+        }
+        return context;
+    }
+
+    private void setUnigram(int word, float prob, float backoff)
+    {
+        unigramProbs.set(word, prob);
+        unigramBackoffs.set(word, backoff);
+        unigrams.set(word);
+    }
+
+    private int wordId(String word)
+    {
+        Integer id = wordIds.get(word);
+        if(id == null)
+        {
+            id = words.size();
+            wordIds.put(word, id);
+            words.add(word);
+        }
+        return id;
+    }
+
+    public void write(String binaryFile) throws IOException
+    {
+        int vocabularySize = words.size();
+        final byte[][] encoded = new byte[vocabularySize][];
+        Integer[] sorted = new Integer[vocabularySize];
+        for(int i = 0; i < vocabularySize; i++)
+        {
+            encoded[i] = words.get(i).getBytes(StandardCharsets.UTF_8);
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                return compareBytes(encoded[a], encoded[b]);
+            }
+        });
+        int[] rank = new int[vocabularySize];
+        for(int i = 0; i < vocabularySize; i++)
+        {
+            rank[sorted[i]] = i;
+        }
+
+        try (Output out = new Output(binaryFile, MappedLanguageModel.HEADER_SIZE + order * MappedLanguageModel.ORDER_HEADER_SIZE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(MappedLanguageModel.HEADER_SIZE + order * MappedLanguageModel.ORDER_HEADER_SIZE);
+            header.put(MappedLanguageModel.MAGIC).putInt(MappedLanguageModel.VERSION).putInt(order).putLong(vocabularySize);
+
+            long wordOffsets = out.position();
+            long offset = 0;
+            out.putLong(0);
+            for(int i = 0; i < vocabularySize; i++)
+            {
+                offset += encoded[sorted[i]].length;
+                out.putLong(offset);
+            }
+            long wordBytes = out.position();
+            for(int i = 0; i < vocabularySize; i++)
+            {
+                out.put(encoded[sorted[i]]);
+            }
+            header.putLong(wordOffsets).putLong(wordBytes);
+
+            // unigrams: one value per word rank
+            FloatArray probs = new FloatArray();
+            FloatArray backoffs = new FloatArray();
+            for(int word = unigrams.nextSetBit(0); word >= 0; word = unigrams.nextSetBit(word + 1))
+            {
+                probs.add(unigramProbs.get(word));
+                backoffs.add(unigramBackoffs.get(word));
+            }
+            Codebook probBook = new Codebook(probs);
+            Codebook backoffBook = order > 1 ? new Codebook(backoffs) : null;
+            int width = backoffBook == null ? 2 : 4;
+            long probBookAt = out.putCodebook(probBook);
+            long backoffBookAt = backoffBook == null ? 0 : out.putCodebook(backoffBook);
+            out.align();
+            long valuesAt = out.position();
+            for(int i = 0; i < vocabularySize; i++)
+            {
+                int word = sorted[i];
+                boolean present = unigrams.get(word);
+                out.putShort(present ? probBook.code(unigramProbs.get(word)) : MappedLanguageModel.ABSENT);
+                if(backoffBook != null)
+                {
+                    out.putShort(present ? backoffBook.code(unigramBackoffs.get(word)) : MappedLanguageModel.ABSENT);
+                }
+            }
+            putOrderHeader(header, vocabularySize, unigrams.cardinality(), 0, valuesAt, probBookAt, backoffBookAt, probBook, backoffBook, width);
+            report(1, unigrams.cardinality(), realUnigrams.cardinality(), probBook, backoffBook);
+
+            // higher orders: dense indices become hash slots keyed by the slot of the suffix
+            long[] previousSlots = new long[vocabularySize];
+            for(int word = 0; word < vocabularySize; word++)
+            {
+                previousSlots[word] = rank[word];
+            }
+            for(int k = 2; k <= order; k++)
+            {
+                NgramTable table = tables.get(k - 2);
+                int entries = table.size();
+                long slots = Long.highestOneBit(Math.max(2, entries + entries / 3)) << 1;
+                if(slots > Integer.MAX_VALUE)
+                {
+                    throw new IOException(k + "-gram tablosu çok büyük: " + entries);
+                }
+                long[] keys = new long[(int)slots];
+                Arrays.fill(keys, MappedLanguageModel.EMPTY_KEY);
+                int[] entryAt = new int[(int)slots];
+                long[] slotOf = new long[entries];
+                for(int e = 0; e < entries; e++)
+                {
+                    long key = table.keys.get(e);
+                    long stored = previousSlots[(int)(key >>> 32)] << 32 | rank[(int)key];
+                    int slot = (int)(MappedLanguageModel.hash(stored) & (slots - 1));
+                    while(keys[slot] != MappedLanguageModel.EMPTY_KEY)
+                    {
+                        slot = (int)((slot + 1) & (slots - 1));
+                    }
+                    keys[slot] = stored;
+                    entryAt[slot] = e;
+                    slotOf[e] = slot;
+                }
+                probBook = new Codebook(table.probs);
+                backoffBook = k < order ? new Codebook(table.backoffs) : null;
+                width = backoffBook == null ? 2 : 4;
+                probBookAt = out.putCodebook(probBook);
+                backoffBookAt = backoffBook == null ? 0 : out.putCodebook(backoffBook);
+                out.align();
+                long keysAt = out.position();
+                for(int slot = 0; slot < slots; slot++)
+                {
+                    out.putLong(keys[slot]);
+                }
+                valuesAt = out.position();
+                for(int slot = 0; slot < slots; slot++)
+                {
+                    boolean used = keys[slot] != MappedLanguageModel.EMPTY_KEY;
+                    int e = entryAt[slot];
+                    out.putShort(used ? probBook.code(table.probs.get(e)) : MappedLanguageModel.ABSENT);
+                    if(backoffBook != null)
+                    {
+                        out.putShort(used ? backoffBook.code(table.backoffs.get(e)) : MappedLanguageModel.ABSENT);
+                    }
+                }
+                putOrderHeader(header, slots, entries, keysAt, valuesAt, probBookAt, backoffBookAt, probBook, backoffBook, width);
+                report(k, entries, table.realCount, probBook, backoffBook);
+                previousSlots = slotOf;
+            }
+            out.putHeader(header);
+        }
+    }
+
+    private static void putOrderHeader(ByteBuffer header, long slots, long entries, long keysAt, long valuesAt, long probBookAt, long backoffBookAt,
+            Codebook probBook, Codebook backoffBook, int width)
+    {
+        header.putLong(slots).putLong(entries).putLong(keysAt).putLong(valuesAt).putLong(probBookAt).putLong(backoffBookAt);
+        header.putInt(probBook.size()).putInt(backoffBook == null ? 0 : backoffBook.size()).putInt(width).putInt(0);
+    }
+
+    private static void report(int k, long entries, long real, Codebook probBook, Codebook backoffBook)
+    {
+        System.err.println(k + "-gram: " + entries + " girdi (" + (entries - real) + " yalnızca sonek), olasılık " + probBook
+                + (backoffBook == null ? "" : ", geri çekilme " + backoffBook));
+    }
+
+    static int compareBytes(byte[] a, byte[] b)
+    {
+        int n = Math.min(a.length, b.length);
+        for(int i = 0; i < n; i++)
+        {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if(c != 0)
+            {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Maps values to 16 bit codes. Exact when there are few enough distinct
+     * values, otherwise sorted values are cut into bins of equal population.
+     */
+    private static final class Codebook {
+        private final float[] values;
+        /** Largest input value of each bin; null when the codebook is exact. */
+        private final float[] upperBounds;
+        private double maxError;
+
+        Codebook(FloatArray input)
+        {
+            float[] sorted = Arrays.copyOf(input.data, input.size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for(int i = 0; i < sorted.length; i++)
+            {
+                if(i == 0 || Float.compare(sorted[i], sorted[i - 1]) != 0)
+                {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            if(distinct <= MAX_CODES)
+            {
+                values = Arrays.copyOf(sorted, distinct);
+                upperBounds = null;
+                return;
+            }
+            // NaN sorts last and keeps a code of its own
+            boolean hasNaN = Float.isNaN(sorted[distinct - 1]);
+            int bins = hasNaN ? MAX_CODES - 1 : MAX_CODES;
+            float[] all = Arrays.copyOf(input.data, input.size);
+            Arrays.sort(all);
+            int numbers = hasNaN ? all.length - countNaN(all) : all.length;
+            List<Float> binValues = new ArrayList<>();
+            List<Float> binBounds = new ArrayList<>();
+            int i = 0;
+            while(i < numbers)
+            {
+                int remainingBins = bins - binValues.size();
+                int target = Math.max(1, (numbers - i) / remainingBins);
+                int j = i + target;
+                // never split equal values between bins
+                while(j < numbers && Float.compare(all[j], all[j - 1]) == 0)
+                {
+                    j++;
+                }
+                if(remainingBins == 1)
+                {
+                    j = numbers;
+                }
+                double sum = 0;
+                for(int m = i; m < j; m++)
+                {
+                    sum += all[m];
+                }
+                float mean = (float)(sum / (j - i));
+                for(int m = i; m < j; m++)
+                {
+                    maxError = Math.max(maxError, Math.abs(all[m] - mean));
+                }
+                binValues.add(mean);
+                binBounds.add(all[j - 1]);
+                i = j;
+            }
+            if(hasNaN)
+            {
+                binValues.add(Float.NaN);
+                binBounds.add(Float.NaN);
+            }
+            values = new float[binValues.size()];
+            upperBounds = new float[binBounds.size()];
+            for(int b = 0; b < values.length; b++)
+            {
+                values[b] = binValues.get(b);
+                upperBounds[b] = binBounds.get(b);
+            }
+        }
+
+        private static int countNaN(float[] sorted)
+        {
+            int n = 0;
+            for(int i = sorted.length - 1; i >= 0 && Float.isNaN(sorted[i]); i--)
+            {
+                n++;
+            }
+            return n;
+        }
+
+        int size()
+        {
+            return values.length;
+        }
+
+        int code(float value)
+        {
+            if(upperBounds == null)
+            {
+                return Arrays.binarySearch(values, value);
+            }
+            int index = Arrays.binarySearch(upperBounds, value);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        @Override
+        public String toString()
+        {
+            return values.length + " kod" + (upperBounds == null ? " (kayıpsız)" : " (en büyük hata " + String.format("%.2e", maxError) + ")");
+        }
+    }
+
+    /** Entries of one n-gram order (2 or more) before they are laid out on disk. */
+    private static final class NgramTable {
+        private final LongIntMap index = new LongIntMap();
+        /** Dense index of the suffix &lt;&lt; 32 | word id (appearance order). */
+        final LongArray keys = new LongArray();
+        final FloatArray probs = new FloatArray();
+        final FloatArray backoffs = new FloatArray();
+        /** Real entries that Berkeley's first pass stores (whole suffix chain real). */
+        final BitSet stored = new BitSet();
+        int realCount;
+
+        int size()
+        {
+            return keys.size;
+        }
+
+        int indexOf(long key)
+        {
+            return index.get(key);
+        }
+
+        int put(long key, float prob, float backoff, boolean real)
+        {
+            int dense = index.get(key);
+            if(dense < 0)
+            {
+                dense = keys.size;
+                index.put(key, dense);
+                keys.add(key);
+                probs.add(prob);
+                backoffs.add(backoff);
+            }
+            else
+            {
+                probs.set(dense, prob);
+                backoffs.set(dense, backoff);
+            }
+            if(real)
+            {
+                realCount++;
+            }
+            return dense;
+        }
+    }
+
+    private static final class FloatArray {
+        float[] data = new float[16];
+        int size;
+
+        void add(float value)
+        {
+            set(size, value);
+        }
+
+        float get(int i)
+        {
+            return data[i];
+        }
+
+        void set(int i, float value)
+        {
+            if(i >= data.length)
+            {
+                data = Arrays.copyOf(data, Math.max(i + 1, data.length * 2));
+            }
+            data[i] = value;
+            size = Math.max(size, i + 1);
+        }
+    }
+
+    private static final class LongArray {
+        long[] data = new long[16];
+        int size;
+
+        void add(long value)
+        {
+            if(size == data.length)
+            {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = value;
+        }
+
+        long get(int i)
+        {
+            return data[i];
+        }
+    }
+
+    /** Open addressing map from non-negative long keys to int values. */
+    private static final class LongIntMap {
+        private long[] keys = new long[64];
+        private int[] values = new int[64];
+        private int size;
+
+        LongIntMap()
+        {
+            Arrays.fill(keys, MappedLanguageModel.EMPTY_KEY);
+        }
+
+        int get(long key)
+        {
+            int mask = keys.length - 1;
+            int i = (int)(MappedLanguageModel.hash(key) & mask);
+            while(keys[i] != MappedLanguageModel.EMPTY_KEY)
+            {
+                if(keys[i] == key)
+                {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        void put(long key, int value)
+        {
+            if(2 * (size + 1) > keys.length)
+            {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                Arrays.fill(keys, MappedLanguageModel.EMPTY_KEY);
+                size = 0;
+                for(int i = 0; i < oldKeys.length; i++)
+                {
+                    if(oldKeys[i] != MappedLanguageModel.EMPTY_KEY)
+                    {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int i = (int)(MappedLanguageModel.hash(key) & mask);
+            while(keys[i] != MappedLanguageModel.EMPTY_KEY)
+            {
+                if(keys[i] == key)
+                {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+    }
+
+    /**
+     * Sequential writer that tracks a long position; the header space is
+     * reserved up front and filled in last. Also used by
+     * {@link Web1T5Converter}.
+     */
+    static final class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        private long position;
+
+        Output(String fileName, int headerSize) throws IOException
+        {
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            position = headerSize;
+            channel.position(headerSize);
+        }
+
+        long position()
+        {
+            return position;
+        }
+
+        private void ensure(int bytes) throws IOException
+        {
+            if(buffer.remaining() < bytes)
+            {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while(buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putLong(long value) throws IOException
+        {
+            ensure(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        void putInt(int value) throws IOException
+        {
+            ensure(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        void putShort(int value) throws IOException
+        {
+            ensure(2);
+            buffer.putShort((short)value);
+            position += 2;
+        }
+
+        void put(byte[] bytes) throws IOException
+        {
+            for(byte b : bytes)
+            {
+                ensure(1);
+                buffer.put(b);
+            }
+            position += bytes.length;
+        }
+
+        void align() throws IOException
+        {
+            while(position % 8 != 0)
+            {
+                ensure(1);
+                buffer.put((byte)0);
+                position++;
+            }
+        }
+
+        long putCodebook(Codebook codebook) throws IOException
+        {
+            align();
+            long at = position;
+            for(float value : codebook.values)
+            {
+                ensure(4);
+                buffer.putFloat(value);
+                position += 4;
+            }
+            return at;
+        }
+
+        void putHeader(ByteBuffer header) throws IOException
+        {
+            flush();
+            header.flip();
+            long at = 0;
+            while(header.hasRemaining())
+            {
+                at += channel.write(header, at);
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            flush();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import edu.berkeley.nlp.lm.ArrayEncodedNgramLanguageModel;
+import edu.berkeley.nlp.lm.io.LmReaders;
+import java.util.List;
+
+/**
+ * ARPA model parsed onto the heap by Berkeley LM. This is what the scorer
+ * always used; a model converted with {@link ArpaConverter} gives the same
+ * scores without the parsing time, apart from the cases described in
+ * {@link MappedLanguageModel}.
+ *
+ * @author Eray
+ */
+public class BerkeleyLanguageModel implements LanguageModel {
+    private final ArrayEncodedNgramLanguageModel<String> lm;
+
+    public BerkeleyLanguageModel(ArrayEncodedNgramLanguageModel<String> lm)
+    {
+        this.lm = lm;
+    }
+
+    public static BerkeleyLanguageModel readArpa(String arpaFile)
+    {
+        return new BerkeleyLanguageModel(LmReaders.readArrayEncodedLmFromArpa(arpaFile, false));
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return lm.getLmOrder();
+    }
+
+    @Override
+    public float scoreSentence(List<String> words)
+    {
+        return lm.scoreSentence(words);
+    }
+
+    /** Berkeley indexes words by String, so this scores the token strings. */
+    @Override
+    public float scoreSentence(TokenizedSentence sentence)
+    {
+        return lm.scoreSentence(sentence.words());
+    }
+
+    public ArrayEncodedNgramLanguageModel<String> getBerkeleyModel()
+    {
+        return lm;
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+import weka.core.converters.ArffLoader;
+
+/**
+ * First stage of a cascaded classifier: a RandomForest trained on the same
+ * ARFF as the {@link QualityModel}, but only on the features that need no
+ * spell checker and no language model (sentence_length_en,
+ * translation_score, length_differ and length_ratio). A pair this forest is
+ * confident about is decided at once; only the others get the expensive
+ * features and go to the full model.
+ *
+ * A pair is eliminated early when at least the reject threshold of the
+ * cheap trees vote 'kalitesiz', and kept early when at least the accept
+ * threshold vote 'kaliteli'. The full model keeps a pair only when all of
+ * its trees agree, so early acceptance is off unless an accept threshold is
+ * given. Run {@link #main} on held-out data to choose the thresholds.
+ *
+ * @author Eray
+ */
+public class CascadeModel {
+    public static final int UNDECIDED = -1;
+    public static final int REJECT = 0;
+    public static final int ACCEPT = 1;
+    /** Positions of the cheap features in the {@link FeatureExtractor} vector. */
+    public static final int[] CHEAP_FEATURES = {2, 3, 4, 5};
+    /** Threshold that turns a side of the cascade off. */
+    public static final double OFF = Double.POSITIVE_INFINITY;
+    /** Tree votes are normalized sums, so 9 of 10 trees may come out as 0.8999999. */
+    private static final double EPSILON = 1e-9;
+
+    private final RandomForest classifier;
+    private final Instances header;
+    private final FlatForest flatForest;
+    private final double acceptThreshold;
+    private final double rejectThreshold;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong undecided = new AtomicLong();
+
+    /**
+     * @param acceptThreshold share of 'kaliteli' votes that keeps a pair
+     * early, in (0.5, 1], or {@link #OFF}
+     * @param rejectThreshold share of 'kalitesiz' votes that eliminates a
+     * pair early, in (0.5, 1], or {@link #OFF}
+     */
+    public CascadeModel(RandomForest classifier, Instances header, double acceptThreshold, double rejectThreshold)
+    {
+        checkThreshold("--cascade-accept", acceptThreshold);
+        checkThreshold("--cascade-reject", rejectThreshold);
+        this.classifier = classifier;
+        this.header = header;
+        this.flatForest = FlatForest.compileOrNull(classifier, header);
+        this.acceptThreshold = acceptThreshold;
+        this.rejectThreshold = rejectThreshold;
+    }
+
+    private static void checkThreshold(String name, double threshold)
+    {
+        if(threshold != OFF && !(threshold > 0.5 && threshold <= 1))
+        {
+            throw new IllegalArgumentException(name + " 0.5'ten büyük ve en çok 1 olmalı: " + threshold);
+        }
+    }
+
+    /** The same forest with other thresholds and fresh counters. */
+    public CascadeModel withThresholds(double acceptThreshold, double rejectThreshold)
+    {
+        return new CascadeModel(classifier, header, acceptThreshold, rejectThreshold);
+    }
+
+    /**
+     * Trains the cheap forest on the given ARFF file, the training set of
+     * the full model.
+     */
+    public static CascadeModel train(String arffFile) throws Exception
+    {
+        ArffLoader loader = new ArffLoader();
+        loader.setFile(new File(arffFile));
+        Instances data = loader.getDataSet();
+        data.setClassIndex(FeatureExtractor.FEATURE_COUNT);
+        QualityModel.checkSchema(data, arffFile);
+        Instances cheap = new Instances(data);
+        for(int j = FeatureExtractor.FEATURE_COUNT - 1; j >= 0; j--)
+        {
+            if(cheapIndex(j) < 0)
+            {
+                cheap.deleteAttributeAt(j);
+            }
+        }
+        cheap.setClassIndex(CHEAP_FEATURES.length);
+        RandomForest classifier = new RandomForest();
+        classifier.buildClassifier(cheap);
+        return new CascadeModel(classifier, new Instances(cheap, 0), OFF, 1);
+    }
+
+    private static int cheapIndex(int feature)
+    {
+        for(int i = 0; i < CHEAP_FEATURES.length; i++)
+        {
+            if(CHEAP_FEATURES[i] == feature)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the cheap forest and its attribute header, see {@link #load}.
+     */
+    public void save(String modelFile) throws Exception
+    {
+        SerializationHelper.writeAll(modelFile, new Object[] {classifier, header});
+    }
+
+    /**
+     * Reads a forest written by {@link #save}, with the default thresholds.
+     */
+    public static CascadeModel load(String modelFile) throws Exception
+    {
+        Object[] objects = SerializationHelper.readAll(modelFile);
+        if(objects.length != 2 || !(objects[0] instanceof RandomForest) || !(objects[1] instanceof Instances))
+        {
+            throw new IOException("Model dosyası tanınmadı: " + modelFile);
+        }
+        Instances header = (Instances)objects[1];
+        checkSchema(header, modelFile);
+        return new CascadeModel((RandomForest)objects[0], header, OFF, 1);
+    }
+
+    /**
+     * Loads a forest saved with -train-cascade, or trains one when the file
+     * is an ARFF training set.
+     */
+    public static CascadeModel open(String file) throws Exception
+    {
+        return QualityModel.isSerialized(new File(file)) ? load(file) : train(file);
+    }
+
+    private static void checkSchema(Instances header, String source) throws IOException
+    {
+        boolean valid = header.numAttributes() == CHEAP_FEATURES.length + 1 && header.classIndex() == CHEAP_FEATURES.length;
+        for(int j = 0; valid && j < CHEAP_FEATURES.length; j++)
+        {
+            Attribute attribute = header.attribute(j);
+            valid = attribute.isNumeric() && attribute.name().equals(FeatureExtractor.FEATURE_NAMES[CHEAP_FEATURES[j]]);
+        }
+        if(!valid || header.classAttribute().indexOfValue("kaliteli") != 0 || header.classAttribute().indexOfValue("kalitesiz") != 1)
+        {
+            throw new IOException("Ucuz aşama modeli şeması uyumsuz (" + source + "): -train-cascade ile kaydedilmiş bir model bekleniyordu");
+        }
+    }
+
+    /**
+     * Class distribution of the cheap forest for a full-length vector, of
+     * which only the cheap features are read.
+     */
+    public double[] distribution(double[] vector) throws Exception
+    {
+        double[] values = new double[CHEAP_FEATURES.length + 1];
+        for(int i = 0; i < CHEAP_FEATURES.length; i++)
+        {
+            values[i] = vector[CHEAP_FEATURES[i]];
+        }
+        if(flatForest == null || FlatForest.hasMissing(values, 0, CHEAP_FEATURES.length))
+        {
+            values[CHEAP_FEATURES.length] = Utils.missingValue();
+            Instance instance = new DenseInstance(1.0, values);
+            instance.setDataset(header);
+            return classifier.distributionForInstance(instance);
+        }
+        double[] result = new double[flatForest.getNumClasses()];
+        flatForest.distribution(values, result);
+        return result;
+    }
+
+    /**
+     * @return {@link #ACCEPT}, {@link #REJECT} or {@link #UNDECIDED} when the
+     * pair needs the full model
+     */
+    public int decide(double[] vector) throws Exception
+    {
+        int verdict = decide(distribution(vector), acceptThreshold, rejectThreshold);
+        (verdict == ACCEPT ? accepted : verdict == REJECT ? rejected : undecided).incrementAndGet();
+        return verdict;
+    }
+
+    private static int decide(double[] distribution, double acceptThreshold, double rejectThreshold)
+    {
+        if(distribution[1] >= rejectThreshold - EPSILON)
+        {
+            return REJECT;
+        }
+        if(distribution[0] >= acceptThreshold - EPSILON)
+        {
+            return ACCEPT;
+        }
+        return UNDECIDED;
+    }
+
+    public double getAcceptThreshold()
+    {
+        return acceptThreshold;
+    }
+
+    public double getRejectThreshold()
+    {
+        return rejectThreshold;
+    }
+
+    /** Pairs kept by the cheap stage. */
+    public long getAccepted()
+    {
+        return accepted.get();
+    }
+
+    /** Pairs eliminated by the cheap stage. */
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+    /** Pairs passed on to the full model. */
+    public long getUndecided()
+    {
+        return undecided.get();
+    }
+
+    /**
+     * Reads the mean time per call of each stage from a --metrics snapshot.
+     */
+    private static Map<String,Double> readStageCosts(File file) throws IOException
+    {
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Matcher matcher = Pattern.compile("\"(\\w+)\": \\{\"count\": (\\d+), \"total_ns\": (\\d+)").matcher(json);
+        Map<String,Double> costs = new HashMap<>();
+        while(matcher.find())
+        {
+            long count = Long.parseLong(matcher.group(2));
+            costs.put(matcher.group(1), count == 0 ? 0 : Long.parseLong(matcher.group(3)) / (double) count);
+        }
+        if(!costs.containsKey("spell_check") || !costs.containsKey("language_model"))
+        {
+            throw new IOException("Ölçüm dosyasında aşama süreleri yok: " + file);
+        }
+        return costs;
+    }
+
+    private static double cost(Map<String,Double> costs, String stage)
+    {
+        Double cost = costs.get(stage);
+        return cost == null ? 0 : cost;
+    }
+
+    private static String threshold(double value)
+    {
+        return value == OFF ? "kapalı" : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * Trains the full and the cheap forest on a training ARFF and reports,
+     * for a range of thresholds (or the given ones), how the cascade compares
+     * with the full model on a held-out ARFF: the share of pairs decided
+     * early, agreement with the full model's verdicts, accuracy, precision
+     * and recall of 'kaliteli' against the labels. With the JSON snapshot of
+     * a --metrics run the feature times of that run are added to the
+     * measured forest times to estimate pairs per second.
+     *
+     * Usage: CascadeModel &lt;training_arff&gt; &lt;heldout_arff&gt;
+     * [--cascade-accept P] [--cascade-reject P] [--stage-costs metrics.json]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        RunOptions options = RunOptions.parse(args);
+        args = options.getArguments();
+        if(args.length != 2)
+        {
+            System.err.println("Kullanım: CascadeModel <training_arff> <heldout_arff> [--cascade-accept P] [--cascade-reject P] [--stage-costs metrics.json]");
+            System.exit(1);
+        }
+        QualityModel full = QualityModel.train(args[0]);
+        CascadeModel cascade = train(args[0]);
+        ArffLoader loader = new ArffLoader();
+        loader.setFile(new File(args[1]));
+        Instances data = loader.getDataSet();
+        data.setClassIndex(FeatureExtractor.FEATURE_COUNT);
+        QualityModel.checkSchema(data, args[1]);
+        int rows = data.numInstances();
+        if(rows == 0)
+        {
+            System.out.println("Ayrılmış veri boş: " + args[1]);
+            System.exit(1);
+        }
+        double[][] vectors = new double[rows][FeatureExtractor.FEATURE_COUNT];
+        boolean[] labels = new boolean[rows];
+        boolean[] fullKept = new boolean[rows];
+        double[][] cheap = new double[rows][];
+        for(int i = 0; i < rows; i++)
+        {
+            for(int j = 0; j < FeatureExtractor.FEATURE_COUNT; j++)
+            {
+                vectors[i][j] = data.instance(i).value(j);
+            }
+            labels[i] = data.instance(i).classValue() == 0;
+            fullKept[i] = full.distribution(vectors[i])[0] == 1;
+            cheap[i] = cascade.distribution(vectors[i]);
+        }
+
+        double sink = 0;
+        int repeat = Math.max(1, 100000 / rows);
+        long fullNanos = Long.MAX_VALUE;
+        long cheapNanos = Long.MAX_VALUE;
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(int r = 0; r < repeat; r++)
+            {
+                for(double[] vector : vectors)
+                {
+                    sink += full.distribution(vector)[0];
+                }
+            }
+            fullNanos = Math.min(fullNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for(int r = 0; r < repeat; r++)
+            {
+                for(double[] vector : vectors)
+                {
+                    sink += cascade.distribution(vector)[0];
+                }
+            }
+            cheapNanos = Math.min(cheapNanos, System.nanoTime() - start);
+        }
+        double fullForest = (double) fullNanos / rows / repeat;
+        double cheapForest = (double) cheapNanos / rows / repeat;
+
+        double cheapFeatures = Double.NaN;
+        double expensiveFeatures = Double.NaN;
+        if(options.has("stage-costs"))
+        {
+            Map<String,Double> costs = readStageCosts(new File(options.get("stage-costs", null)));
+            cheapFeatures = cost(costs, "coverage") + cost(costs, "word_count");
+            expensiveFeatures = cost(costs, "spell_check") + cost(costs, "language_model");
+        }
+        double fullCost = cheapFeatures + expensiveFeatures + fullForest;
+
+        System.out.println(rows + " ayrılmış örnek, " + count(labels) + " kaliteli; tam model " + count(fullKept) + " çifti tutuyor.");
+        System.out.println(String.format(Locale.ROOT, "Orman süresi: tam %.1f ns/çift, ucuz %.1f ns/çift", fullForest, cheapForest));
+        if(options.has("stage-costs"))
+        {
+            System.out.println(String.format(Locale.ROOT, "Özellik süresi: ucuz %.1f µs/çift, pahalı %.1f µs/çift", cheapFeatures / 1e3, expensiveFeatures / 1e3));
+        }
+        System.out.println(String.format(Locale.ROOT, "%-8s %-8s %8s %8s %8s %9s %9s %11s %8s", "kabul", "ret", "erken %", "uyum %", "doğru %",
+                "kesinlik", "duyarlık", "çift/s", "hız"));
+        report("tam", "-", fullKept, labels, fullKept, 0, fullCost, fullCost);
+
+        double[] accepts = options.has("cascade-accept") ? new double[] {options.getDouble("cascade-accept", OFF)} : new double[] {OFF, 1};
+        double[] rejects = options.has("cascade-reject") ? new double[] {options.getDouble("cascade-reject", 1)} : new double[] {1, 0.9, 0.8, 0.7, 0.6};
+        checkThreshold("--cascade-accept", accepts[0]);
+        checkThreshold("--cascade-reject", rejects[0]);
+        boolean[] kept = new boolean[rows];
+        for(double accept : accepts)
+        {
+            for(double reject : rejects)
+            {
+                int early = 0;
+                for(int i = 0; i < rows; i++)
+                {
+                    int verdict = decide(cheap[i], accept, reject);
+                    kept[i] = verdict == UNDECIDED ? fullKept[i] : verdict == ACCEPT;
+                    early += verdict == UNDECIDED ? 0 : 1;
+                }
+                double share = (double) early / rows;
+                double cost = cheapFeatures + cheapForest + (1 - share) * (expensiveFeatures + fullForest);
+                report(threshold(accept), threshold(reject), kept, labels, fullKept, share, cost, fullCost);
+            }
+        }
+        System.out.println("(" + sink + ")");
+    }
+
+    private static void report(String accept, String reject, boolean[] kept, boolean[] labels, boolean[] fullKept, double early, double cost, double fullCost)
+    {
+        int agree = 0;
+        int correct = 0;
+        int truePositives = 0;
+        for(int i = 0; i < kept.length; i++)
+        {
+            agree += kept[i] == fullKept[i] ? 1 : 0;
+            correct += kept[i] == labels[i] ? 1 : 0;
+            truePositives += kept[i] && labels[i] ? 1 : 0;
+        }
+        int keptCount = count(kept);
+        int positives = count(labels);
+        System.out.println(String.format(Locale.ROOT, "%-8s %-8s %8.1f %8.1f %8.1f %9s %9s %11s %8s", accept, reject, 100 * early,
+                100.0 * agree / kept.length, 100.0 * correct / kept.length,
+                keptCount == 0 ? "-" : String.format(Locale.ROOT, "%.3f", (double) truePositives / keptCount),
+                positives == 0 ? "-" : String.format(Locale.ROOT, "%.3f", (double) truePositives / positives),
+                Double.isNaN(cost) ? "-" : String.format(Locale.ROOT, "%.0f", 1e9 / cost),
+                Double.isNaN(cost) ? "-" : String.format(Locale.ROOT, "%.2fx", fullCost / cost)));
+    }
+
+    private static int count(boolean[] values)
+    {
+        int count = 0;
+        for(boolean value : values)
+        {
+            count += value ? 1 : 0;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bilingual dictionary prepared for translation coverage scoring.
+ *
+ * The old scorer appended " " + translation for every English word to one
+ * string and counted a Turkish word as translated when its lowercased,
+ * 5-character prefix w satisfied extended.contains(w + " ") or
+ * extended.contains(" " + w). Since w has no spaces, that means w starts a
+ * token of the extended string, or ends a token that is followed by a
+ * space. Here every translation is split into tokens once and all of their
+ * 1..5 character prefixes and suffixes are interned to int ids, so scoring a
+ * pair is a few hash set operations per word and gives the same ratio.
+ * Words and fragments are looked up by their span in a
+ * {@link TokenizedSentence}, so scoring a pair makes no strings.
+ *
+ * @author Eray
+ */
+public class DictionaryIndex {
+    static final int PREFIX_LENGTH = TokenizedSentence.PREFIX_LENGTH;
+
+    private final Map<String,Integer> fragmentIds = new HashMap<>();
+    private final Map<String,Entry> entries = new HashMap<>();
+    private final SpanMap<Integer> fragmentSpans;
+    private final SpanMap<Entry> entrySpans;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue()
+        {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * @param dictionary English headword to space separated Turkish translations
+     */
+    public DictionaryIndex(Map<String,String> dictionary)
+    {
+        for(Map.Entry<String,String> e : dictionary.entrySet())
+        {
+            entries.put(e.getKey(), new Entry(e.getValue().toLowerCase()));
+        }
+        fragmentSpans = new SpanMap<>(fragmentIds);
+        entrySpans = new SpanMap<>(entries);
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Share of Turkish words that the dictionary translations of the English
+     * words cover. Both sentences must already be stripped of punctuation.
+     */
+    public double coverage(String en_sentence, String tr_sentence)
+    {
+        return coverage(new TokenizedSentence(en_sentence, true), new TokenizedSentence(tr_sentence, false));
+    }
+
+    /**
+     * Share of Turkish words that the dictionary translations of the English
+     * words cover, over the coverage keys of the two sentences.
+     */
+    public double coverage(TokenizedSentence en, TokenizedSentence tr)
+    {
+        Scratch s = scratch.get();
+        s.clear(en);
+        char[] en_keys = en.getKeys();
+        for(int t = 0; t < en.getKeyCount(); t++)
+        {
+            if(en.hasDigit(t) || en.isCapitalized(t)) {
+                s.appendWord(t);
+            }
+            Entry entry = entrySpans.get(en_keys, en.getKeyStart(t), en.getKeyEnd(t));
+            if(entry != null)
+            {
+                s.appendEntry(entry);
+            }
+        }
+
+        int total_count = tr.getKeyCount();
+        int translate_count = 0;
+        char[] tr_keys = tr.getKeys();
+        for(int t = 0; t < total_count; t++)
+        {
+            int from = tr.getKeyStart(t);
+            int to = tr.getPrefixEnd(t);
+            if(s.covers(tr_keys, from, to, fragmentSpans.get(tr_keys, from, to)))
+            {
+                translate_count++;
+            }
+        }
+        return (double)translate_count/(double)total_count;
+    }
+
+    private int intern(String fragment)
+    {
+        Integer id = fragmentIds.get(fragment);
+        if(id == null)
+        {
+            id = fragmentIds.size();
+            fragmentIds.put(fragment, id);
+        }
+        return id;
+    }
+
+    private int[] fragments(String token, boolean prefixes)
+    {
+        int n = Math.min(PREFIX_LENGTH, token.length());
+        int[] ids = new int[n];
+        for(int len = 1; len <= n; len++)
+        {
+            ids[len - 1] = intern(prefixes ? token.substring(0, len) : token.substring(token.length() - len));
+        }
+        return ids;
+    }
+
+    /** Interned fragments of one lowercased translation string. */
+    private final class Entry {
+        /** Prefixes of every token; each token is preceded by a space. */
+        final int[] prefixes;
+        /** Suffixes of the tokens followed by a space inside the entry. */
+        final int[] innerSuffixes;
+        /** Suffixes of the last token, followed by a space only if more text is appended. */
+        final int[] lastSuffixes;
+
+        Entry(String translation)
+        {
+            String[] tokens = translation.split(" ", -1);
+            List<int[]> prefixParts = new ArrayList<>();
+            List<int[]> suffixParts = new ArrayList<>();
+            for(int i = 0; i < tokens.length; i++)
+            {
+                prefixParts.add(fragments(tokens[i], true));
+                if(i < tokens.length - 1)
+                {
+                    suffixParts.add(fragments(tokens[i], false));
+                }
+            }
+            this.prefixes = concat(prefixParts);
+            this.innerSuffixes = concat(suffixParts);
+            this.lastSuffixes = fragments(tokens[tokens.length - 1], false);
+        }
+    }
+
+    private static int[] concat(List<int[]> parts)
+    {
+        int n = 0;
+        for(int[] part : parts)
+        {
+            n += part.length;
+        }
+        int[] result = new int[n];
+        n = 0;
+        for(int[] part : parts)
+        {
+            System.arraycopy(part, 0, result, n, part.length);
+            n += part.length;
+        }
+        return result;
+    }
+
+    private static boolean regionMatches(char[] a, int aFrom, char[] b, int bFrom, int length)
+    {
+        for(int k = 0; k < length; k++)
+        {
+            if(a[aFrom + k] != b[bFrom + k])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Per-thread state of one coverage computation: the fragment ids seen so
+     * far and the English words (digits, capitals) that are appended as they
+     * are and may not be interned, as key indices of the English sentence.
+     */
+    private static final class Scratch {
+        final IntSet prefixes = new IntSet();
+        final IntSet suffixes = new IntSet();
+        TokenizedSentence en;
+        int[] words = new int[16];
+        int wordCount;
+        /** Index in words of a word that ends the text so far, or -1. */
+        int lastWord;
+        /** Suffixes of the entry that ends the text so far, or null. */
+        int[] lastSuffixes;
+        int wordsFollowed;
+        boolean empty;
+
+        void clear(TokenizedSentence sentence)
+        {
+            prefixes.clear();
+            suffixes.clear();
+            en = sentence;
+            wordCount = 0;
+            lastWord = -1;
+            lastSuffixes = null;
+            wordsFollowed = 0;
+            empty = true;
+        }
+
+        /** Text is about to be appended after a space, so the current last token is now followed by one. */
+        private void closeLast()
+        {
+            if(lastSuffixes != null)
+            {
+                suffixes.addAll(lastSuffixes);
+                lastSuffixes = null;
+            }
+            if(lastWord >= 0)
+            {
+                wordsFollowed = lastWord + 1;
+                lastWord = -1;
+            }
+            empty = false;
+        }
+
+        void appendWord(int token)
+        {
+            closeLast();
+            if(wordCount == words.length)
+            {
+                words = Arrays.copyOf(words, 2 * wordCount);
+            }
+            words[wordCount] = token;
+            lastWord = wordCount++;
+        }
+
+        void appendEntry(Entry entry)
+        {
+            closeLast();
+            prefixes.addAll(entry.prefixes);
+            suffixes.addAll(entry.innerSuffixes);
+            lastSuffixes = entry.lastSuffixes;
+        }
+
+        /** Whether w = keys[from, to), with fragment id id or null, is covered. */
+        boolean covers(char[] keys, int from, int to, Integer id)
+        {
+            if(from == to)
+            {
+                return !empty;
+            }
+            if(id != null && (prefixes.contains(id) || suffixes.contains(id)))
+            {
+                return true;
+            }
+            char[] en_keys = en.getKeys();
+            int length = to - from;
+            for(int i = 0; i < wordCount; i++)
+            {
+                int start = en.getKeyStart(words[i]);
+                int end = en.getKeyEnd(words[i]);
+                if(end - start < length)
+                {
+                    continue;
+                }
+                if(regionMatches(en_keys, start, keys, from, length) || (i < wordsFollowed && regionMatches(en_keys, end - length, keys, from, length)))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Read-only open-addressing map from the String keys of a map to its
+     * values, looked up by a span of a char array with the hash of
+     * String.hashCode(), so the key string of the span is never made.
+     */
+    private static final class SpanMap<V> {
+        private final char[][] keys;
+        private final int[] hashes;
+        private final Object[] values;
+        private final int mask;
+
+        SpanMap(Map<String,V> map)
+        {
+            int capacity = Integer.highestOneBit(Math.max(2 * map.size(), 1)) * 2;
+            keys = new char[capacity][];
+            hashes = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            for(Map.Entry<String,V> e : map.entrySet())
+            {
+                int hash = e.getKey().hashCode();
+                int i = mix(hash) & mask;
+                while(keys[i] != null)
+                {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = e.getKey().toCharArray();
+                hashes[i] = hash;
+                values[i] = e.getValue();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(char[] chars, int from, int to)
+        {
+            int hash = 0;
+            for(int k = from; k < to; k++)
+            {
+                hash = 31 * hash + chars[k];
+            }
+            int length = to - from;
+            int i = mix(hash) & mask;
+            while(keys[i] != null)
+            {
+                if(hashes[i] == hash && keys[i].length == length && regionMatches(keys[i], 0, chars, from, length))
+                {
+                    return (V)values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int mix(int hash)
+        {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Open-addressing set of non-negative ints. clear() only bumps a
+     * generation counter, so the table is reused across pairs without being
+     * wiped.
+     */
+    private static final class IntSet {
+        private int[] keys = new int[64];
+        private int[] generations = new int[64];
+        private int generation = 1;
+        private int size = 0;
+
+        void clear()
+        {
+            size = 0;
+            if(++generation == Integer.MAX_VALUE)
+            {
+                Arrays.fill(generations, 0);
+                generation = 1;
+            }
+        }
+
+        void addAll(int[] ids)
+        {
+            for(int id : ids)
+            {
+                add(id);
+            }
+        }
+
+        void add(int key)
+        {
+            if(2 * (size + 1) > keys.length)
+            {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while(generations[i] == generation)
+            {
+                if(keys[i] == key)
+                {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            generations[i] = generation;
+            keys[i] = key;
+            size++;
+        }
+
+        boolean contains(int key)
+        {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while(generations[i] == generation)
+            {
+                if(keys[i] == key)
+                {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        private void grow()
+        {
+            int[] oldKeys = keys;
+            int[] oldGenerations = generations;
+            int oldGeneration = generation;
+            keys = new int[oldKeys.length * 2];
+            generations = new int[oldKeys.length * 2];
+            generation = 1;
+            size = 0;
+            for(int i = 0; i < oldKeys.length; i++)
+            {
+                if(oldGenerations[i] == oldGeneration)
+                {
+                    add(oldKeys[i]);
+                }
+            }
+        }
+
+        private static int mix(int key)
+        {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
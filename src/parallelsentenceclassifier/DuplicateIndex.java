@@ -0,0 +1,327 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Remembers the verdicts of the normalized pairs seen so far, so a pair that
+ * occurs again (subtitle corpora repeat "Thank you." / "Teşekkürler." many
+ * thousand times) is not scored again.
+ *
+ * A pair is stored as a 64-bit hash of its normalized sentences in an open
+ * addressing table of longs with linear probing: no object per pair, 8 bytes
+ * per slot. The table is allocated once for a fixed number of pairs and
+ * never grows; once it holds that many, new pairs are scored as usual and
+ * not remembered, so memory stays bounded whatever the corpus size. It can
+ * be placed outside the Java heap.
+ *
+ * The lowest two bits of a slot hold the verdict and whether a kept pair was
+ * already written, the other 62 are the hash. Two different pairs with the
+ * same 62 bits would share a verdict; with n pairs in the table a new pair
+ * hits such a collision with probability n / 2^62, about 2e-11 for 100
+ * million pairs, or one wrong verdict in 50 billion lookups.
+ *
+ * All methods are synchronized; a lookup is a few probes, far below the time
+ * of scoring a pair, so the workers do not wait on each other in practice.
+ *
+ * @author Eray
+ */
+public class DuplicateIndex {
+    public static final int UNKNOWN = -1;
+    public static final int ELIMINATED = 0;
+    public static final int KEPT = 1;
+
+    private static final long M = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+    private static final long KEPT_BIT = 1;
+    private static final long WRITTEN_BIT = 2;
+    private static final long HASH_MASK = ~3L;
+    private static final int CHUNK_BITS = 24;
+
+    private final LongBuffer[] chunks;
+    private final long mask;
+    private final long maxPairs;
+    private final boolean offHeap;
+    private long size = 0;
+    private long hits = 0;
+    private long dropped = 0;
+    private long missed = 0;
+
+    /**
+     * @param maxPairs number of distinct pairs to remember; the table has
+     * the next power of two above 4/3 of it as slots
+     * @param offHeap allocate the table as direct buffers
+     */
+    public DuplicateIndex(long maxPairs, boolean offHeap)
+    {
+        if(maxPairs < 1)
+        {
+            throw new IllegalArgumentException("--dedup pozitif olmalı: " + maxPairs);
+        }
+        long slots = Math.max(16, Long.highestOneBit(maxPairs + maxPairs / 3) << 1);
+        int chunkSize = (int)Math.min(slots, 1L << CHUNK_BITS);
+        this.chunks = new LongBuffer[(int)(slots / chunkSize)];
+        for(int i = 0; i < chunks.length; i++)
+        {
+            chunks[i] = offHeap ? ByteBuffer.allocateDirect(chunkSize * 8).order(ByteOrder.nativeOrder()).asLongBuffer()
+                    : LongBuffer.allocate(chunkSize);
+        }
+        this.mask = slots - 1;
+        this.maxPairs = maxPairs;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * 64-bit MurmurHash64A of the two sentences, read as UTF-16 code units
+     * four at a time. Each sentence ends in its own block and the English
+     * length is mixed in between them, so moving text from one side to the
+     * other changes the hash.
+     */
+    public static long hash(String english, String turkish)
+    {
+        long h = 0x9747b28cL ^ ((english.length() + turkish.length()) * M);
+        h = update(h, english);
+        h = mix(h, 0xffff0000L | english.length());
+        h = update(h, turkish);
+        return finish(h);
+    }
+
+    /** Final avalanche of MurmurHash64A. */
+    static long finish(long h)
+    {
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
+
+    private static long update(long h, String text)
+    {
+        int length = text.length();
+        int i = 0;
+        for(; i + 4 <= length; i += 4)
+        {
+            h = mix(h, (long)text.charAt(i) << 48 | (long)text.charAt(i + 1) << 32 | (long)text.charAt(i + 2) << 16 | text.charAt(i + 3));
+        }
+        if(i < length)
+        {
+            long k = 0;
+            for(; i < length; i++)
+            {
+                k = k << 16 | text.charAt(i);
+            }
+            h = mix(h, k);
+        }
+        return h;
+    }
+
+    /** Mixes one 8-byte block into the hash. */
+    static long mix(long h, long k)
+    {
+        k *= M;
+        k ^= k >>> R;
+        k *= M;
+        h ^= k;
+        return h * M;
+    }
+
+    /** The key stored for a hash; never 0, which marks an empty slot. */
+    private static long key(long hash)
+    {
+        long key = hash & HASH_MASK;
+        return key == 0 ? 4 : key;
+    }
+
+    private long get(long slot)
+    {
+        return chunks[(int)(slot >>> CHUNK_BITS)].get((int)(slot & ((1 << CHUNK_BITS) - 1)));
+    }
+
+    private void set(long slot, long value)
+    {
+        chunks[(int)(slot >>> CHUNK_BITS)].put((int)(slot & ((1 << CHUNK_BITS) - 1)), value);
+    }
+
+    /** Slot holding the key, or the empty slot where it would go. */
+    private long find(long key)
+    {
+        long slot = (key >>> 2) & mask;
+        long value;
+        while((value = get(slot)) != 0 && (value & HASH_MASK) != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** @return {@link #KEPT}, {@link #ELIMINATED} or {@link #UNKNOWN} */
+    public synchronized int getVerdict(long hash)
+    {
+        long value = get(find(key(hash)));
+        if(value == 0)
+        {
+            return UNKNOWN;
+        }
+        hits++;
+        return (value & KEPT_BIT) != 0 ? KEPT : ELIMINATED;
+    }
+
+    /** Remembers the verdict of a scored pair, if there is still room. */
+    public synchronized void put(long hash, boolean kept)
+    {
+        long key = key(hash);
+        long slot = find(key);
+        if(get(slot) != 0)
+        {
+            return;
+        }
+        if(size >= maxPairs)
+        {
+            missed++;
+            return;
+        }
+        set(slot, key | (kept ? KEPT_BIT : 0));
+        size++;
+    }
+
+    /**
+     * Called by the writer, in corpus order, for every kept pair.
+     *
+     * @return false when an identical kept pair was written before
+     */
+    public synchronized boolean markWritten(long hash)
+    {
+        long key = key(hash);
+        long slot = find(key);
+        long value = get(slot);
+        if(value == 0)
+        {
+            if(size < maxPairs)
+            {
+                set(slot, key | KEPT_BIT | WRITTEN_BIT);
+                size++;
+            }
+            return true;
+        }
+        if((value & WRITTEN_BIT) != 0)
+        {
+            dropped++;
+            return false;
+        }
+        set(slot, value | WRITTEN_BIT);
+        return true;
+    }
+
+    /** Distinct pairs remembered. */
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    /** Lookups that found an earlier verdict. */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /** Kept pairs not written again by {@link #markWritten}. */
+    public synchronized long getDropped()
+    {
+        return dropped;
+    }
+
+    /** Pairs that were not remembered because the table was full. */
+    public synchronized long getMissed()
+    {
+        return missed;
+    }
+
+    /** Bytes taken by the table. */
+    public long getMemoryBytes()
+    {
+        return (mask + 1) * 8;
+    }
+
+    public boolean isOffHeap()
+    {
+        return offHeap;
+    }
+
+    /**
+     * Checks the index against a HashSet of the normalized pairs of a corpus
+     * and times both. Usage: DuplicateIndex &lt;english_file&gt;
+     * &lt;turkish_file&gt; [max_pairs]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        List<String[]> pairs = new ArrayList<>();
+        try (BufferedReader en = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), "UTF-8"));
+             BufferedReader tr = new BufferedReader(new InputStreamReader(new FileInputStream(args[1]), "UTF-8")))
+        {
+            SentenceNormalizer normalizer = new SentenceNormalizer();
+            String english;
+            String turkish;
+            while((english = en.readLine()) != null && (turkish = tr.readLine()) != null)
+            {
+                pairs.add(new String[] {normalizer.normalize(english), normalizer.normalize(turkish)});
+            }
+        }
+        long maxPairs = args.length > 2 ? Long.parseLong(args[2]) : pairs.size();
+        DuplicateIndex index = new DuplicateIndex(maxPairs, false);
+        Set<String> seen = new HashSet<>();
+        int mismatches = 0;
+        int duplicates = 0;
+        for(int i = 0; i < pairs.size(); i++)
+        {
+            String[] pair = pairs.get(i);
+            long hash = hash(pair[0], pair[1]);
+            boolean expected = !seen.add(pair[0] + "\n" + pair[1]);
+            boolean found = index.getVerdict(hash) != UNKNOWN;
+            index.put(hash, false);
+            if(expected)
+            {
+                duplicates++;
+            }
+            if(expected != found && (found || index.getMissed() == 0))
+            {
+                mismatches++;
+                System.out.println((i + 1) + ": [" + pair[0] + "] [" + pair[1] + "]\n  beklenen: " + expected + "\n  bulunan:  " + found);
+            }
+        }
+        System.out.println(pairs.size() + " satır, " + mismatches + " fark.");
+        System.out.println(String.format("tekrar: %d (%%%.1f), tablo: %d çift, %d MB, sığmayan: %d", duplicates, 100.0 * duplicates / Math.max(1, pairs.size()),
+                index.size(), index.getMemoryBytes() >> 20, index.getMissed()));
+        long sink = 0;
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(String[] pair : pairs)
+            {
+                sink += seen.contains(pair[0] + "\n" + pair[1]) ? 1 : 0;
+            }
+            long old = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(String[] pair : pairs)
+            {
+                sink += index.getVerdict(hash(pair[0], pair[1]));
+            }
+            long now = System.nanoTime() - start;
+            System.out.println(String.format("tur %d: HashSet %.1f ns/satır, indeks %.1f ns/satır", round + 1, (double) old / pairs.size(), (double) now / pairs.size()));
+        }
+        System.out.println("(" + sink + ")");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
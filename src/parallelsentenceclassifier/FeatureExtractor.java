@@ -0,0 +1,113 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+/**
+ * Computes the six-feature vector of a normalized sentence pair. The
+ * extractor keeps no per-pair state, so one instance can be shared by all
+ * worker threads. The vector can also be filled in two steps, the cheap
+ * features first, so that a {@link CascadeModel} may decide a pair before
+ * the spell checker and the language model run.
+ *
+ * Each sentence is split once into a {@link TokenizedSentence}, which the
+ * word counts, the dictionary coverage and the language model all read.
+ * The spell checker still runs Jazzy's own word finder over the
+ * forSpellChecker form of the English sentence, which differs from a split
+ * on spaces.
+ *
+ * @author Eray
+ */
+public class FeatureExtractor {
+    /** Attribute names, in vector order, as written to the ARFF header. */
+    public static final String[] FEATURE_NAMES = {"wrong_words_count", "ngram_score", "sentence_length_en", "translation_score", "length_differ", "length_ratio"};
+    public static final int FEATURE_COUNT = FEATURE_NAMES.length;
+
+    private final ScoringResources resources;
+    private final FilterMetrics metrics;
+    private final boolean exactWordCount;
+
+    public FeatureExtractor(ScoringResources resources)
+    {
+        this(resources, FilterMetrics.DISABLED);
+    }
+
+    public FeatureExtractor(ScoringResources resources, FilterMetrics metrics)
+    {
+        this(resources, metrics, false);
+    }
+
+    /**
+     * @param exactWordCount count the words of a sentence without the +1
+     * WordCount always added; a model must be trained on vectors made the
+     * same way
+     */
+    public FeatureExtractor(ScoringResources resources, FilterMetrics metrics, boolean exactWordCount)
+    {
+        this.resources = resources;
+        this.metrics = metrics;
+        this.exactWordCount = exactWordCount;
+    }
+
+    public double[] extract(String en_sentence, String tr_sentence)
+    {
+        long start = metrics.start();
+        TokenizedSentence en = new TokenizedSentence(en_sentence, true);
+        TokenizedSentence tr = new TokenizedSentence(tr_sentence, false);
+        metrics.record(FilterMetrics.TOKENIZE, start);
+        double[] vector = extractCheap(en, tr);
+        extractExpensive(en, vector);
+        return vector;
+    }
+
+    /**
+     * Fills the features that need only the dictionary and word counts:
+     * sentence_length_en, translation_score, length_differ and length_ratio.
+     * wrong_words_count and ngram_score are left NaN.
+     */
+    public double[] extractCheap(TokenizedSentence en, TokenizedSentence tr)
+    {
+        double[] vector = new double[FEATURE_COUNT];
+        //eşleşme skor
+        long start = metrics.start();
+        double translation_score=resources.getDictionaryIndex().coverage(en, tr);
+        metrics.record(FilterMetrics.COVERAGE, start);
+        //uzunluk farkı ve oranı
+        start = metrics.start();
+        int en_count = en.wordCount(exactWordCount);
+        int tr_count = tr.wordCount(exactWordCount);
+        double length_ratio=(double)en_count/(double)tr_count;
+        double length_differ=Math.abs(en_count-tr_count);
+        double length_en=en_count;
+        metrics.record(FilterMetrics.WORD_COUNT, start);
+
+        vector[0] = Double.NaN;
+        vector[1] = Double.NaN;
+        vector[2] = length_en;
+        vector[3] = translation_score;
+        vector[4] = length_differ;
+        vector[5] = length_ratio;
+        return vector;
+    }
+
+    /**
+     * Fills wrong_words_count and ngram_score, the spell checker and
+     * language model features, into a vector from {@link #extractCheap}.
+     */
+    public void extractExpensive(TokenizedSentence en, double[] vector)
+    {
+        //Spell Checker
+        long start = metrics.start();
+        String en_sentenceforchecker=SentenceNormalizer.forCurrentThread().forSpellChecker(en.getText());
+        double wrong_words_count=resources.getSpellChecker().countMisspelledWords(en_sentenceforchecker);
+        metrics.record(FilterMetrics.SPELL_CHECK, start);
+        //ngram skor
+        start = metrics.start();
+        double ngram_score=resources.getLanguageModel().scoreSentence(en);
+        metrics.record(FilterMetrics.LANGUAGE_MODEL, start);
+
+        vector[0] = wrong_words_count;
+        vector[1] = ngram_score;
+    }
+}
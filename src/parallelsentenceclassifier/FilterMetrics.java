@@ -0,0 +1,333 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and per-stage latency histograms of a filter run. Stages call
+ * {@link #start()} and {@link #record(int, long)} around their work; when the
+ * metrics are disabled both return at once without reading the clock, so
+ * the hooks can stay in the hot path.
+ *
+ * The numbers can be written as JSON snapshots to a file at a fixed
+ * interval, served in Prometheus text format on a local port, and printed
+ * as a summary when the run ends.
+ *
+ * @author Eray
+ */
+public class FilterMetrics {
+    public static final int NORMALIZE = 0;
+    public static final int SPELL_CHECK = 1;
+    public static final int COVERAGE = 2;
+    public static final int WORD_COUNT = 3;
+    public static final int LANGUAGE_MODEL = 4;
+    public static final int CLASSIFY = 5;
+    public static final int PAIR = 6;
+    public static final int READ = 7;
+    public static final int WRITE = 8;
+    public static final int CASCADE = 9;
+    public static final int REQUEST = 10;
+    public static final int TOKENIZE = 11;
+    /** Histogram names, by stage number. */
+    public static final String[] STAGE_NAMES = {"normalize", "spell_check", "coverage", "word_count", "language_model", "classify", "pair", "read_batch", "write_batch", "cascade", "request", "tokenize"};
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /** Metrics that record nothing. */
+    public static final FilterMetrics DISABLED = new FilterMetrics(false);
+
+    private final boolean enabled;
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    private final AtomicLong pairsRead = new AtomicLong();
+    private final AtomicLong pairsRejected = new AtomicLong();
+    private final AtomicLong pairsKept = new AtomicLong();
+    private final AtomicLong pairsEliminated = new AtomicLong();
+    private final AtomicLong pairsDuplicate = new AtomicLong();
+    private final AtomicLong pairsEarly = new AtomicLong();
+    private final AtomicLong pairsRecalled = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final long startMillis = System.currentTimeMillis();
+    private ScheduledExecutorService reporter;
+    private HttpServer server;
+
+    public FilterMetrics()
+    {
+        this(true);
+    }
+
+    private FilterMetrics(boolean enabled)
+    {
+        this.enabled = enabled;
+        for(int i = 0; i < stages.length; i++)
+        {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /** Start time for {@link #record}, 0 when disabled. */
+    public long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Adds the time since start to the stage's histogram. */
+    public void record(int stage, long start)
+    {
+        if(enabled)
+        {
+            stages[stage].record(System.nanoTime() - start);
+        }
+    }
+
+    public LatencyHistogram getStage(int stage)
+    {
+        return stages[stage];
+    }
+
+    /** Counts one pair that came out of the processor. */
+    public void countPair(ScoredPair pair)
+    {
+        if(!enabled)
+        {
+            return;
+        }
+        pairsRead.incrementAndGet();
+        if(!pair.isScored())
+        {
+            pairsRejected.incrementAndGet();
+        }
+        else if(pair.getDistribution() != null)
+        {
+            (pair.isKept() ? pairsKept : pairsEliminated).incrementAndGet();
+        }
+        if(pair.isDuplicate())
+        {
+            pairsDuplicate.incrementAndGet();
+        }
+        if(pair.isEarly())
+        {
+            pairsEarly.incrementAndGet();
+        }
+        if(pair.isRecalled())
+        {
+            pairsRecalled.incrementAndGet();
+        }
+    }
+
+    /** Sets the input bytes consumed so far. */
+    public void setBytesIn(long bytes)
+    {
+        if(enabled)
+        {
+            bytesIn.set(bytes);
+        }
+    }
+
+    public void addBytesOut(long bytes)
+    {
+        if(enabled)
+        {
+            bytesOut.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Writes a JSON snapshot to file every intervalMillis. The file is
+     * replaced by a rename, so readers never see half a snapshot.
+     */
+    public void startSnapshots(final File file, long intervalMillis)
+    {
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    writeSnapshot(file);
+                }
+                catch(IOException e)
+                {
+                    System.err.println("Ölçüm dosyası yazılamadı: " + e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void writeSnapshot(File file) throws IOException
+    {
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp))
+        {
+            out.write(toJson().getBytes(StandardCharsets.UTF_8));
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Serves the metrics in Prometheus text format at
+     * http://127.0.0.1:port/metrics.
+     */
+    public void startHttpServer(int port) throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody())
+                {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+    }
+
+    /** Stops the snapshot thread and the HTTP server. */
+    public void stop()
+    {
+        if(reporter != null)
+        {
+            reporter.shutdownNow();
+        }
+        if(server != null)
+        {
+            server.stop(0);
+        }
+    }
+
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"timestamp_ms\": ").append(System.currentTimeMillis()).append(",\n");
+        json.append("  \"elapsed_ms\": ").append(System.currentTimeMillis() - startMillis).append(",\n");
+        json.append("  \"counters\": {");
+        json.append("\"pairs_read\": ").append(pairsRead.get());
+        json.append(", \"pairs_rejected\": ").append(pairsRejected.get());
+        json.append(", \"pairs_kept\": ").append(pairsKept.get());
+        json.append(", \"pairs_eliminated\": ").append(pairsEliminated.get());
+        json.append(", \"pairs_duplicate\": ").append(pairsDuplicate.get());
+        json.append(", \"pairs_early\": ").append(pairsEarly.get());
+        json.append(", \"pairs_recalled\": ").append(pairsRecalled.get());
+        json.append(", \"bytes_in\": ").append(bytesIn.get());
+        json.append(", \"bytes_out\": ").append(bytesOut.get());
+        json.append("},\n");
+        json.append("  \"stages\": {\n");
+        for(int s = 0; s < stages.length; s++)
+        {
+            LatencyHistogram stage = stages[s];
+            json.append("    \"").append(STAGE_NAMES[s]).append("\": {\"count\": ").append(stage.getCount());
+            json.append(", \"total_ns\": ").append(stage.getSum());
+            json.append(String.format(Locale.ROOT, ", \"mean_ns\": %.1f", stage.getMean()));
+            for(double p : PERCENTILES)
+            {
+                json.append(", \"").append(percentileName(p)).append("_ns\": ").append(stage.getPercentile(p));
+            }
+            json.append(", \"max_ns\": ").append(stage.getMax()).append("}");
+            json.append(s + 1 < stages.length ? ",\n" : "\n");
+        }
+        json.append("  }\n}\n");
+        return json.toString();
+    }
+
+    public String toPrometheus()
+    {
+        StringBuilder text = new StringBuilder();
+        counter(text, "pairs_read", "Pairs read from the corpus", pairsRead.get());
+        counter(text, "pairs_rejected", "Pairs dropped by the initial filter", pairsRejected.get());
+        counter(text, "pairs_kept", "Pairs written to the _Filtered files", pairsKept.get());
+        counter(text, "pairs_eliminated", "Pairs written to the _Eleminated file", pairsEliminated.get());
+        counter(text, "pairs_duplicate", "Pairs that got the verdict of an identical earlier pair", pairsDuplicate.get());
+        counter(text, "pairs_early", "Pairs decided by the cheap stage of the cascade", pairsEarly.get());
+        counter(text, "pairs_recalled", "Pairs that got the verdict stored by an earlier run", pairsRecalled.get());
+        counter(text, "bytes_in", "Corpus bytes consumed", bytesIn.get());
+        counter(text, "bytes_out", "Bytes written to the output files", bytesOut.get());
+        text.append("# HELP parallel_filter_stage_seconds Time spent per call of a filter stage\n");
+        text.append("# TYPE parallel_filter_stage_seconds summary\n");
+        for(int s = 0; s < stages.length; s++)
+        {
+            LatencyHistogram stage = stages[s];
+            for(double p : PERCENTILES)
+            {
+                text.append(String.format(Locale.ROOT, "parallel_filter_stage_seconds{stage=\"%s\",quantile=\"%s\"} %.9f\n",
+                        STAGE_NAMES[s], new BigDecimal(Double.toString(p)).movePointLeft(2).toPlainString(), stage.getPercentile(p) / 1e9));
+            }
+            text.append(String.format(Locale.ROOT, "parallel_filter_stage_seconds_sum{stage=\"%s\"} %.9f\n", STAGE_NAMES[s], stage.getSum() / 1e9));
+            text.append(String.format(Locale.ROOT, "parallel_filter_stage_seconds_count{stage=\"%s\"} %d\n", STAGE_NAMES[s], stage.getCount()));
+        }
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value)
+    {
+        text.append("# HELP parallel_filter_").append(name).append("_total ").append(help).append('\n');
+        text.append("# TYPE parallel_filter_").append(name).append("_total counter\n");
+        text.append("parallel_filter_").append(name).append("_total ").append(value).append('\n');
+    }
+
+    private static String percentileName(double p)
+    {
+        return "p" + (p == Math.rint(p) ? Long.toString((long)p) : Double.toString(p).replace(".", ""));
+    }
+
+    /** Prints counters and a table of the stage times. */
+    public void printSummary(PrintStream out)
+    {
+        out.println("Okunan çift: " + pairsRead.get() + ", ilk süzgeçte elenen: " + pairsRejected.get()
+                + ", kaliteli: " + pairsKept.get() + ", kalitesiz: " + pairsEliminated.get() + ", tekrar: " + pairsDuplicate.get() + ", erken karar: " + pairsEarly.get()
+                + ", önceki çalıştırmadan: " + pairsRecalled.get());
+        out.println("Okunan bayt: " + bytesIn.get() + ", yazılan bayt: " + bytesOut.get());
+        out.println(String.format(Locale.ROOT, "%-15s %10s %10s %10s %10s %10s %10s", "aşama", "çağrı", "toplam s", "ort. µs", "p50 µs", "p99 µs", "en çok µs"));
+        for(int s = 0; s < stages.length; s++)
+        {
+            LatencyHistogram stage = stages[s];
+            if(stage.getCount() == 0)
+            {
+                continue;
+            }
+            out.println(String.format(Locale.ROOT, "%-15s %10d %10.2f %10.1f %10.1f %10.1f %10.1f", STAGE_NAMES[s], stage.getCount(), stage.getSum() / 1e9,
+                    stage.getMean() / 1e3, stage.getPercentile(50) / 1e3, stage.getPercentile(99) / 1e3, stage.getMax() / 1e3));
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * -test output: kept pairs go to &lt;english_file&gt;_Filtered.txt and
+ * &lt;turkish_file&gt;_Filtered.txt, eliminated pairs to
+ * &lt;turkish_file&gt;_Eleminated.txt.
+ *
+ * The writers have large buffers and write to disk when a buffer fills up.
+ * Besides that they are flushed once per flush interval, so the files can be
+ * followed while a long run is going, without a system call per line.
+ *
+ * With {@link #setDuplicates} a kept pair identical to one already written
+ * is not written again; the first occurrence in corpus order stays. When
+ * resuming, the pairs already in the _Filtered files count as written.
+ *
+ * @author Eray
+ */
+public class FilterOutput implements PairSink {
+    private static final int BUFFER_SIZE = 1 << 20;
+    /** File name endings, in the order of {@link #checkpoint()}. */
+    public static final String[] FILE_ENDINGS = {"_Filtered.txt", "_Filtered.txt", "_Eleminated.txt"};
+
+    private final OutputFile out1;
+    private final OutputFile out2;
+    private final OutputFile out3;
+    private final long flushIntervalNanos;
+    private long lastFlush;
+    private DuplicateIndex duplicates;
+
+    public FilterOutput(String englishFile, String turkishFile) throws IOException
+    {
+        this(englishFile, turkishFile, false, 10000, FilterMetrics.DISABLED);
+    }
+
+    /**
+     * @param gzip compress the files, ".gz" is appended to their names
+     * @param flushIntervalMillis time between periodic flushes, 0 or less to
+     * flush only when a buffer is full
+     * @param metrics counts the bytes that reach the files
+     */
+    public FilterOutput(String englishFile, String turkishFile, boolean gzip, long flushIntervalMillis, FilterMetrics metrics) throws IOException
+    {
+        this(englishFile, turkishFile, "", null, gzip, flushIntervalMillis, metrics);
+    }
+
+    /**
+     * @param suffix added to every file name, before ".gz"
+     * @param resumeLengths file lengths returned by an earlier
+     * {@link #checkpoint()}: the files are cut back to them and appended to;
+     * null to start new files
+     */
+    public FilterOutput(String englishFile, String turkishFile, String suffix, long[] resumeLengths, boolean gzip, long flushIntervalMillis, FilterMetrics metrics) throws IOException
+    {
+        this.out1 = new OutputFile(fileName(englishFile, 0, suffix, gzip), resumeLengths == null ? -1 : resumeLengths[0], gzip, metrics);
+        this.out2 = new OutputFile(fileName(turkishFile, 1, suffix, gzip), resumeLengths == null ? -1 : resumeLengths[1], gzip, metrics);
+        this.out3 = new OutputFile(fileName(turkishFile, 2, suffix, gzip), resumeLengths == null ? -1 : resumeLengths[2], gzip, metrics);
+        this.flushIntervalNanos = flushIntervalMillis * 1000000L;
+        this.lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Name of output file 0, 1 or 2 (English kept, Turkish kept, eliminated)
+     * for the given corpus file.
+     */
+    public static String fileName(String corpusFile, int file, String suffix, boolean gzip)
+    {
+        return corpusFile + FILE_ENDINGS[file] + suffix + (gzip ? ".gz" : "");
+    }
+
+    /**
+     * Drops kept pairs already written, as recorded in the index. When the
+     * files were resumed, the pairs they hold are marked as written first.
+     *
+     * @return the number of pairs read back from resumed files
+     */
+    public long setDuplicates(DuplicateIndex duplicates) throws IOException
+    {
+        this.duplicates = duplicates;
+        if(out1.resumeLength < 0)
+        {
+            return 0;
+        }
+        long pairs = 0;
+        try (BufferedReader english = out1.read(); BufferedReader turkish = out2.read())
+        {
+            StringBuilder en = new StringBuilder();
+            StringBuilder tr = new StringBuilder();
+            while(readLine(english, en) && readLine(turkish, tr))
+            {
+                duplicates.markWritten(DuplicateIndex.hash(en.toString(), tr.toString()));
+                pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Reads up to the next "\r\n", the line end {@link #write} uses; a lone
+     * \r or \n is part of the sentence.
+     *
+     * @return false at the end of the file
+     */
+    private static boolean readLine(BufferedReader in, StringBuilder line) throws IOException
+    {
+        line.setLength(0);
+        int c;
+        while((c = in.read()) >= 0)
+        {
+            if(c == '\n' && line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+            {
+                line.setLength(line.length() - 1);
+                return true;
+            }
+            line.append((char)c);
+        }
+        return false;
+    }
+
+    @Override
+    public void write(ScoredPair pair) throws IOException
+    {
+        if(!pair.isScored())
+        {
+            return;
+        }
+        if(pair.isKept())
+        {
+           if(duplicates != null && !duplicates.markWritten(DuplicateIndex.hash(pair.getEnglish(), pair.getTurkish())))
+           {
+               return;
+           }
+           out1.writer.write(pair.getEnglish()+"\r\n");
+           out2.writer.write(pair.getTurkish()+"\r\n");
+        }
+        else
+        {
+            out3.writer.write(pair.getEnglish()+"\r\n"+pair.getTurkish()+"\r\n\r\n");
+        }
+        if(flushIntervalNanos > 0 && System.nanoTime() - lastFlush >= flushIntervalNanos)
+        {
+            flush();
+        }
+    }
+
+    public void flush() throws IOException
+    {
+        out1.writer.flush();
+        out2.writer.flush();
+        out3.writer.flush();
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Makes everything written so far durable and complete on disk: the
+     * writers are flushed, compressed files get a finished gzip member (the
+     * next one starts after it), and the files are synced.
+     *
+     * @return the three file lengths, to pass back when resuming
+     */
+    public long[] checkpoint() throws IOException
+    {
+        long[] lengths = {out1.checkpoint(), out2.checkpoint(), out3.checkpoint()};
+        lastFlush = System.nanoTime();
+        return lengths;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out1.close();
+        out2.close();
+        out3.close();
+    }
+
+    /** One output file and the writer stack on top of it. */
+    private static class OutputFile {
+        private final String name;
+        private final long resumeLength;
+        private final FileOutputStream file;
+        private final OutputStream counted;
+        private final boolean gzip;
+        private BufferedWriter writer;
+
+        OutputFile(String name, long resumeLength, boolean gzip, final FilterMetrics metrics) throws IOException
+        {
+            this.name = name;
+            this.resumeLength = resumeLength;
+            if(resumeLength >= 0)
+            {
+                try (RandomAccessFile existing = new RandomAccessFile(name, "rw"))
+                {
+                    if(existing.length() < resumeLength)
+                    {
+                        throw new IOException("Çıktı dosyası son kayıttan kısa: " + name);
+                    }
+                    existing.setLength(resumeLength);
+                }
+            }
+            this.file = new FileOutputStream(new File(name), resumeLength >= 0);
+            OutputStream out = file;
+            if(metrics.isEnabled())
+            {
+                out = new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException
+                    {
+                        out.write(b, off, len);
+                        metrics.addBytesOut(len);
+                    }
+
+                    @Override
+                    public void write(int b) throws IOException
+                    {
+                        out.write(b);
+                        metrics.addBytesOut(1);
+                    }
+                };
+            }
+            this.counted = out;
+            this.gzip = gzip;
+            open();
+        }
+
+        private void open() throws IOException
+        {
+            OutputStream out = counted;
+            if(gzip)
+            {
+                // closing a member ends its deflater but leaves the file open for the next
+                out = new GZIPOutputStream(new FilterOutputStream(counted) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException
+                    {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException
+                    {
+                        out.flush();
+                    }
+                }, 1 << 16);
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(out,"UTF-8"), BUFFER_SIZE);
+        }
+
+        long checkpoint() throws IOException
+        {
+            if(gzip)
+            {
+                writer.close();
+            }
+            else
+            {
+                writer.flush();
+            }
+            file.getFD().sync();
+            // taken before the next member writes its header
+            long length = file.getChannel().position();
+            if(gzip)
+            {
+                open();
+            }
+            return length;
+        }
+
+        /**
+         * Reads the file as it was resumed; a compressed file already has
+         * the header of the next member after that length.
+         */
+        BufferedReader read() throws IOException
+        {
+            InputStream in = new FilterInputStream(new FileInputStream(name)) {
+                private long remaining = resumeLength;
+
+                @Override
+                public int read() throws IOException
+                {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException
+                {
+                    if(remaining <= 0)
+                    {
+                        return -1;
+                    }
+                    int n = in.read(b, off, (int)Math.min(len, remaining));
+                    if(n > 0)
+                    {
+                        remaining -= n;
+                    }
+                    return n;
+                }
+
+                @Override
+                public int available() throws IOException
+                {
+                    return (int)Math.min(in.available(), remaining);
+                }
+            };
+            if(gzip)
+            {
+                in = new GZIPInputStream(in, 1 << 16);
+            }
+            return new BufferedReader(new InputStreamReader(in, "UTF-8"), 1 << 16);
+        }
+
+        void close() throws IOException
+        {
+            writer.close();
+            counted.close();
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import weka.classifiers.Classifier;
+import weka.classifiers.IteratedSingleClassifierEnhancer;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ArffLoader;
+
+/**
+ * A trained RandomForest compiled into flat arrays, one entry per tree node:
+ * split attribute, threshold and child indices, with the normalized class
+ * distributions of the leaves in one shared array. Scoring a vector walks
+ * those arrays and writes into a caller supplied array, so nothing is
+ * allocated per pair.
+ *
+ * The walk repeats what RandomTree and Bagging do for numeric attributes
+ * without missing values: go left when value &lt; split point, take the
+ * normalized class distribution of the leaf (or of the nearest ancestor that
+ * has one), add the trees up in order and normalize the sum with Weka's own
+ * Utils methods, so the results are the same doubles. Vectors with a missing
+ * (NaN) value must still go through Weka, which spreads them over both
+ * branches.
+ *
+ * @author Eray
+ */
+public class FlatForest {
+    private static final int LEAF = -1;
+
+    private final int numClasses;
+    private final int[] roots;
+    private final int[] attributes;
+    private final double[] splitPoints;
+    /** Left child of a split node, offset into leafDistributions for a leaf. */
+    private final int[] left;
+    private final int[] right;
+    private final double[] leafDistributions;
+
+    private FlatForest(int numClasses, int[] roots, int[] attributes, double[] splitPoints, int[] left, int[] right, double[] leafDistributions)
+    {
+        this.numClasses = numClasses;
+        this.roots = roots;
+        this.attributes = attributes;
+        this.splitPoints = splitPoints;
+        this.left = left;
+        this.right = right;
+        this.leafDistributions = leafDistributions;
+    }
+
+    /**
+     * Compiles the forest, or throws UnsupportedOperationException when it
+     * holds something the flat walk does not reproduce (nominal splits,
+     * trees without a distribution, other base classifiers).
+     */
+    public static FlatForest compile(RandomForest forest, Instances header) throws Exception
+    {
+        Builder builder = new Builder(header);
+        Classifier[] trees = (Classifier[])field(IteratedSingleClassifierEnhancer.class, "m_Classifiers").get(forest);
+        if(trees == null || trees.length != forest.getNumIterations())
+        {
+            throw new UnsupportedOperationException("eğitilmemiş orman");
+        }
+        int[] roots = new int[trees.length];
+        for(int t = 0; t < trees.length; t++)
+        {
+            if(!(trees[t] instanceof RandomTree))
+            {
+                throw new UnsupportedOperationException(trees[t].getClass().getName());
+            }
+            roots[t] = builder.addTree((RandomTree)trees[t]);
+        }
+        return builder.build(roots);
+    }
+
+    /**
+     * @return the compiled forest, or null when it cannot be compiled and
+     * Weka has to be used
+     */
+    public static FlatForest compileOrNull(RandomForest forest, Instances header)
+    {
+        try
+        {
+            return compile(forest, header);
+        }
+        catch(Exception e)
+        {
+            System.err.println("Orman düzleştirilemedi, Weka kullanılacak: " + e);
+            return null;
+        }
+    }
+
+    public int getNumClasses()
+    {
+        return numClasses;
+    }
+
+    public int getNumTrees()
+    {
+        return roots.length;
+    }
+
+    public int getNumNodes()
+    {
+        return attributes.length;
+    }
+
+    /** True when some value is NaN, which Weka treats as missing. */
+    public static boolean hasMissing(double[] vector, int offset, int length)
+    {
+        for(int i = offset; i < offset + length; i++)
+        {
+            if(Double.isNaN(vector[i]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Class distribution of one feature vector, written into result
+     * (length numClasses). The vector must not have missing values.
+     */
+    public void distribution(double[] vector, double[] result)
+    {
+        distribution(vector, 0, result, 0);
+    }
+
+    /**
+     * Scores count rows stored one after another in rows (rowLength values
+     * each) and writes count * numClasses values into results.
+     */
+    public void distributions(double[] rows, int rowLength, int count, double[] results)
+    {
+        for(int r = 0; r < count; r++)
+        {
+            distribution(rows, r * rowLength, results, r * numClasses);
+        }
+    }
+
+    private void distribution(double[] vector, int offset, double[] result, int resultOffset)
+    {
+        for(int c = 0; c < numClasses; c++)
+        {
+            result[resultOffset + c] = 0;
+        }
+        for(int root : roots)
+        {
+            int node = root;
+            while(attributes[node] != LEAF)
+            {
+                node = vector[offset + attributes[node]] < splitPoints[node] ? left[node] : right[node];
+            }
+            int leaf = left[node];
+            for(int c = 0; c < numClasses; c++)
+            {
+                result[resultOffset + c] += leafDistributions[leaf + c];
+            }
+        }
+        // Bagging.distributionForInstance: leave an all-zero sum alone, normalize otherwise
+        double sum = 0;
+        for(int c = 0; c < numClasses; c++)
+        {
+            sum += result[resultOffset + c];
+        }
+        if(!Utils.eq(sum, 0))
+        {
+            for(int c = 0; c < numClasses; c++)
+            {
+                result[resultOffset + c] /= sum;
+            }
+        }
+    }
+
+    private static Field field(Class<?> owner, String name) throws NoSuchFieldException
+    {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    /** Collects the nodes of all trees in preorder. */
+    private static final class Builder {
+        private final Instances header;
+        private final Field tree;
+        private final Field zeroR;
+        private final Field successors;
+        private final Field attribute;
+        private final Field splitPoint;
+        private final Field classDistribution;
+        private final List<Integer> attributes = new ArrayList<>();
+        private final List<Double> splitPoints = new ArrayList<>();
+        private final List<Integer> left = new ArrayList<>();
+        private final List<Integer> right = new ArrayList<>();
+        private final List<Double> leafDistributions = new ArrayList<>();
+
+        Builder(Instances header) throws Exception
+        {
+            this.header = header;
+            Class<?> node = Class.forName(RandomTree.class.getName() + "$Tree");
+            this.tree = field(RandomTree.class, "m_Tree");
+            this.zeroR = field(RandomTree.class, "m_zeroR");
+            this.successors = field(node, "m_Successors");
+            this.attribute = field(node, "m_Attribute");
+            this.splitPoint = field(node, "m_SplitPoint");
+            this.classDistribution = field(node, "m_ClassDistribution");
+        }
+
+        int addTree(RandomTree randomTree) throws Exception
+        {
+            Classifier fallback = (Classifier)zeroR.get(randomTree);
+            if(fallback != null)
+            {
+                // a tree that could not be built predicts the class prior for everything
+                Instance any = new DenseInstance(header.numAttributes());
+                any.setDataset(header);
+                return addLeaf(fallback.distributionForInstance(any));
+            }
+            return addNode(tree.get(randomTree), null);
+        }
+
+        /**
+         * @param inherited normalized distribution RandomTree falls back to
+         * when this subtree has none, or null
+         */
+        private int addNode(Object node, double[] inherited) throws Exception
+        {
+            double[] distribution = (double[])classDistribution.get(node);
+            if(distribution != null)
+            {
+                distribution = distribution.clone();
+                Utils.normalize(distribution);
+                inherited = distribution;
+            }
+            int splitAttribute = (Integer)attribute.get(node);
+            if(splitAttribute < 0)
+            {
+                if(inherited == null)
+                {
+                    throw new UnsupportedOperationException("sınıf dağılımı olmayan yaprak");
+                }
+                return addLeaf(inherited);
+            }
+            if(!header.attribute(splitAttribute).isNumeric())
+            {
+                throw new UnsupportedOperationException("sayısal olmayan bölme: " + header.attribute(splitAttribute).name());
+            }
+            Object[] children = (Object[])successors.get(node);
+            if(children.length != 2)
+            {
+                throw new UnsupportedOperationException(children.length + " dallı düğüm");
+            }
+            int index = attributes.size();
+            attributes.add(splitAttribute);
+            splitPoints.add((Double)splitPoint.get(node));
+            left.add(0);
+            right.add(0);
+            left.set(index, addNode(children[0], inherited));
+            right.set(index, addNode(children[1], inherited));
+            return index;
+        }
+
+        private int addLeaf(double[] distribution)
+        {
+            if(distribution.length != header.numClasses())
+            {
+                throw new UnsupportedOperationException("sınıf sayısı " + distribution.length);
+            }
+            int index = attributes.size();
+            attributes.add(LEAF);
+            splitPoints.add(0.0);
+            left.add(leafDistributions.size());
+            right.add(0);
+            for(double p : distribution)
+            {
+                leafDistributions.add(p);
+            }
+            return index;
+        }
+
+        FlatForest build(int[] roots)
+        {
+            int n = attributes.size();
+            int[] attributeArray = new int[n];
+            double[] splitArray = new double[n];
+            int[] leftArray = new int[n];
+            int[] rightArray = new int[n];
+            for(int i = 0; i < n; i++)
+            {
+                attributeArray[i] = attributes.get(i);
+                splitArray[i] = splitPoints.get(i);
+                leftArray[i] = left.get(i);
+                rightArray[i] = right.get(i);
+            }
+            double[] leaves = new double[leafDistributions.size()];
+            for(int i = 0; i < leaves.length; i++)
+            {
+                leaves[i] = leafDistributions.get(i);
+            }
+            return new FlatForest(header.numClasses(), roots, attributeArray, splitArray, leftArray, rightArray, leaves);
+        }
+    }
+
+    /**
+     * Checks the flat forest against Weka on a held-out ARFF file and times
+     * both roughly. Usage: FlatForest &lt;model_or_training_arff&gt;
+     * &lt;heldout_arff&gt;. The speed comparison to rely on is
+     * ForestBenchmarks in the benchmarks module.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        QualityModel model = QualityModel.open(args[0]);
+        FlatForest forest = model.getFlatForest();
+        if(forest == null)
+        {
+            System.out.println("Orman düzleştirilemedi.");
+            System.exit(1);
+        }
+        ArffLoader loader = new ArffLoader();
+        loader.setFile(new File(args[1]));
+        Instances data = loader.getDataSet();
+        int rows = data.numInstances();
+        double[] vectors = new double[rows * FeatureExtractor.FEATURE_COUNT];
+        for(int i = 0; i < rows; i++)
+        {
+            for(int j = 0; j < FeatureExtractor.FEATURE_COUNT; j++)
+            {
+                vectors[i * FeatureExtractor.FEATURE_COUNT + j] = data.instance(i).value(j);
+            }
+        }
+        System.out.println(forest.getNumTrees() + " ağaç, " + forest.getNumNodes() + " düğüm, " + rows + " örnek.");
+
+        int mismatches = 0;
+        double[] vector = new double[FeatureExtractor.FEATURE_COUNT];
+        double[] flat = new double[forest.getNumClasses()];
+        for(int i = 0; i < rows; i++)
+        {
+            System.arraycopy(vectors, i * FeatureExtractor.FEATURE_COUNT, vector, 0, vector.length);
+            if(hasMissing(vector, 0, vector.length))
+            {
+                continue;
+            }
+            double[] weka = model.wekaDistribution(vector);
+            forest.distribution(vector, flat);
+            for(int c = 0; c < flat.length; c++)
+            {
+                if(Double.doubleToLongBits(flat[c]) != Double.doubleToLongBits(weka[c]))
+                {
+                    mismatches++;
+                    if(mismatches <= 10)
+                    {
+                        System.out.println((i + 1) + ": weka " + java.util.Arrays.toString(weka) + ", düz " + java.util.Arrays.toString(flat));
+                    }
+                    break;
+                }
+            }
+        }
+        System.out.println(rows + " örnek, " + mismatches + " fark.");
+
+        double[] results = new double[rows * forest.getNumClasses()];
+        double checksum = 0;
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(int i = 0; i < rows; i++)
+            {
+                System.arraycopy(vectors, i * FeatureExtractor.FEATURE_COUNT, vector, 0, vector.length);
+                checksum += model.wekaDistribution(vector)[0];
+            }
+            long weka = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int i = 0; i < rows; i++)
+            {
+                System.arraycopy(vectors, i * FeatureExtractor.FEATURE_COUNT, vector, 0, vector.length);
+                forest.distribution(vector, flat);
+                checksum += flat[0];
+            }
+            long single = System.nanoTime() - start;
+            start = System.nanoTime();
+            forest.distributions(vectors, FeatureExtractor.FEATURE_COUNT, rows, results);
+            long batch = System.nanoTime() - start;
+            checksum += results[0];
+            System.out.println(String.format("tur %d: weka %.1f ns/örnek, düz %.1f ns/örnek, toplu %.1f ns/örnek", round + 1,
+                    (double) weka / rows, (double) single / rows, (double) batch / rows));
+        }
+        System.out.println("(" + checksum + ")");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
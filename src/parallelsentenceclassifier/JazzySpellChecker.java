@@ -9,9 +9,6 @@ package parallelsentenceclassifier;
  * @author Eray
  */
  
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
  
@@ -41,28 +38,16 @@ public class JazzySpellChecker implements SpellCheckListener {
   return misspelledWords;
  }
   
- private static SpellDictionaryHashMap dictionaryHashMap;
-  
- static{
-  
-  File dict = new File("C:\\Users\\Eray\\Documents\\NetBeansProjects\\ParallelSentenceClassifier\\words.utf-8.txt");
-  try {
-   dictionaryHashMap = new SpellDictionaryHashMap(dict);
-  } catch (FileNotFoundException e) {
-  } catch (IOException e) {
-  }
- }
-  
- private void initialize(){
+ private void initialize(SpellDictionaryHashMap dictionaryHashMap){
    spellChecker = new SpellChecker(dictionaryHashMap);
    spellChecker.addSpellCheckListener(this);  
  }
   
   
- public JazzySpellChecker() {
+ public JazzySpellChecker(SpellDictionaryHashMap dictionaryHashMap) {
    
   misspelledWords = new ArrayList<>();
-  initialize();
+  initialize(dictionaryHashMap);
  }
  @Override
  public void spellingError(SpellCheckEvent event) {
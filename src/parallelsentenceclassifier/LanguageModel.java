@@ -0,0 +1,30 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.util.List;
+
+/**
+ * Source of the ngram_score feature. Implementations are read-only after
+ * loading and are called from every worker thread.
+ *
+ * @author Eray
+ */
+public interface LanguageModel {
+    /** Highest n-gram order of the model. */
+    int getOrder();
+
+    /**
+     * Log10 probability of the sentence with &lt;s&gt; and &lt;/s&gt; added
+     * around it, computed as Berkeley LM's scoreSentence does.
+     */
+    float scoreSentence(List<String> words);
+
+    /**
+     * The same score for the tokens of a sentence that is already split,
+     * equal to scoreSentence(sentence.words()).
+     */
+    float scoreSentence(TokenizedSentence sentence);
+}
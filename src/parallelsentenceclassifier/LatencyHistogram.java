@@ -0,0 +1,114 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets, as in
+ * HdrHistogram: every power of two is split into 16 equal buckets, so a
+ * percentile is off by at most 1/16 of its value. Values below 16 are
+ * exact. Recording is two atomic adds and no allocation, and any number of
+ * threads may record at once.
+ *
+ * @author Eray
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos)
+    {
+        if(nanos < 0)
+        {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long current;
+        while(nanos > (current = max.get()) && !max.compareAndSet(current, nanos))
+        {
+            // another thread raised the maximum, look again
+        }
+    }
+
+    private static int bucket(long value)
+    {
+        if(value < SUB_BUCKETS)
+        {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest value that falls into the bucket. */
+    private static long upperBound(int bucket)
+    {
+        if(bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (bucket % SUB_BUCKETS) * width + width - 1;
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /** Sum of all recorded values. */
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return a value that at least the given share of the recorded values
+     * do not exceed, never more than the maximum
+     */
+    public long getPercentile(double percentile)
+    {
+        long n = count.get();
+        if(n == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts.get(i);
+            if(seen >= rank)
+            {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory mapping of a whole file. A single MappedByteBuffer is
+ * limited to 2 GB, so the file is mapped in 1 GB chunks and every accessor
+ * takes a long position. Reads never move a buffer position, which makes one
+ * instance safe to share between threads. The pages live in the OS page
+ * cache, not on the Java heap, and are shared by every process that maps the
+ * same file.
+ *
+ * @author Eray
+ */
+public class MappedFile {
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final File file;
+    private final long size;
+    private final MappedByteBuffer[] chunks;
+
+    public MappedFile(File file) throws IOException
+    {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            this.size = channel.size();
+            this.chunks = new MappedByteBuffer[(int)((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+            for(int i = 0; i < chunks.length; i++)
+            {
+                long start = (long)i << CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+            }
+        }
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public long size()
+    {
+        return size;
+    }
+
+    public byte get(long position)
+    {
+        return chunks[(int)(position >>> CHUNK_BITS)].get((int)(position & CHUNK_MASK));
+    }
+
+    public short getShort(long position)
+    {
+        int offset = (int)(position & CHUNK_MASK);
+        if(offset <= CHUNK_SIZE - 2)
+        {
+            return chunks[(int)(position >>> CHUNK_BITS)].getShort(offset);
+        }
+        return (short)((get(position) & 0xFF) << 8 | (get(position + 1) & 0xFF));
+    }
+
+    public int getInt(long position)
+    {
+        int offset = (int)(position & CHUNK_MASK);
+        if(offset <= CHUNK_SIZE - 4)
+        {
+            return chunks[(int)(position >>> CHUNK_BITS)].getInt(offset);
+        }
+        return (getShort(position) & 0xFFFF) << 16 | (getShort(position + 2) & 0xFFFF);
+    }
+
+    public long getLong(long position)
+    {
+        int offset = (int)(position & CHUNK_MASK);
+        if(offset <= CHUNK_SIZE - 8)
+        {
+            return chunks[(int)(position >>> CHUNK_BITS)].getLong(offset);
+        }
+        return (getInt(position) & 0xFFFFFFFFL) << 32 | (getInt(position + 4) & 0xFFFFFFFFL);
+    }
+
+    public float getFloat(long position)
+    {
+        return Float.intBitsToFloat(getInt(position));
+    }
+
+    /** Copies length bytes starting at position into target, across chunk borders if needed. */
+    public void get(long position, byte[] target, int offset, int length)
+    {
+        while(length > 0)
+        {
+            MappedByteBuffer chunk = chunks[(int)(position >>> CHUNK_BITS)];
+            int start = (int)(position & CHUNK_MASK);
+            int n = Math.min(length, chunk.limit() - start);
+            for(int i = 0; i < n; i++)
+            {
+                target[offset + i] = chunk.get(start + i);
+            }
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Position of the first occurrence of value in [from, to), or -1.
+     */
+    public long indexOf(byte value, long from, long to)
+    {
+        to = Math.min(to, size);
+        while(from < to)
+        {
+            MappedByteBuffer chunk = chunks[(int)(from >>> CHUNK_BITS)];
+            int start = (int)(from & CHUNK_MASK);
+            int end = (int)Math.min(chunk.limit(), start + (to - from));
+            for(int i = start; i < end; i++)
+            {
+                if(chunk.get(i) == value)
+                {
+                    return from + (i - start);
+                }
+            }
+            from += end - start;
+        }
+        return -1;
+    }
+}
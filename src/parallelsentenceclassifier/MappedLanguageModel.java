@@ -0,0 +1,532 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import edu.berkeley.nlp.lm.ArrayEncodedNgramLanguageModel;
+import edu.berkeley.nlp.lm.io.LmReaders;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Language model read from the binary file written by {@link ArpaConverter}.
+ * The file is memory mapped, so opening it takes milliseconds, the n-gram
+ * tables stay off the Java heap and several JVMs scoring on the same machine
+ * share one copy through the page cache.
+ *
+ * Lookups follow Berkeley LM's ArrayEncodedProbBackoffLm step by step: an
+ * n-gram w1..wn is keyed by the slot of its suffix w2..wn and the id of w1,
+ * suffixes missing from the ARPA file exist as entries without a
+ * probability, and scoreSentence walks the same windows. The scores are
+ * therefore identical to Berkeley's whenever the converter reported a
+ * lossless codebook for every order. When it had to merge values, each
+ * probability and backoff is off by at most the error it printed, and a
+ * sentence of k words is off by at most (k + 1) * order times that error.
+ *
+ * There is one deliberate difference. When the longest match is a
+ * suffix-only entry, Berkeley searches again for the longest real one but
+ * extends each step from the last real entry instead of the entry just
+ * found, so it looks up an unrelated n-gram. Here the search follows the
+ * suffix chain. Berkeley's lookup depends on the positions of its own hash
+ * tables, which this file does not share, so it cannot be reproduced. The
+ * path is only taken for models whose ARPA file lacks some suffixes of its
+ * n-grams; in a differential test on models with 5% of their lower order
+ * entries removed it changed about one sentence in two thousand, and every
+ * other sentence scored bit for bit the same. A forest trained on -train
+ * output scored with the ARPA file should be retrained when such a model is
+ * switched to its binary form.
+ *
+ * Usage: MappedLanguageModel &lt;arpa_file&gt; &lt;binary_file&gt;
+ * &lt;sentence_file&gt; scores every line with both models, lists the
+ * sentences that differ, telling apart those that took the fallback above,
+ * and times both.
+ *
+ * File layout, big endian:
+ * <pre>
+ *  0  "NGRAMBIN", int version, int order
+ * 16  long vocabulary size V, long word offset table position, long word bytes position
+ * 40  one 64 byte block per order:
+ *       long slots, long entries, long keys position, long values position,
+ *       long probability codebook position, long backoff codebook position,
+ *       int probability codes, int backoff codes, int value width, int unused
+ * </pre>
+ * Words are UTF-8, sorted by their bytes, and a word's id is its rank. The
+ * unigram table has one value per word id; higher orders are open
+ * addressing tables of (suffix slot &lt;&lt; 32 | word id) keys with linear
+ * probing. A value is a 16 bit probability code followed by a 16 bit backoff
+ * code, except in the highest order which has no backoffs.
+ *
+ * @author Eray
+ */
+public class MappedLanguageModel implements LanguageModel {
+    static final byte[] MAGIC = "NGRAMBIN".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int ORDER_HEADER_SIZE = 64;
+    /** Value code of a word that has no unigram entry. */
+    static final int ABSENT = 0xFFFF;
+    static final long EMPTY_KEY = -1L;
+    /** Berkeley's ConfigOptions.unknownWordLogProb. */
+    static final float OOV_LOG_PROB = -100.0f;
+
+    private final MappedFile file;
+    private final int order;
+    private final long vocabularySize;
+    private final long wordOffsets;
+    private final long wordBytes;
+    private final long[] slots;
+    private final long[] keys;
+    private final long[] values;
+    private final int[] valueWidths;
+    private final float[][] probabilities;
+    private final float[][] backoffs;
+    private final int startId;
+    private final int endId;
+    private final int unknownId;
+
+    private MappedLanguageModel(MappedFile file) throws IOException
+    {
+        this.file = file;
+        byte[] magic = new byte[MAGIC.length];
+        if(file.size() < HEADER_SIZE)
+        {
+            throw new IOException("İkili dil modeli değil: " + file.getFile());
+        }
+        file.get(0, magic, 0, magic.length);
+        if(!Arrays.equals(magic, MAGIC))
+        {
+            throw new IOException("İkili dil modeli değil: " + file.getFile());
+        }
+        if(file.getInt(8) != VERSION)
+        {
+            throw new IOException("Desteklenmeyen ikili dil modeli sürümü " + file.getInt(8) + ": " + file.getFile());
+        }
+        this.order = file.getInt(12);
+        this.vocabularySize = file.getLong(16);
+        this.wordOffsets = file.getLong(24);
+        this.wordBytes = file.getLong(32);
+        this.slots = new long[order];
+        this.keys = new long[order];
+        this.values = new long[order];
+        this.valueWidths = new int[order];
+        this.probabilities = new float[order][];
+        this.backoffs = new float[order][];
+        for(int k = 0; k < order; k++)
+        {
+            long header = HEADER_SIZE + (long)k * ORDER_HEADER_SIZE;
+            slots[k] = file.getLong(header);
+            keys[k] = file.getLong(header + 16);
+            values[k] = file.getLong(header + 24);
+            probabilities[k] = readCodebook(file.getLong(header + 32), file.getInt(header + 48));
+            backoffs[k] = readCodebook(file.getLong(header + 40), file.getInt(header + 52));
+            valueWidths[k] = file.getInt(header + 56);
+        }
+        this.startId = wordId("<s>");
+        this.endId = wordId("</s>");
+        this.unknownId = wordId("<unk>");
+    }
+
+    /**
+     * Opens a model written by {@link ArpaConverter}.
+     */
+    public static MappedLanguageModel open(String fileName) throws IOException
+    {
+        return new MappedLanguageModel(new MappedFile(new File(fileName)));
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length != 3)
+        {
+            System.err.println("Kullanım: MappedLanguageModel <arpa_file> <binary_file> <sentence_file>");
+            System.exit(1);
+        }
+        ArrayEncodedNgramLanguageModel<String> berkeley = LmReaders.readArrayEncodedLmFromArpa(args[0], false);
+        MappedLanguageModel model = open(args[1]);
+        List<List<String>> sentences = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[2]), "UTF-8")))
+        {
+            String line;
+            while((line = in.readLine()) != null)
+            {
+                sentences.add(NgramScore.words(line));
+            }
+        }
+        int mismatches = 0;
+        int fallbacks = 0;
+        for(int i = 0; i < sentences.size(); i++)
+        {
+            float expected = berkeley.scoreSentence(sentences.get(i));
+            float found = model.scoreSentence(sentences.get(i));
+            if(Float.floatToIntBits(expected) != Float.floatToIntBits(found))
+            {
+                boolean fallback = model.takesFallback(sentences.get(i));
+                if(fallback)
+                {
+                    fallbacks++;
+                }
+                else
+                {
+                    mismatches++;
+                }
+                System.out.println((i + 1) + ": " + sentences.get(i) + (fallback ? " (sonek zinciri)" : "") + "\n  beklenen: " + expected + "\n  bulunan:  " + found);
+            }
+        }
+        System.out.println(sentences.size() + " satır, " + mismatches + " fark, " + fallbacks + " sonek zinciri farkı.");
+        double sink = 0;
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(List<String> sentence : sentences)
+            {
+                sink += berkeley.scoreSentence(sentence);
+            }
+            long old = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(List<String> sentence : sentences)
+            {
+                sink += model.scoreSentence(sentence);
+            }
+            long now = System.nanoTime() - start;
+            System.out.println(String.format("tur %d: Berkeley %.1f µs/satır, ikili model %.1f µs/satır", round + 1, old / 1e3 / sentences.size(), now / 1e3 / sentences.size()));
+        }
+        System.out.println("(" + sink + ")");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    /** True when the file starts with the binary model header rather than ARPA text. */
+    public static boolean isBinary(File file) throws IOException
+    {
+        byte[] magic = new byte[MAGIC.length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            in.readFully(magic);
+        }
+        catch(EOFException e)
+        {
+            return false;
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    private float[] readCodebook(long position, int size)
+    {
+        float[] codebook = new float[size];
+        for(int i = 0; i < size; i++)
+        {
+            codebook[i] = file.getFloat(position + 4L * i);
+        }
+        return codebook;
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return order;
+    }
+
+    public long getVocabularySize()
+    {
+        return vocabularySize;
+    }
+
+    /** Number of n-grams of the given order (1-based), including suffix-only entries. */
+    public long getEntryCount(int ngramOrder)
+    {
+        return file.getLong(HEADER_SIZE + (long)(ngramOrder - 1) * ORDER_HEADER_SIZE + 8);
+    }
+
+    @Override
+    public float scoreSentence(List<String> sentence)
+    {
+        int size = sentence.size();
+        int[] bounded = new int[size + 2];
+        for(int i = 0; i < size; i++)
+        {
+            int id = wordId(sentence.get(i));
+            bounded[i + 1] = id < 0 ? unknownId : id;
+        }
+        return scoreBounded(bounded);
+    }
+
+    @Override
+    public float scoreSentence(TokenizedSentence sentence)
+    {
+        int size = sentence.getTokenCount();
+        int[] bounded = new int[size + 2];
+        byte[] bytes = sentence.getUtf8();
+        for(int i = 0; i < size; i++)
+        {
+            int id = wordId(bytes, sentence.getUtf8Start(i), sentence.getUtf8End(i));
+            bounded[i + 1] = id < 0 ? unknownId : id;
+        }
+        return scoreBounded(bounded);
+    }
+
+    /** Sums the windows over word ids with room for &lt;s&gt; and &lt;/s&gt; at both ends. */
+    private float scoreBounded(int[] bounded)
+    {
+        int size = bounded.length - 2;
+        bounded[0] = startId;
+        bounded[size + 1] = endId;
+
+        float sentenceScore = 0.0f;
+        for(int i = 1; i < order - 1 && i <= size + 1; ++i)
+        {
+            sentenceScore += getLogProb(bounded, 0, i + 1);
+        }
+        for(int i = order - 1; i < size + 2; ++i)
+        {
+            sentenceScore += getLogProb(bounded, i - order + 1, i + 1);
+        }
+        return sentenceScore;
+    }
+
+    /**
+     * True when some window of the sentence has a suffix-only entry as its
+     * longest match, where the score may differ from Berkeley's.
+     */
+    boolean takesFallback(List<String> sentence)
+    {
+        int size = sentence.size();
+        int[] bounded = new int[size + 2];
+        for(int i = 0; i < size; i++)
+        {
+            int id = wordId(sentence.get(i));
+            bounded[i + 1] = id < 0 ? unknownId : id;
+        }
+        bounded[0] = startId;
+        bounded[size + 1] = endId;
+        for(int i = 1; i < size + 2; ++i)
+        {
+            int startPos = Math.max(0, i - order + 1);
+            if(!hasUnigram(bounded[i]))
+            {
+                continue;
+            }
+            long matchedProbContext = bounded[i];
+            int matchedProbContextOrder = -1;
+            for(int j = i - 1; j >= startPos; --j)
+            {
+                long probContext = getOffset(matchedProbContext, i - j - 1, bounded[j]);
+                if(probContext < 0)
+                {
+                    break;
+                }
+                matchedProbContext = probContext;
+                matchedProbContextOrder = i - j - 1;
+            }
+            if(Float.isNaN(getProb(matchedProbContextOrder + 1, matchedProbContext)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Log10 probability of ngram[endPos - 1] given the words before it in [startPos, endPos). */
+    public float getLogProb(int[] ngram, int startPos, int endPos)
+    {
+        if(endPos - startPos < 1)
+        {
+            return 0.0f;
+        }
+        int unigramWord = ngram[endPos - 1];
+        if(!hasUnigram(unigramWord))
+        {
+            return OOV_LOG_PROB;
+        }
+        long matchedProbContext = unigramWord;
+        int matchedProbContextOrder = -1;
+        for(int i = endPos - 2; i >= startPos; --i)
+        {
+            int probContextOrder = endPos - i - 2;
+            long probContext = getOffset(matchedProbContext, probContextOrder, ngram[i]);
+            if(probContext < 0)
+            {
+                break;
+            }
+            matchedProbContext = probContext;
+            matchedProbContextOrder = probContextOrder;
+        }
+        float logProb = getProb(matchedProbContextOrder + 1, matchedProbContext);
+        if(Float.isNaN(logProb))
+        {
+            // longest match was only a suffix of some longer n-gram; keep the longest real one
+            long probContext = 0;
+            matchedProbContext = 0;
+            matchedProbContextOrder = -1;
+            for(int i = endPos - 1; i >= startPos; --i)
+            {
+                int probContextOrder = endPos - i - 2;
+                probContext = getOffset(probContext, probContextOrder, ngram[i]);
+                if(probContext < 0)
+                {
+                    break;
+                }
+                float tmpProb = getProb(probContextOrder + 1, probContext);
+                if(!Float.isNaN(tmpProb))
+                {
+                    logProb = tmpProb;
+                    matchedProbContext = probContext;
+                    matchedProbContextOrder = probContextOrder;
+                }
+            }
+        }
+        float backoff = matchedProbContextOrder == endPos - startPos - 2 || endPos - startPos <= 1 ? 0.0f : getBackoffSum(ngram, startPos, endPos, matchedProbContextOrder);
+        return logProb + backoff;
+    }
+
+    private float getBackoffSum(int[] ngram, int startPos, int endPos, int matchedProbContextOrder)
+    {
+        int unigramWord = ngram[endPos - 2];
+        if(!hasUnigram(unigramWord))
+        {
+            return 0.0f;
+        }
+        long backoffContext = unigramWord;
+        float backoff = 0.0f;
+        if(matchedProbContextOrder < 0)
+        {
+            backoff = getBackoff(0, backoffContext);
+        }
+        int i = 1;
+        for(; i <= matchedProbContextOrder && backoffContext >= 0; ++i)
+        {
+            backoffContext = getOffset(backoffContext, i - 1, ngram[endPos - i - 2]);
+        }
+        for(; i < endPos - startPos - 1 && backoffContext >= 0; ++i)
+        {
+            int backoffContextOrder = i - 1;
+            backoffContext = getOffset(backoffContext, backoffContextOrder, ngram[endPos - i - 2]);
+            if(backoffContext < 0)
+            {
+                break;
+            }
+            float currBackoff = getBackoff(backoffContextOrder + 1, backoffContext);
+            backoff += Float.isNaN(currBackoff) ? 0.0f : currBackoff;
+        }
+        return backoff;
+    }
+
+    private boolean hasUnigram(int word)
+    {
+        return word >= 0 && word < vocabularySize && (file.getShort(values[0] + (long)valueWidths[0] * word) & 0xFFFF) != ABSENT;
+    }
+
+    /**
+     * Slot of the n-gram made of word followed by the context at contextOffset
+     * (of order contextOrder + 1), or -1 when it is not in the model.
+     */
+    private long getOffset(long contextOffset, int contextOrder, int word)
+    {
+        if(word < 0)
+        {
+            return -1;
+        }
+        if(contextOrder < 0)
+        {
+            return hasUnigram(word) ? word : -1;
+        }
+        int k = contextOrder + 1;
+        if(k >= order)
+        {
+            return -1;
+        }
+        long key = contextOffset << 32 | word;
+        long mask = slots[k] - 1;
+        long slot = hash(key) & mask;
+        while(true)
+        {
+            long stored = file.getLong(keys[k] + 8 * slot);
+            if(stored == key)
+            {
+                return slot;
+            }
+            if(stored == EMPTY_KEY)
+            {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private float getProb(int k, long slot)
+    {
+        return probabilities[k][file.getShort(values[k] + (long)valueWidths[k] * slot) & 0xFFFF];
+    }
+
+    private float getBackoff(int k, long slot)
+    {
+        if(valueWidths[k] < 4)
+        {
+            return 0.0f;
+        }
+        return backoffs[k][file.getShort(values[k] + (long)valueWidths[k] * slot + 2) & 0xFFFF];
+    }
+
+    static long hash(long key)
+    {
+        long h = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /** Rank of the word in the vocabulary, or -1. */
+    public int wordId(String word)
+    {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        return wordId(bytes, 0, bytes.length);
+    }
+
+    /** Rank of the word whose UTF-8 bytes are bytes[from, to), or -1. */
+    public int wordId(byte[] bytes, int from, int to)
+    {
+        long low = 0;
+        long high = vocabularySize - 1;
+        while(low <= high)
+        {
+            long mid = (low + high) >>> 1;
+            int c = compareWord(mid, bytes, from, to);
+            if(c < 0)
+            {
+                low = mid + 1;
+            }
+            else if(c > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return (int)mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareWord(long id, byte[] bytes, int from, int to)
+    {
+        long start = wordBytes + file.getLong(wordOffsets + 8 * id);
+        long length = wordBytes + file.getLong(wordOffsets + 8 * (id + 1)) - start;
+        long n = Math.min(length, to - from);
+        for(int i = 0; i < n; i++)
+        {
+            int c = (file.get(start + i) & 0xFF) - (bytes[from + i] & 0xFF);
+            if(c != 0)
+            {
+                return c;
+            }
+        }
+        return Long.compare(length, to - from);
+    }
+}
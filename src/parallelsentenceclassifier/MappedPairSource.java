@@ -0,0 +1,259 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the English and Turkish files through {@link MappedFile}, so files
+ * over 2 GB work and nothing is copied through stream buffers. Line ends are
+ * found in the raw bytes (\n, \r or \r\n, like BufferedReader.readLine).
+ * A pair whose shorter side cannot reach the 40 characters of the initial
+ * filter even after normalization is handed out by
+ * {@link SentencePair#rejected(long)} without decoding either line.
+ *
+ * The byte offsets after the last pair handed out can be read back and
+ * passed to {@link #seek} later. {@link #skipLines} and {@link #setLastLine}
+ * restrict a run to a range of lines, {@link #skipToEnglishOffset} and
+ * {@link #setEnglishEnd} to a byte range of the English file.
+ *
+ * @author Eray
+ */
+public class MappedPairSource implements PairSource {
+    private static final int MIN_LENGTH = 40;
+
+    private final MappedFile english;
+    private final MappedFile turkish;
+    private final ProgressReporter progress;
+    private long englishOffset = 0;
+    private long turkishOffset = 0;
+    private long lineNumber = 0;
+    private long lastLine = Long.MAX_VALUE;
+    private long englishEnd = Long.MAX_VALUE;
+    private boolean finished = false;
+    private byte[] buffer = new byte[1024];
+
+    // line found by the last call of scan()
+    private long lineStart;
+    private int lineLength;
+    private int lineBound;
+
+    public MappedPairSource(File englishFile, File turkishFile) throws IOException
+    {
+        this(englishFile, turkishFile, 0);
+    }
+
+    /**
+     * @param progressMillis interval of the progress line printed to
+     * System.out, 0 for none
+     */
+    public MappedPairSource(File englishFile, File turkishFile, long progressMillis) throws IOException
+    {
+        this.english = new MappedFile(englishFile);
+        this.turkish = new MappedFile(turkishFile);
+        this.progress = new ProgressReporter(System.out, english.size() + turkish.size(), progressMillis);
+    }
+
+    /**
+     * Continues at the given byte offsets, which must be line starts such as
+     * the ones {@link #getEnglishOffset} and {@link #getTurkishOffset}
+     * returned; lineNumber is the number of the line before them.
+     */
+    public void seek(long englishOffset, long turkishOffset, long lineNumber)
+    {
+        this.englishOffset = englishOffset;
+        this.turkishOffset = turkishOffset;
+        this.lineNumber = lineNumber;
+        this.finished = false;
+    }
+
+    /**
+     * Moves past count pairs without decoding them.
+     *
+     * @return the number of pairs skipped, less than count at end of input
+     */
+    public long skipLines(long count)
+    {
+        long skipped = 0;
+        while(skipped < count && hasNext() && next(false) != null)
+        {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Moves past the pairs whose English line starts before offset, without
+     * decoding them.
+     */
+    public void skipToEnglishOffset(long offset)
+    {
+        while(englishOffset < offset && hasNext() && next(false) != null)
+        {
+            // skipped
+        }
+    }
+
+    /** Stops after the given 1-based line number. */
+    public void setLastLine(long lastLine)
+    {
+        this.lastLine = lastLine;
+    }
+
+    /** Stops before the first pair whose English line starts at or after offset. */
+    public void setEnglishEnd(long offset)
+    {
+        this.englishEnd = offset;
+    }
+
+    private boolean hasNext()
+    {
+        return lineNumber < lastLine && englishOffset < englishEnd;
+    }
+
+    @Override
+    public List<SentencePair> nextBatch(int max) throws IOException
+    {
+        List<SentencePair> batch = new ArrayList<>(max);
+        SentencePair pair;
+        while(batch.size() < max && hasNext() && (pair = next(true)) != null)
+        {
+            batch.add(pair);
+        }
+        long bytes = englishOffset + turkishOffset;
+        if(batch.isEmpty())
+        {
+            progress.finish(lineNumber, bytes);
+        }
+        else
+        {
+            progress.update(lineNumber, bytes);
+        }
+        return batch;
+    }
+
+    /**
+     * @param decode false to only move past the pair; it is then returned as
+     * rejected
+     */
+    private SentencePair next(boolean decode)
+    {
+        if(finished)
+        {
+            return null;
+        }
+        long englishEnd = scan(english, englishOffset);
+        long englishStart = lineStart;
+        int englishLength = lineLength;
+        int englishBound = lineBound;
+        long turkishEnd = scan(turkish, turkishOffset);
+        if(englishEnd < 0 || turkishEnd < 0)
+        {
+            finished = true;
+            if(englishEnd >= 0 || turkishEnd >= 0)
+            {
+                File longer = englishEnd >= 0 ? english.getFile() : turkish.getFile();
+                File shorter = englishEnd >= 0 ? turkish.getFile() : english.getFile();
+                System.err.println("Uyarı: " + shorter + " " + lineNumber + ". satırda bitti, " + longer + " daha uzun; kalan satırlar atlandı.");
+            }
+            return null;
+        }
+        englishOffset = englishEnd;
+        turkishOffset = turkishEnd;
+        lineNumber++;
+        if(!decode || englishBound < MIN_LENGTH || lineBound < MIN_LENGTH)
+        {
+            return SentencePair.rejected(lineNumber);
+        }
+        return new SentencePair(lineNumber, decode(english, englishStart, englishLength), decode(turkish, lineStart, lineLength));
+    }
+
+    /**
+     * Finds the line starting at from and stores it in lineStart, lineLength
+     * and lineBound (length plus bytes that may grow in normalization).
+     *
+     * @return start of the next line, or -1 at end of file
+     */
+    private long scan(MappedFile file, long from)
+    {
+        long size = file.size();
+        if(from >= size)
+        {
+            return -1;
+        }
+        long position = from;
+        int bound = 0;
+        byte b = 0;
+        while(position < size)
+        {
+            b = file.get(position);
+            if(b == '\n' || b == '\r')
+            {
+                break;
+            }
+            if(SentenceNormalizer.mayGrow(b))
+            {
+                bound++;
+            }
+            position++;
+        }
+        lineStart = from;
+        lineLength = (int)(position - from);
+        lineBound = lineLength + bound;
+        if(position == size)
+        {
+            return size;
+        }
+        if(b == '\r' && position + 1 < size && file.get(position + 1) == '\n')
+        {
+            return position + 2;
+        }
+        return position + 1;
+    }
+
+    private String decode(MappedFile file, long start, int length)
+    {
+        if(buffer.length < length)
+        {
+            buffer = new byte[Math.max(length, 2 * buffer.length)];
+        }
+        file.get(start, buffer, 0, length);
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /** Start of the next English line to be read. */
+    public long getEnglishOffset()
+    {
+        return englishOffset;
+    }
+
+    /** Start of the next Turkish line to be read. */
+    public long getTurkishOffset()
+    {
+        return turkishOffset;
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return englishOffset + turkishOffset;
+    }
+
+    /** Number of the last pair handed out or skipped. */
+    public long getLineNumber()
+    {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        // the mappings are released when they are garbage collected
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Web1T5-style n-gram counts read from the binary file written by
+ * {@link Web1T5Converter}. Like {@link MappedLanguageModel} the file is
+ * memory mapped, so a count set of any size opens in milliseconds and stays
+ * off the Java heap.
+ *
+ * Words are encoded as ids and every order is a sorted array of fixed size
+ * records, so a lookup is a binary search inside the block of n-grams that
+ * start with the same word: a few dozen reads from mapped memory.
+ *
+ * File layout, big endian:
+ * <pre>
+ *  0  "NGRAMCNT", int version, int order
+ * 16  long vocabulary size V, long word offset table position, long word bytes position, long unigram sum
+ * 48  one 32 byte block per order:
+ *       long entries, long first word index position, long records position, int count width, int unused
+ * </pre>
+ * Words are UTF-8, sorted by their bytes, and a word's id is its rank. The
+ * unigram records are just the counts, one per word id. An order k &gt; 1
+ * has V + 1 longs giving the first record of each first word, and records
+ * of the ids of words 2..k (4 bytes each) followed by the count, sorted by
+ * their ids. A count is 4 bytes when the largest count of its order fits,
+ * otherwise 8.
+ *
+ * @author Eray
+ */
+public class NgramCountStore {
+    static final byte[] MAGIC = "NGRAMCNT".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+    static final int ORDER_HEADER_SIZE = 32;
+
+    private final MappedFile file;
+    private final int order;
+    private final long vocabularySize;
+    private final long wordOffsets;
+    private final long wordBytes;
+    private final long unigramSum;
+    private final long[] entries;
+    private final long[] firstWordIndex;
+    private final long[] records;
+    private final int[] countWidths;
+    private final int[] recordSizes;
+
+    private NgramCountStore(MappedFile file) throws IOException
+    {
+        this.file = file;
+        byte[] magic = new byte[MAGIC.length];
+        if(file.size() < HEADER_SIZE)
+        {
+            throw new IOException("N-gram sayım dosyası değil: " + file.getFile());
+        }
+        file.get(0, magic, 0, magic.length);
+        if(!Arrays.equals(magic, MAGIC))
+        {
+            throw new IOException("N-gram sayım dosyası değil: " + file.getFile());
+        }
+        if(file.getInt(8) != VERSION)
+        {
+            throw new IOException("Desteklenmeyen n-gram sayım dosyası sürümü " + file.getInt(8) + ": " + file.getFile());
+        }
+        this.order = file.getInt(12);
+        this.vocabularySize = file.getLong(16);
+        this.wordOffsets = file.getLong(24);
+        this.wordBytes = file.getLong(32);
+        this.unigramSum = file.getLong(40);
+        this.entries = new long[order];
+        this.firstWordIndex = new long[order];
+        this.records = new long[order];
+        this.countWidths = new int[order];
+        this.recordSizes = new int[order];
+        for(int k = 0; k < order; k++)
+        {
+            long header = HEADER_SIZE + (long)k * ORDER_HEADER_SIZE;
+            entries[k] = file.getLong(header);
+            firstWordIndex[k] = file.getLong(header + 8);
+            records[k] = file.getLong(header + 16);
+            countWidths[k] = file.getInt(header + 24);
+            recordSizes[k] = 4 * k + countWidths[k];
+        }
+    }
+
+    /**
+     * Opens a count store written by {@link Web1T5Converter}.
+     */
+    public static NgramCountStore open(String fileName) throws IOException
+    {
+        return new NgramCountStore(new MappedFile(new File(fileName)));
+    }
+
+    /** True when the file starts with the count store header. */
+    public static boolean isCountStore(File file) throws IOException
+    {
+        byte[] magic = new byte[MAGIC.length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            in.readFully(magic);
+        }
+        catch(EOFException e)
+        {
+            return false;
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    public int getOrder()
+    {
+        return order;
+    }
+
+    public long getVocabularySize()
+    {
+        return vocabularySize;
+    }
+
+    /** Sum of all unigram counts, the number of tokens counted. */
+    public long getUnigramSum()
+    {
+        return unigramSum;
+    }
+
+    /** Number of n-grams of the given order (1-based). */
+    public long getEntryCount(int ngramOrder)
+    {
+        return entries[ngramOrder - 1];
+    }
+
+    /**
+     * Count of the n-gram words[from..to), 0 when it is not in the store or
+     * contains a word id below 0.
+     */
+    public long getCount(int[] words, int from, int to)
+    {
+        int k = to - from - 1;
+        if(k < 0 || k >= order || words[from] < 0 || words[from] >= vocabularySize)
+        {
+            return 0;
+        }
+        if(k == 0)
+        {
+            return readCount(records[0] + (long)countWidths[0] * words[from], countWidths[0]);
+        }
+        long index = firstWordIndex[k] + 8L * words[from];
+        long low = file.getLong(index);
+        long high = file.getLong(index + 8) - 1;
+        int size = recordSizes[k];
+        while(low <= high)
+        {
+            long mid = (low + high) >>> 1;
+            long record = records[k] + mid * size;
+            int c = 0;
+            for(int i = 1; i <= k && c == 0; i++)
+            {
+                c = Integer.compare(file.getInt(record + 4L * (i - 1)), words[from + i]);
+            }
+            if(c < 0)
+            {
+                low = mid + 1;
+            }
+            else if(c > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return readCount(record + 4L * k, countWidths[k]);
+            }
+        }
+        return 0;
+    }
+
+    private long readCount(long position, int width)
+    {
+        return width == 4 ? file.getInt(position) & 0xFFFFFFFFL : file.getLong(position);
+    }
+
+    /** Rank of the word in the vocabulary, or -1. */
+    public int wordId(String word)
+    {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        return wordId(bytes, 0, bytes.length);
+    }
+
+    /** Rank of the word whose UTF-8 bytes are bytes[from, to), or -1. */
+    public int wordId(byte[] bytes, int from, int to)
+    {
+        long low = 0;
+        long high = vocabularySize - 1;
+        while(low <= high)
+        {
+            long mid = (low + high) >>> 1;
+            int c = compareWord(mid, bytes, from, to);
+            if(c < 0)
+            {
+                low = mid + 1;
+            }
+            else if(c > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return (int)mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareWord(long id, byte[] bytes, int from, int to)
+    {
+        long start = wordBytes + file.getLong(wordOffsets + 8 * id);
+        long length = wordBytes + file.getLong(wordOffsets + 8 * (id + 1)) - start;
+        long n = Math.min(length, to - from);
+        for(int i = 0; i < n; i++)
+        {
+            int c = (file.get(start + i) & 0xFF) - (bytes[from + i] & 0xFF);
+            if(c != 0)
+            {
+                return c;
+            }
+        }
+        return Long.compare(length, to - from);
+    }
+}
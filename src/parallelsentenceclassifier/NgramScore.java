@@ -4,12 +4,6 @@
  */
 package parallelsentenceclassifier;
 
-import edu.berkeley.nlp.lm.ArrayEncodedNgramLanguageModel;
-import edu.berkeley.nlp.lm.StupidBackoffLm;
-import edu.berkeley.nlp.lm.io.LmReaders;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -24,9 +18,8 @@ import java.util.Map;
 public class NgramScore  {
     public double score;
     public Map<String,Integer> ngrams = new HashMap<>();
-    public NgramScore(String sentence)  throws UnsupportedEncodingException, FileNotFoundException, IOException {
+    public NgramScore(LanguageModel lm, String sentence) {
 
-        ArrayEncodedNgramLanguageModel lm = LmReaders.readArrayEncodedLmFromArpa("C://Users/Eray/Documents/NetBeansProjects/ParallelSentenceClassifier/big_test.arpa", false);
         this.score = lm.scoreSentence(words(sentence));
          
     }
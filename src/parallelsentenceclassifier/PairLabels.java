@@ -0,0 +1,91 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Class labels of a -train corpus, one line per corpus line: either the
+ * whole line or one tab separated column of it holds 'kaliteli' or
+ * 'kalitesiz' (the quotes may be left out). Read in step with the writer,
+ * which asks for the labels in corpus order.
+ *
+ * @author Eray
+ */
+public class PairLabels implements Closeable {
+    public static final String[] CLASS_NAMES = {"kaliteli", "kalitesiz"};
+
+    private final BufferedReader in;
+    private final String fileName;
+    private final int column;
+    private long lineNumber = 0;
+
+    /**
+     * @param column 1-based tab separated column holding the label, 0 for the
+     * whole line
+     */
+    public PairLabels(File file, int column) throws IOException
+    {
+        if(column < 0)
+        {
+            throw new IllegalArgumentException("--label-column 0 (bütün satır) veya daha büyük olmalı: " + column);
+        }
+        this.in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), 1 << 16);
+        this.fileName = file.getPath();
+        this.column = column;
+    }
+
+    /**
+     * @param line 1-based corpus line, not smaller than in the previous call
+     * @return the class name, without quotes
+     */
+    public String get(long line) throws IOException
+    {
+        String text = null;
+        while(lineNumber < line)
+        {
+            text = in.readLine();
+            lineNumber++;
+            if(text == null)
+            {
+                throw new IOException("Etiket dosyası " + (lineNumber - 1) + ". satırda bitti: " + fileName);
+            }
+        }
+        if(text == null)
+        {
+            throw new IllegalStateException("Etiketler sırayla istenmeli: " + line);
+        }
+        String label = text;
+        if(column > 0)
+        {
+            String[] columns = text.split("\t", -1);
+            label = column <= columns.length ? columns[column - 1] : "";
+        }
+        label = label.trim();
+        if(label.length() >= 2 && label.startsWith("'") && label.endsWith("'"))
+        {
+            label = label.substring(1, label.length() - 1);
+        }
+        for(String name : CLASS_NAMES)
+        {
+            if(name.equals(label))
+            {
+                return name;
+            }
+        }
+        throw new IOException("Geçersiz etiket, " + fileName + " " + line + ". satır: " + label);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+/**
+ * Per-pair work of the filter: normalization, the initial filter, feature
+ * extraction and classification. Holds only shared read-only objects, so
+ * {@link #process(SentencePair)} may run on any number of threads.
+ *
+ * With a {@link DuplicateIndex}, a pair that passes the initial filter is
+ * looked up by the hash of its normalized sentences first, and a repeat gets
+ * the earlier verdict without feature extraction and classification.
+ *
+ * With a {@link CascadeModel}, only the cheap features are computed first;
+ * a pair the cascade is confident about gets its verdict there, and only
+ * the others get the spell checker, the language model and the full model.
+ *
+ * With a {@link VerdictStore}, a pair whose verdict an earlier run stored
+ * gets it from there, and the verdicts of the pairs scored now are added. A
+ * pair whose verdict this run added is a repeat and counts as a duplicate,
+ * as with a DuplicateIndex.
+ *
+ * @author Eray
+ */
+public class PairProcessor {
+    private final FeatureExtractor extractor;
+    private final QualityModel model;
+    private final FilterMetrics metrics;
+    private final DuplicateIndex duplicates;
+    private final CascadeModel cascade;
+    private final VerdictStore verdicts;
+
+    /**
+     * Without metrics, duplicate index, cascade or verdict store.
+     *
+     * @param model null in -train mode (features only)
+     */
+    public PairProcessor(FeatureExtractor extractor, QualityModel model)
+    {
+        this(extractor, model, FilterMetrics.DISABLED, null, null, null);
+    }
+
+    /**
+     * @param model null in -train mode (features only)
+     * @param metrics where stage times and pair counts go, or
+     * {@link FilterMetrics#DISABLED}
+     * @param duplicates verdicts of the pairs seen so far, or null to score
+     * every pair; only used with a model
+     * @param cascade cheap first stage, or null to score every pair with the
+     * full model; only used with a model
+     * @param verdicts verdicts of earlier runs with the same model and
+     * resources, or null; only used with a model
+     */
+    public PairProcessor(FeatureExtractor extractor, QualityModel model, FilterMetrics metrics, DuplicateIndex duplicates, CascadeModel cascade,
+            VerdictStore verdicts)
+    {
+        this.extractor = extractor;
+        this.model = model;
+        this.metrics = metrics;
+        this.duplicates = model == null ? null : duplicates;
+        this.cascade = model == null ? null : cascade;
+        this.verdicts = model == null ? null : verdicts;
+    }
+
+    public ScoredPair process(SentencePair pair) throws Exception
+    {
+        long start = metrics.start();
+        ScoredPair scored = score(pair);
+        metrics.record(FilterMetrics.PAIR, start);
+        metrics.countPair(scored);
+        return scored;
+    }
+
+    private ScoredPair score(SentencePair pair) throws Exception
+    {
+        if(pair.isRejected())
+        {
+            return new ScoredPair(pair, null, null, null, null);
+        }
+        long start = metrics.start();
+        String en_sentence=ParallelSentenceClassifier.initialize(pair.getEnglish());
+        String tr_sentence=ParallelSentenceClassifier.initialize(pair.getTurkish());
+        metrics.record(FilterMetrics.NORMALIZE, start);
+        if(!ParallelSentenceClassifier.initialFilter(en_sentence, tr_sentence))
+        {
+            return new ScoredPair(pair, en_sentence, tr_sentence, null, null);
+        }
+        long hash = 0;
+        if(duplicates != null || verdicts != null)
+        {
+            hash = DuplicateIndex.hash(en_sentence, tr_sentence);
+        }
+        if(duplicates != null)
+        {
+            int verdict = duplicates.getVerdict(hash);
+            if(verdict != DuplicateIndex.UNKNOWN)
+            {
+                return ScoredPair.duplicate(pair, en_sentence, tr_sentence, verdict == DuplicateIndex.KEPT);
+            }
+        }
+        int stored = verdicts == null ? DuplicateIndex.UNKNOWN : verdicts.getVerdict(hash);
+        ScoredPair scored;
+        if(stored != DuplicateIndex.UNKNOWN)
+        {
+            boolean kept = (stored & DuplicateIndex.KEPT) != 0;
+            scored = (stored & VerdictStore.THIS_RUN) != 0 ? ScoredPair.duplicate(pair, en_sentence, tr_sentence, kept)
+                    : ScoredPair.recalled(pair, en_sentence, tr_sentence, kept);
+        }
+        else if(cascade != null)
+        {
+            scored = scoreCascaded(pair, en_sentence, tr_sentence);
+        }
+        else
+        {
+            double[] vector = extractor.extract(en_sentence, tr_sentence);
+            start = metrics.start();
+            double[] distribution = model == null ? null : model.distribution(vector);
+            if(model != null)
+            {
+                metrics.record(FilterMetrics.CLASSIFY, start);
+            }
+            scored = new ScoredPair(pair, en_sentence, tr_sentence, vector, distribution);
+        }
+        if(verdicts != null && stored == DuplicateIndex.UNKNOWN)
+        {
+            verdicts.put(hash, scored.isKept());
+        }
+        if(duplicates != null)
+        {
+            duplicates.put(hash, scored.isKept());
+        }
+        return scored;
+    }
+
+    /**
+     * The cascade's verdict from the cheap features, or for an undecided
+     * pair the full model's on the completed vector.
+     */
+    private ScoredPair scoreCascaded(SentencePair pair, String en_sentence, String tr_sentence) throws Exception
+    {
+        long start = metrics.start();
+        TokenizedSentence en = new TokenizedSentence(en_sentence, true);
+        TokenizedSentence tr = new TokenizedSentence(tr_sentence, false);
+        metrics.record(FilterMetrics.TOKENIZE, start);
+        double[] vector = extractor.extractCheap(en, tr);
+        start = metrics.start();
+        int verdict = cascade.decide(vector);
+        metrics.record(FilterMetrics.CASCADE, start);
+        if(verdict != CascadeModel.UNDECIDED)
+        {
+            return ScoredPair.early(pair, en_sentence, tr_sentence, vector, verdict == CascadeModel.ACCEPT);
+        }
+        extractor.extractExpensive(en, vector);
+        start = metrics.start();
+        double[] distribution = model.distribution(vector);
+        metrics.record(FilterMetrics.CLASSIFY, start);
+        return new ScoredPair(pair, en_sentence, tr_sentence, vector, distribution);
+    }
+}
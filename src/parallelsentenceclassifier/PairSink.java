@@ -0,0 +1,18 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writer stage of the filter. Pairs arrive in corpus order, one thread at a
+ * time.
+ *
+ * @author Eray
+ */
+public interface PairSink extends Closeable {
+    void write(ScoredPair pair) throws IOException;
+}
@@ -0,0 +1,24 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reader stage of the filter: hands out aligned pairs in batches.
+ *
+ * @author Eray
+ */
+public interface PairSource extends Closeable {
+    /**
+     * @return up to max pairs in corpus order, an empty list at end of input
+     */
+    List<SentencePair> nextBatch(int max) throws IOException;
+
+    /** Input bytes consumed so far, over both files. */
+    long getBytesRead();
+}
@@ -0,0 +1,749 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The filter as an in-process stage: takes {@link SentencePair}s and gives
+ * back a {@link ScoredPair} for each, with its normalized sentences, feature
+ * vector and class distribution, in input order. The input can be a
+ * {@link PairSource}, a Stream or a Flow.Publisher, so a JVM pipeline can
+ * filter pairs it already holds without temporary files; the command line
+ * only adds the corpus files around {@link #run(PairSource, PairSink)}.
+ *
+ * Pairs are taken from the input in batches that a fixed pool of workers
+ * scores, and the results come out strictly in input order. At most two
+ * batches per worker are in flight, so nothing is read ahead of a slow
+ * consumer beyond that and memory stays bounded on arbitrarily large input.
+ * Streams are lazy: no pair is read before the first result is asked for.
+ * With a single thread a Stream or a PairSource is scored on the consuming
+ * thread, exactly like the old serial loop.
+ *
+ * <pre>
+ * ParallelCorpusFilter filter = new ParallelCorpusFilter(ScoringResources.load(dictFile, lmFile, spellDictFile), QualityModel.open(modelFile), 0);
+ * try (Stream&lt;ScoredPair&gt; scored = filter.filter(pairs))
+ * {
+ *     scored.filter(ScoredPair::isKept).forEach(...);
+ * }
+ * </pre>
+ *
+ * @author Eray
+ */
+public class ParallelCorpusFilter {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final PairProcessor processor;
+    private final int threads;
+    private final int batchSize;
+    private final FilterMetrics metrics;
+    private final AtomicLong scoredPairs = new AtomicLong();
+    private final AtomicLong scoringNanos = new AtomicLong();
+
+    /**
+     * Filter with the full model only, in batches of
+     * {@link #DEFAULT_BATCH_SIZE}.
+     * @param model null for features only, as -train writes them
+     * @param threads worker threads, 0 for one per core
+     */
+    public ParallelCorpusFilter(ScoringResources resources, QualityModel model, int threads)
+    {
+        this(new PairProcessor(new FeatureExtractor(resources), model), threads, DEFAULT_BATCH_SIZE);
+    }
+
+    public ParallelCorpusFilter(PairProcessor processor, int threads, int batchSize)
+    {
+        this(processor, threads, batchSize, FilterMetrics.DISABLED);
+    }
+
+    /**
+     * @param threads worker threads, 0 for one per core
+     * @param metrics receives the read and write times and the input bytes;
+     * the processor should record into the same instance
+     */
+    public ParallelCorpusFilter(PairProcessor processor, int threads, int batchSize, FilterMetrics metrics)
+    {
+        if(threads < 0 || batchSize < 1)
+        {
+            throw new IllegalArgumentException("threads negatif, batch-size sıfır olamaz");
+        }
+        this.processor = processor;
+        this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+    }
+
+    /** Scores every pair of source and writes it to sink, in corpus order. */
+    public void run(PairSource source, PairSink sink) throws Exception
+    {
+        try (Batches batches = new Batches(source))
+        {
+            List<ScoredPair> batch;
+            while((batch = batches.next()) != null)
+            {
+                long start = metrics.start();
+                for(ScoredPair pair : batch)
+                {
+                    sink.write(pair);
+                }
+                metrics.record(FilterMetrics.WRITE, start);
+            }
+        }
+    }
+
+    /**
+     * Lazily scored pairs of source, in input order. Closing the stream
+     * stops the workers; the source is left open for its owner to close.
+     * An input or scoring error is thrown from the terminal operation,
+     * unchecked.
+     */
+    public Stream<ScoredPair> filter(PairSource source)
+    {
+        final Batches batches = new Batches(source);
+        return StreamSupport.stream(new ResultSpliterator(batches), false).onClose(new Runnable() {
+            @Override
+            public void run()
+            {
+                batches.close();
+            }
+        });
+    }
+
+    /**
+     * Lazily scored pairs, in the encounter order of pairs. Closing the
+     * returned stream also closes pairs.
+     */
+    public Stream<ScoredPair> filter(final Stream<SentencePair> pairs)
+    {
+        return filter(new IteratorPairSource(pairs.iterator())).onClose(new Runnable() {
+            @Override
+            public void run()
+            {
+                pairs.close();
+            }
+        });
+    }
+
+    /**
+     * Scored pairs of a publisher, in the order it publishes them. Every
+     * subscriber gets a run of its own: subscribing subscribes to pairs
+     * and starts a pool of workers, which stops when the run completes,
+     * fails or is cancelled. Only as many pairs are requested from pairs as
+     * the subscriber has taken plus two batches per worker, so a slow
+     * subscriber slows the publisher down instead of filling memory. While
+     * no batch is being scored, a pair goes to the workers without waiting
+     * for a full batch, so a slow publisher does not delay its pairs.
+     */
+    public Flow.Publisher<ScoredPair> filter(final Flow.Publisher<SentencePair> pairs)
+    {
+        return new Flow.Publisher<ScoredPair>() {
+            @Override
+            public void subscribe(Flow.Subscriber<? super ScoredPair> subscriber)
+            {
+                pairs.subscribe(new PublishedRun(subscriber));
+            }
+        };
+    }
+
+    /** Pairs that passed the initial filter and were scored, not counting duplicates and recalled pairs. */
+    public long getScoredPairs()
+    {
+        return scoredPairs.get();
+    }
+
+    /** Time spent on scored pairs, summed over all workers. */
+    public long getScoringNanos()
+    {
+        return scoringNanos.get();
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    private ExecutorService newWorkers()
+    {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                // an abandoned stream must not keep the JVM alive
+                Thread thread = new Thread(r, "filter-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private BatchResult processBatch(List<SentencePair> batch) throws Exception
+    {
+        BatchResult result = new BatchResult(batch.size());
+        for(SentencePair pair : batch)
+        {
+            long start = System.nanoTime();
+            ScoredPair scored = processor.process(pair);
+            if(scored.isScored() && !scored.isDuplicate() && !scored.isRecalled())
+            {
+                result.scoringNanos += System.nanoTime() - start;
+                result.scoredPairs++;
+            }
+            result.pairs.add(scored);
+        }
+        return result;
+    }
+
+    private List<ScoredPair> finish(BatchResult result)
+    {
+        scoredPairs.addAndGet(result.scoredPairs);
+        scoringNanos.addAndGet(result.scoringNanos);
+        return result.pairs;
+    }
+
+    private static BatchResult await(Future<BatchResult> future) throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof Exception)
+            {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Batches of results of one PairSource, in order. The next batches are
+     * read and submitted while the caller handles the current one.
+     */
+    private final class Batches implements AutoCloseable {
+        private final PairSource source;
+        private final Deque<Future<BatchResult>> pending = new ArrayDeque<>();
+        private ExecutorService workers;
+        private boolean exhausted = false;
+
+        Batches(PairSource source)
+        {
+            this.source = source;
+        }
+
+        /** The next batch of results, or null at the end of the input. */
+        List<ScoredPair> next() throws Exception
+        {
+            if(threads == 1)
+            {
+                List<SentencePair> batch = exhausted ? Collections.<SentencePair>emptyList() : read();
+                exhausted = batch.isEmpty();
+                return exhausted ? null : finish(processBatch(batch));
+            }
+            if(workers == null)
+            {
+                workers = newWorkers();
+            }
+            while(!exhausted && pending.size() < 2 * threads)
+            {
+                final List<SentencePair> batch = read();
+                if(batch.isEmpty())
+                {
+                    exhausted = true;
+                    break;
+                }
+                pending.addLast(workers.submit(new Callable<BatchResult>() {
+                    @Override
+                    public BatchResult call() throws Exception
+                    {
+                        return processBatch(batch);
+                    }
+                }));
+            }
+            if(pending.isEmpty())
+            {
+                close();
+                return null;
+            }
+            return finish(await(pending.removeFirst()));
+        }
+
+        private List<SentencePair> read() throws IOException
+        {
+            long start = metrics.start();
+            List<SentencePair> batch = source.nextBatch(batchSize);
+            metrics.record(FilterMetrics.READ, start);
+            metrics.setBytesIn(source.getBytesRead());
+            return batch;
+        }
+
+        @Override
+        public void close()
+        {
+            if(workers != null)
+            {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    private final class ResultSpliterator extends Spliterators.AbstractSpliterator<ScoredPair> {
+        private final Batches batches;
+        private Iterator<ScoredPair> current = Collections.emptyIterator();
+
+        ResultSpliterator(Batches batches)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.batches = batches;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ScoredPair> action)
+        {
+            while(!current.hasNext())
+            {
+                List<ScoredPair> batch;
+                try
+                {
+                    batch = batches.next();
+                }
+                catch(RuntimeException e)
+                {
+                    throw e;
+                }
+                catch(IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+                catch(Exception e)
+                {
+                    throw new IllegalStateException("Çift puanlanamadı", e);
+                }
+                if(batch == null)
+                {
+                    return false;
+                }
+                current = batch.iterator();
+            }
+            action.accept(current.next());
+            return true;
+        }
+    }
+
+    /** Hands out the pairs of an iterator, such as that of a Stream. */
+    private static final class IteratorPairSource implements PairSource {
+        private final Iterator<SentencePair> pairs;
+
+        IteratorPairSource(Iterator<SentencePair> pairs)
+        {
+            this.pairs = pairs;
+        }
+
+        @Override
+        public List<SentencePair> nextBatch(int max)
+        {
+            List<SentencePair> batch = new ArrayList<>(Math.min(max, 1024));
+            while(batch.size() < max && pairs.hasNext())
+            {
+                batch.add(pairs.next());
+            }
+            return batch;
+        }
+
+        @Override
+        public long getBytesRead()
+        {
+            return 0;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    /**
+     * One subscription to {@link #filter(Flow.Publisher)}: subscriber of the
+     * input and subscription of the output. Upstream signals only fill and
+     * submit batches; results are sent by drain(), which runs on whichever
+     * thread signals last (an upstream signal, a finished batch or a
+     * request) and never on two threads at once.
+     */
+    private final class PublishedRun implements Flow.Subscriber<SentencePair>, Flow.Subscription {
+        private final Flow.Subscriber<? super ScoredPair> downstream;
+        private final ExecutorService workers = newWorkers();
+        private final int window = 2 * threads * batchSize;
+        private final Deque<Future<BatchResult>> pending = new ConcurrentLinkedDeque<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger drains = new AtomicInteger();
+        private Flow.Subscription upstream;
+        private List<SentencePair> filling = new ArrayList<>();
+        private Iterator<ScoredPair> current = Collections.emptyIterator();
+        private volatile boolean done = false;
+        private volatile boolean stopped = false;
+        private volatile Throwable error;
+
+        PublishedRun(Flow.Subscriber<? super ScoredPair> downstream)
+        {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            if(!stopped)
+            {
+                upstream.request(window);
+            }
+        }
+
+        @Override
+        public void onNext(SentencePair pair)
+        {
+            filling.add(pair);
+            if(filling.size() >= batchSize || pending.isEmpty())
+            {
+                submit();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            error = throwable;
+            onComplete();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            if(!filling.isEmpty())
+            {
+                submit();
+            }
+            done = true;
+            drain();
+        }
+
+        private void submit()
+        {
+            final List<SentencePair> batch = filling;
+            filling = new ArrayList<>();
+            FutureTask<BatchResult> task = new FutureTask<BatchResult>(new Callable<BatchResult>() {
+                @Override
+                public BatchResult call() throws Exception
+                {
+                    return processBatch(batch);
+                }
+            }) {
+                @Override
+                protected void done()
+                {
+                    drain();
+                }
+            };
+            pending.addLast(task);
+            if(!stopped)
+            {
+                workers.execute(task);
+            }
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if(n <= 0)
+            {
+                cancel();
+                downstream.onError(new IllegalArgumentException("istenen çift sayısı pozitif olmalı: " + n));
+                return;
+            }
+            long current;
+            do
+            {
+                current = demand.get();
+            }
+            while(current != Long.MAX_VALUE && !demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            drain();
+        }
+
+        @Override
+        public void cancel()
+        {
+            if(!stopped)
+            {
+                stopped = true;
+                upstream.cancel();
+                workers.shutdownNow();
+            }
+        }
+
+        private void drain()
+        {
+            if(drains.getAndIncrement() != 0)
+            {
+                return;
+            }
+            int missed = 1;
+            do
+            {
+                long sent = 0;
+                while(!stopped)
+                {
+                    if(!current.hasNext())
+                    {
+                        Future<BatchResult> head = pending.peekFirst();
+                        if(head == null && done)
+                        {
+                            stopped = true;
+                            workers.shutdown();
+                            if(error == null)
+                            {
+                                downstream.onComplete();
+                            }
+                            else
+                            {
+                                downstream.onError(error);
+                            }
+                            break;
+                        }
+                        if(head == null || !head.isDone())
+                        {
+                            break;
+                        }
+                        pending.pollFirst();
+                        try
+                        {
+                            current = finish(await(head)).iterator();
+                        }
+                        catch(Exception e)
+                        {
+                            cancel();
+                            downstream.onError(e);
+                            break;
+                        }
+                        continue;
+                    }
+                    if(demand.get() == 0)
+                    {
+                        break;
+                    }
+                    downstream.onNext(current.next());
+                    if(demand.get() != Long.MAX_VALUE)
+                    {
+                        demand.decrementAndGet();
+                    }
+                    sent++;
+                }
+                if(sent > 0 && !stopped && !done)
+                {
+                    upstream.request(sent);
+                }
+                missed = drains.addAndGet(-missed);
+            }
+            while(missed != 0);
+        }
+    }
+
+    /**
+     * Scores the pairs of two files through run(), a Stream and a
+     * Flow.Publisher, checks that all three give the verdicts, features and
+     * distributions of the serial loop in the same order, and times them.
+     * The Flow subscriber takes results 64 at a time, so the publisher is
+     * held back by backpressure.
+     * Usage: ParallelCorpusFilter &lt;dictionary_file&gt; &lt;model_file&gt;
+     * &lt;english_file&gt; &lt;turkish_file&gt; [--threads N] [--lm F]
+     * [--spell-dict F]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        RunOptions options = RunOptions.parse(args);
+        args = options.getArguments();
+        ScoringResources resources = ScoringResources.load(args[0], options.get("lm", ScoringResources.DEFAULT_LM_FILE),
+                options.get("spell-dict", ScoringResources.DEFAULT_SPELL_DICTIONARY));
+        QualityModel model = QualityModel.open(args[1]);
+        final List<SentencePair> pairs = new ArrayList<>();
+        try (PairSource source = new ReaderPairSource(new File(args[2]), new File(args[3]), 0))
+        {
+            List<SentencePair> batch;
+            while(!(batch = source.nextBatch(DEFAULT_BATCH_SIZE)).isEmpty())
+            {
+                pairs.addAll(batch);
+            }
+        }
+        List<ScoredPair> expected = collectRun(new ParallelCorpusFilter(resources, model, 1), pairs);
+        ParallelCorpusFilter filter = new ParallelCorpusFilter(resources, model, options.getInt("threads", 0));
+        String[] names = {"run", "Stream", "Flow"};
+        int mismatches = 0;
+        for(int k = 0; k < names.length; k++)
+        {
+            List<ScoredPair> found = collect(filter, k, pairs);
+            for(int i = 0; i < Math.max(expected.size(), found.size()); i++)
+            {
+                ScoredPair a = i < expected.size() ? expected.get(i) : null;
+                ScoredPair b = i < found.size() ? found.get(i) : null;
+                if(a == null || b == null || a.getLineNumber() != b.getLineNumber() || a.isKept() != b.isKept()
+                        || !Arrays.equals(a.getFeatures(), b.getFeatures()) || !Arrays.equals(a.getDistribution(), b.getDistribution()))
+                {
+                    mismatches++;
+                    System.out.println(names[k] + " " + (i + 1) + ": beklenen " + (a == null ? "yok" : a.getLineNumber() + " " + Arrays.toString(a.getDistribution()))
+                            + ", bulunan " + (b == null ? "yok" : b.getLineNumber() + " " + Arrays.toString(b.getDistribution())));
+                }
+            }
+        }
+        System.out.println(pairs.size() + " satır, " + mismatches + " fark.");
+        double sink = 0;
+        for(int round = 0; round < 5; round++)
+        {
+            long[] nanos = new long[names.length];
+            for(int k = 0; k < names.length; k++)
+            {
+                long start = System.nanoTime();
+                sink += collect(filter, k, pairs).size();
+                nanos[k] = System.nanoTime() - start;
+            }
+            System.out.println(String.format("tur %d: %d iş parçacığı, run %.1f µs/çift, Stream %.1f µs/çift, Flow %.1f µs/çift", round + 1, filter.getThreads(),
+                    nanos[0] / 1e3 / pairs.size(), nanos[1] / 1e3 / pairs.size(), nanos[2] / 1e3 / pairs.size()));
+        }
+        System.out.println("(" + sink + ")");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    private static List<ScoredPair> collect(ParallelCorpusFilter filter, int way, List<SentencePair> pairs) throws Exception
+    {
+        switch(way)
+        {
+            case 0:
+                return collectRun(filter, pairs);
+            case 1:
+                try (Stream<ScoredPair> scored = filter.filter(pairs.stream()))
+                {
+                    List<ScoredPair> result = new ArrayList<>(pairs.size());
+                    Iterator<ScoredPair> i = scored.iterator();
+                    while(i.hasNext())
+                    {
+                        result.add(i.next());
+                    }
+                    return result;
+                }
+            default:
+                return collectPublished(filter, pairs);
+        }
+    }
+
+    private static List<ScoredPair> collectRun(ParallelCorpusFilter filter, List<SentencePair> pairs) throws Exception
+    {
+        final List<ScoredPair> result = new ArrayList<>(pairs.size());
+        filter.run(new IteratorPairSource(pairs.iterator()), new PairSink() {
+            @Override
+            public void write(ScoredPair pair)
+            {
+                result.add(pair);
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        });
+        return result;
+    }
+
+    private static List<ScoredPair> collectPublished(ParallelCorpusFilter filter, List<SentencePair> pairs) throws Exception
+    {
+        final List<ScoredPair> result = Collections.synchronizedList(new ArrayList<ScoredPair>(pairs.size()));
+        final Throwable[] failure = new Throwable[1];
+        final CountDownLatch finished = new CountDownLatch(1);
+        try (SubmissionPublisher<SentencePair> publisher = new SubmissionPublisher<>(Executors.newSingleThreadExecutor(), 64))
+        {
+            filter.filter(publisher).subscribe(new Flow.Subscriber<ScoredPair>() {
+                private Flow.Subscription subscription;
+                private int taken = 0;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription)
+                {
+                    this.subscription = subscription;
+                    subscription.request(64);
+                }
+
+                @Override
+                public void onNext(ScoredPair pair)
+                {
+                    result.add(pair);
+                    if(++taken % 64 == 0)
+                    {
+                        subscription.request(64);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable)
+                {
+                    failure[0] = throwable;
+                    finished.countDown();
+                }
+
+                @Override
+                public void onComplete()
+                {
+                    finished.countDown();
+                }
+            });
+            for(SentencePair pair : pairs)
+            {
+                publisher.submit(pair);
+            }
+        }
+        finished.await();
+        if(failure[0] != null)
+        {
+            throw new IllegalStateException("Flow çalıştırması başarısız", failure[0]);
+        }
+        return result;
+    }
+
+    private static class BatchResult {
+        final List<ScoredPair> pairs;
+        long scoredPairs = 0;
+        long scoringNanos = 0;
+
+        BatchResult(int size)
+        {
+            this.pairs = new ArrayList<>(size);
+        }
+    }
+}
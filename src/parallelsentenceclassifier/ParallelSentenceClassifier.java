@@ -4,26 +4,11 @@
  */
 package parallelsentenceclassifier;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import weka.classifiers.trees.RandomForest;
-import weka.core.DenseInstance;
-import weka.core.Instance;
-import weka.core.Instances;
-import weka.core.converters.ArffLoader;
+import java.util.regex.Pattern;
 
 
 
@@ -32,60 +17,69 @@ import weka.core.converters.ArffLoader;
  * @author Eray
  */
 public class ParallelSentenceClassifier {
+    private static final Pattern REJECTED_CHARACTERS = Pattern.compile("^.*[©~½$#=&Ä±Ã§Â»].*$");
 
     /**
      * @param args the command line arguments
      */
-    public static Map<String,String> Dictionary;
-    public static double wrong_words_count;
-    public static double ngram_score;
-    public static double translation_score;
-    public static double length_ratio;
-    public static double length_en;
-    public static double length_differ;
     public static void main(String[] args) throws UnsupportedEncodingException, FileNotFoundException, IOException, Exception {
         //args: dictionary_file english_file turkish_file -train > print arff
-        //args: dictionary_file english_file turkish_file -test arff_file (printing filtered instances)
-        InputStreamReader inputStreamReader = new InputStreamReader(new FileInputStream(new File(args[1])), "UTF-8");
-        InputStreamReader inputStreamReader2 = new InputStreamReader(new FileInputStream(new File(args[2])), "UTF-8");
-        BufferedReader oku = new BufferedReader (inputStreamReader);
-        BufferedReader oku2 = new BufferedReader (inputStreamReader2);
-        BufferedWriter out1 = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]+"_Filtered.txt"),"UTF-8"));
-        BufferedWriter out2 = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[2]+"_Filtered.txt"),"UTF-8"));
-        BufferedWriter out3 = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[2]+"_Eleminated.txt"),"UTF-8"));
-        ArffLoader loader;
-        RandomForest classifier = null;
-        //WLSVM classifier2 = null;
-        Instances data = null ;
-        ArrayList<Double> vector;
+        //args: dictionary_file english_file turkish_file -test arff_file|model_file (printing filtered instances)
+        //args: -train-model arff_file model_file (train once, reuse the model with -test)
+        //args: -train-cascade arff_file model_file (cheap-feature first stage for --cascade)
+        //args: -merge-shards english_file turkish_file N (join the outputs of --shard 1/N .. N/N)
+        //args: -serve dictionary_file arff_file|model_file (score JSON lines posted to http://127.0.0.1:8080/score)
+        //options: --threads N (worker threads, default 1, 0 = one per core) --batch-size N (pairs per batch, default 256)
+        //         --labels file (-train class per line, default 'kalitesiz') --label-column N (tab separated column of it)
+        //         --lm file (ARPA or ArpaConverter binary language model, default big_test.arpa in the working directory; the binary scores a few
+        //         sentences differently when the ARPA file lacks suffixes of its n-grams, see MappedLanguageModel)
+        //         --spell-dict file (word list of the spell checker, default words.utf-8.txt in the working directory)
+        //         --metrics file (JSON snapshots) --metrics-interval S (default 10) --metrics-port N (Prometheus /metrics on 127.0.0.1)
+        //         --shard k/N or --range start:end (resumable -test over a slice) --checkpoint-interval S (default 60)
+        //         --dedup N (reuse verdicts of up to N distinct repeated pairs) --dedup-off-heap --drop-duplicates (write a kept pair once,
+        //         per slice with --shard or --range)
+        //         --exact-word-count (word counts without the +1; the model must be trained with it too)
+        //         --verdict-store dir (reuse the verdicts of earlier -test runs with the same model and resources)
+        //         --cascade arff_file|model_file (decide confident pairs from the cheap features)
+        //         --cascade-reject P (share of 'kalitesiz' votes, default 1) --cascade-accept P (share of 'kaliteli' votes, default off)
+        //         --port N --bind address --max-batch N --queue N --queue-timeout MS --connections N (-serve)
+        //         --gzip (compressed -test output) --flush-interval S (default 10) --progress-interval S (default 1, 0 = off)
+        RunOptions options = RunOptions.parse(args);
+        args = options.getArguments();
+        if(args.length == 3 && args[0].equals("-train-model"))
+        {
+            System.out.println("Sınıflandırıcı eğitiliyor...");
+            QualityModel.train(args[1]).save(args[2]);
+            System.out.println("Model kaydedildi: " + args[2]);
+            return;
+        }
+        if(args.length == 3 && args[0].equals("-train-cascade"))
+        {
+            System.out.println("Ucuz aşama sınıflandırıcısı eğitiliyor...");
+            CascadeModel.train(args[1]).save(args[2]);
+            System.out.println("Model kaydedildi: " + args[2]);
+            return;
+        }
+        if(args.length == 3 && args[0].equals("-serve"))
+        {
+            ScoringServer.serve(args[1], args[2], options);
+            return;
+        }
+        if(args.length == 4 && args[0].equals("-merge-shards"))
+        {
+            ShardRun.merge(args[1], args[2], Integer.parseInt(args[3]));
+            return;
+        }
+        QualityModel model = null;
         switch (args[3]) {
             case "-train":
             {
-                
-                System.out.println("@relation parallel_sentence_quality");
-                System.out.println("@attribute wrong_words_count numeric");
-                System.out.println("@attribute ngram_score numeric");
-                System.out.println("@attribute sentence_length_en numeric");
-                System.out.println("@attribute translation_score numeric");
-                System.out.println("@attribute length_differ numeric");
-                System.out.println("@attribute length_ratio numeric");
-                System.out.println("@attribute class {'kaliteli', 'kalitesiz'}");
-                System.out.println("@data");
                 break;
             }
             case "-test":
             {
                 System.out.println("Sınıflandırıcı ayarlanıyor...");
-                 loader = new ArffLoader();
-                 loader.setFile(new File(args[4]));
-                 classifier = new RandomForest();
-//                 classifier2 = new WLSVM();
-//                 String[] ops = {"-S", "0", "-K", "2", "-D", "3", "-G", "0", "-R", "0", "-N", "0.5", "-E", "0.001", "-P", "0.1", "-C", "100", "-Z", "1", "-M", "40", "-H", "-Z", "-W", "1.0 1.0", "-seed", "1"};
-//                 classifier2.setOptions(ops);
-                 data = loader.getDataSet();
-                 data.setClassIndex(6);
-                 classifier.buildClassifier(data);
-                 //classifier2.buildClassifier(data);
+                 model = QualityModel.open(args[4]);
                  System.out.println("Verilen dosyalardaki örnekler sınıflandırılıyor...");
                 break;
             }
@@ -98,109 +92,171 @@ public class ParallelSentenceClassifier {
             }
                 
         }
-         int i = 1;
-        LineNumberReader  lnr = new LineNumberReader(new FileReader(new File(args[1])));
-        lnr.skip(Long.MAX_VALUE);
-        
-         while(oku.ready()&&oku2.ready()){
-                    
-                    String en_sentence=initialize(oku.readLine());
-                    String tr_sentence=initialize(oku2.readLine());
-//                      String en_sentence=initialize("i think");
-//                      String tr_sentence=initialize("Buna da alışırım zamanla.");
-                    if(initialFilter(en_sentence, tr_sentence))
-                    {
-                        vector= new ArrayList<>();
-                        JazzySpellChecker jazzySpellChecker = new JazzySpellChecker();
-                        //Spell Checker
-                        String en_sentenceforchecker=en_sentence.replaceAll("[\\d\\.,;:\\?!\\(\\)\\[\\]\\-]*", "");
-                        en_sentenceforchecker = en_sentenceforchecker.replaceAll(" [A-ZÜİŞÇÖ]+[^ ]*", " ");
-                        en_sentenceforchecker = en_sentenceforchecker.replaceAll("([\\(\\[])[A-ZÜİŞÇÖ]+[^ ]*", "$1 ");
-                        en_sentenceforchecker=en_sentenceforchecker.replaceAll("\t+", " ");
-                        en_sentenceforchecker=en_sentenceforchecker.replaceAll(" +", " ");
-                        List<String> misSpelledWords = jazzySpellChecker.getMisspelledWords(en_sentenceforchecker);
-                        wrong_words_count=misSpelledWords.size();
-                        //eşleşme skor
-                        ContentFilter cf = new ContentFilter(args[0], en_sentence, tr_sentence);
-                        translation_score=cf.get_ratio();
-                        //uzunluk farkı ve oranı
-                        length_ratio=(double)((double)WordCount(en_sentence)/(double)WordCount(tr_sentence));
-                        length_differ=Math.abs(WordCount(en_sentence)-WordCount(tr_sentence));
-                        length_en=WordCount(en_sentence);
+        File englishFile = new File(args[1]);
+        File turkishFile = new File(args[2]);
+        ShardRun shardRun = ShardRun.fromOptions(options, englishFile, turkishFile);
+        if(shardRun != null)
+        {
+            if(model == null)
+            {
+                throw new IllegalArgumentException("--shard ve --range yalnızca -test ile kullanılabilir");
+            }
+            if(!englishFile.isFile() || !turkishFile.isFile())
+            {
+                throw new IllegalArgumentException("--shard ve --range için girdiler düzenli dosya olmalı");
+            }
+            if(!shardRun.loadCheckpoint())
+            {
+                System.out.println("Bu parça daha önce tamamlanmış: " + shardRun.getSuffix());
+                return;
+            }
+        }
+        System.err.println("Sözlük, dil modeli ve yazım denetimi sözlüğü yükleniyor...");
+        ScoringResources resources = ScoringResources.load(args[0], options.get("lm", ScoringResources.DEFAULT_LM_FILE),
+                options.get("spell-dict", ScoringResources.DEFAULT_SPELL_DICTIONARY));
+        System.err.println("Kaynaklar " + resources.getLoadMillis() + " ms içinde yüklendi.");
+
+        FilterMetrics metrics = FilterMetrics.DISABLED;
+        if(options.has("metrics") || options.has("metrics-port"))
+        {
+            metrics = new FilterMetrics();
+            if(options.has("metrics"))
+            {
+                metrics.startSnapshots(new File(options.get("metrics", null)), 1000L * options.getInt("metrics-interval", 10));
+            }
+            if(options.has("metrics-port"))
+            {
+                metrics.startHttpServer(options.getInt("metrics-port", 0));
+            }
+        }
+
+        DuplicateIndex duplicates = null;
+        if(options.has("dedup") || options.has("drop-duplicates"))
+        {
+            if(model == null)
+            {
+                throw new IllegalArgumentException("--dedup ve --drop-duplicates yalnızca -test ile kullanılabilir");
+            }
+            duplicates = new DuplicateIndex(options.getInt("dedup", 10000000), options.has("dedup-off-heap"));
+        }
 
-                        //ngram skor
-                        NgramScore ns = new NgramScore(en_sentence);
-                        //ngram_score=Math.pow((double)Math.abs(ns.score), (double)((double)1/(double)WordCount(en_sentence)));
-                        ngram_score=ns.score;
-                        //diğer özellikler
-                        //vektörü oluştur 
-                        vector.add(wrong_words_count); vector.add(ngram_score); vector.add(length_en); vector.add(translation_score); vector.add(length_differ); vector.add(length_ratio);
-                 //train ve test parametresi al args[3]
-                 switch (args[3]) {
-                     case "-train":
-                     {
-                         for(Double d : vector)
-                         {
-                             String result = String.format("%.2f", d);
-                             System.out.print(result.replaceAll(",", "."));
-                             System.out.print(",");
-                             
-                         }
-                         System.out.println("'kalitesiz'");
-                         //kalitesiz ve kaliteliyi örneklere göre değiştirin
-                         break;
-                     }
-                     case "-test":
-                     {
-                         
-                         
-                          
-                         Instance instance = new DenseInstance(6);
-                         for(int j = 0; j<6; j++)
-                         {
-                             instance.insertAttributeAt(j);
-                             instance.setValue(j, vector.get(j));
-                         }
-                         
-                         
-                         instance.setDataset(data);
-                         //Double clas = classifier.classifyInstance(instance);
-                         double clas[] = classifier.distributionForInstance(instance);
-                         //Double clas2 = classifier2.classifyInstance(instance);
-//                         System.out.println(en_sentence+" <=> "+tr_sentence);
-                         
-                         System.out.print(Integer.toString(i)+"/"+Integer.toString(lnr.getLineNumber())+"\r");
-                         if(clas[0]==1)
-                         {
-                            out1.write(en_sentence+"\r\n"); 
-                            out2.write(tr_sentence+"\r\n");
-                         }
-                         else
-                         {
-                             out3.write(en_sentence+"\r\n"+tr_sentence+"\r\n\r\n");
-                         }
-                         out1.flush();out2.flush();out3.flush();
-                         break;
-                     }
-                     default:
-                     {
-                         System.err.print("Söz dizimi hatası");
-                         System.out.print("Söz dizimi hatası");
-                         System.exit(1);
-                         break;
-                         
-                     }
-                 }
-               }
-                    out1.flush();
-                    out2.flush();
-                    out3.flush();
-                    
-               i++;
-         }
-         out1.close();
-         out2.close();
-         out3.close();
+        CascadeModel cascade = null;
+        if(options.has("cascade"))
+        {
+            if(model == null)
+            {
+                throw new IllegalArgumentException("--cascade yalnızca -test ile kullanılabilir");
+            }
+            cascade = CascadeModel.open(options.get("cascade", null)).withThresholds(options.getDouble("cascade-accept", CascadeModel.OFF),
+                    options.getDouble("cascade-reject", 1));
+        }
+
+        VerdictStore verdicts = null;
+        if(options.has("verdict-store"))
+        {
+            if(model == null)
+            {
+                throw new IllegalArgumentException("--verdict-store yalnızca -test ile kullanılabilir");
+            }
+            String settings = "exact-word-count=" + options.has("exact-word-count")
+                    + (cascade == null ? "" : ",cascade-accept=" + options.getDouble("cascade-accept", CascadeModel.OFF) + ",cascade-reject=" + options.getDouble("cascade-reject", 1));
+            File storeDirectory = new File(options.get("verdict-store", null));
+            long fingerprint = VerdictStore.fingerprint(storeDirectory, settings, new File(args[0]), new File(options.get("lm", ScoringResources.DEFAULT_LM_FILE)),
+                    new File(options.get("spell-dict", ScoringResources.DEFAULT_SPELL_DICTIONARY)), new File(args[4]),
+                    cascade == null ? null : new File(options.get("cascade", null)));
+            verdicts = VerdictStore.open(storeDirectory, fingerprint);
+            System.err.println("Karar deposunda bu model ve kaynaklarla verilmiş " + verdicts.size() + " karar var (parmak izi "
+                    + String.format("%016x", fingerprint) + ").");
+        }
+
+        PairLabels labels = null;
+        if(options.has("labels"))
+        {
+            if(model != null)
+            {
+                throw new IllegalArgumentException("--labels yalnızca -train ile kullanılabilir");
+            }
+            labels = new PairLabels(new File(options.get("labels", null)), options.getInt("label-column", 0));
+        }
+
+        PairSink sink;
+        FilterOutput output = null;
+        if(model == null)
+        {
+            ArffRowSink arff = new ArffRowSink(System.out, labels);
+            arff.writeHeader();
+            sink = arff;
+        }
+        else
+        {
+            output = new FilterOutput(args[1], args[2], shardRun == null ? "" : shardRun.getSuffix(), shardRun == null ? null : shardRun.getResumeLengths(),
+                    options.has("gzip"), 1000L * options.getInt("flush-interval", 10), metrics);
+            if(options.has("drop-duplicates"))
+            {
+                long written = output.setDuplicates(duplicates);
+                if(written > 0)
+                {
+                    System.err.println("Önceden yazılmış " + written + " çift tekrar yazılmayacak.");
+                }
+            }
+            sink = output;
+        }
+        ParallelCorpusFilter filter = new ParallelCorpusFilter(new PairProcessor(new FeatureExtractor(resources, metrics, options.has("exact-word-count")), model, metrics, duplicates, cascade, verdicts),
+                options.getInt("threads", 1), options.getInt("batch-size", ParallelCorpusFilter.DEFAULT_BATCH_SIZE), metrics);
+        long progressMillis = model == null ? 0 : 1000L * options.getInt("progress-interval", 1);
+        PairSource source = englishFile.isFile() && turkishFile.isFile() ? new MappedPairSource(englishFile, turkishFile, progressMillis)
+                : new ReaderPairSource(englishFile, turkishFile, progressMillis);
+        if(shardRun != null)
+        {
+            source = shardRun.open((MappedPairSource)source, output);
+            sink = shardRun.getSink();
+        }
+        try
+        {
+            filter.run(source, sink);
+            if(shardRun != null)
+            {
+                shardRun.setFinished();
+            }
+        }
+        finally
+        {
+            source.close();
+            sink.close();
+            if(verdicts != null)
+            {
+                verdicts.close();
+            }
+            metrics.stop();
+        }
+        if(filter.getScoredPairs() > 0)
+        {
+            System.err.println(filter.getScoredPairs() + " çift puanlandı, çift başına ortalama " + String.format("%.3f", filter.getScoringNanos() / 1e6 / filter.getScoredPairs()) + " ms.");
+        }
+        if(duplicates != null)
+        {
+            System.err.println("Tekrar eden " + duplicates.getHits() + " çift yeniden puanlanmadı; tabloda " + duplicates.size() + " çift ("
+                    + (duplicates.getMemoryBytes() >> 20) + " MB), sığmayan " + duplicates.getMissed()
+                    + (options.has("drop-duplicates") ? ", çıktıya yazılmayan " + duplicates.getDropped() : "") + ".");
+        }
+        if(verdicts != null)
+        {
+            System.err.println("Önceki çalıştırmalardan " + verdicts.getHits() + " çiftin kararı alındı, bu çalıştırmada tekrar eden "
+                    + verdicts.getRepeats() + " çiftinki depodan; depoya " + verdicts.getAdded() + " karar eklendi, toplam " + verdicts.size() + ".");
+        }
+        if(cascade != null)
+        {
+            System.err.println("Ucuz aşamada " + (cascade.getAccepted() + cascade.getRejected()) + " çifte karar verildi (kaliteli " + cascade.getAccepted()
+                    + ", kalitesiz " + cascade.getRejected() + "), " + cascade.getUndecided() + " çift tam modele gitti.");
+        }
+        if(metrics.isEnabled())
+        {
+            if(options.has("metrics"))
+            {
+                metrics.writeSnapshot(new File(options.get("metrics", null)));
+            }
+            metrics.printSummary(System.err);
+        }
     }
     public static int WordCount(String sentence)
     {
@@ -209,81 +265,11 @@ public class ParallelSentenceClassifier {
     }
     public static String initialize(String sentence)
     {
-       if(sentence.matches("^[^\\\"]*\\\"[^\\\"]*"))
-        {
-            sentence=sentence.replaceAll("\\\"", "");
-        }
-        
-        
-        sentence=sentence.replaceAll("([a-zA-ZÜĞİŞÇüğışçöÖ])' *([a-zA-ZÜĞİŞÇüğışçöÖ])","$1'$2");
-        // remove extra spaces
-        sentence=sentence.replaceAll("\\("," \\(");
-        sentence=sentence.replaceAll("\\)","\\) "); 
-        sentence=sentence.replaceAll(" +"," ");
-        sentence=sentence.replaceAll("\\) ([\\.\\!\\:\\?\\;\\,])","\\)$1");
-        sentence=sentence.replaceAll("\\( ","\\(");
-        sentence=sentence.replaceAll(" \\)","\\)");
-        sentence=sentence.replaceAll("(\\d) \\%","$1\\%");
-        sentence=sentence.replaceAll("\\% (\\d)","\\%$1");
-
-        // normalize unicode punctuation
-        sentence=sentence.replaceAll("„","\\\"");
-        sentence=sentence.replaceAll("“","\\\"");
-        sentence=sentence.replaceAll("”","\\\"");
-        sentence=sentence.replaceAll("–","-");
-        sentence=sentence.replaceAll("—"," - "); 
-        sentence=sentence.replaceAll(" +"," ");
-        sentence=sentence.replaceAll("´","\\'");
-        sentence=sentence.replaceAll("([a-zA-ZÜĞİŞÇüğışçöÖ])‘([a-zA-ZÜĞİŞÇüğışçöÖ])","$1\\'$2");
-        sentence=sentence.replaceAll("([a-zA-ZÜĞİŞÇüğışçöÖ])’([a-zA-ZÜĞİŞÇüğışçöÖ])","$1\\'$2");
-        sentence=sentence.replaceAll("‘","");
-        sentence=sentence.replaceAll("‚","");
-        sentence=sentence.replaceAll("’","");
-        sentence=sentence.replaceAll("''","\\\"");
-        sentence=sentence.replaceAll("´´","\\\"");
-        sentence=sentence.replaceAll("…","...");
-        // French quotes
-        sentence=sentence.replaceAll(" « "," \\\"");
-        sentence=sentence.replaceAll("« ","\\\"");
-        sentence=sentence.replaceAll("«","\\\"");
-        sentence=sentence.replaceAll(" » ","\\\" ");
-        sentence=sentence.replaceAll(" »","\\\"");
-        sentence=sentence.replaceAll("»","\\\"");
-        // handle pseudo-spaces
-        sentence=sentence.replaceAll("nº ","");
-        sentence=sentence.replaceAll(" :",":");
-        sentence=sentence.replaceAll(" \\?","\\?");
-        sentence=sentence.replaceAll(" \\!","\\!");
-        sentence=sentence.replaceAll(" ;",";");
-        sentence=sentence.replaceAll(" \\.",".");
-        sentence=sentence.replaceAll(" :",":");
-        sentence=sentence.replaceAll(" ,",",");
-        sentence=sentence.replaceAll(", ",", "); 
-        
-       
-        
-        //for subtitles
-        sentence=sentence.replaceAll(" \\[ Getty Images \\]$", "");
-        sentence=sentence.replaceAll("\\.([A-ZÜĞİŞÇÖ])",". $1");
-        sentence=sentence.replaceAll(";([A-Za-züğışçöÜĞİŞÇÖ])","; $1");
-        sentence=sentence.replaceAll(",([A-Za-züğışçöÜĞİŞÇÖ])",", $1");
-        sentence=sentence.replaceAll("\\?([A-Za-züğışçöÜĞİŞÇÖ])","? $1");
-        sentence=sentence.replaceAll("\\!([A-Za-züğışçöÜĞİŞÇÖ])","! $1");
-        sentence=sentence.replaceAll("\\.\\.+ *\\.\\.+"," ");
-        sentence=sentence.replaceAll("^ *-", "");
-        sentence=sentence.replaceAll("\\. *[\\[\\(\\{]?\\d*[\\)\\]\\}]?$", ".");
-        
-        
-         //spaces
-        sentence=sentence.replaceAll("^ *\t* *", "");
-        sentence=sentence.trim();
-        sentence=sentence.replaceAll(" +"," ");
-       
-        return sentence;
+        return SentenceNormalizer.forCurrentThread().normalize(sentence);
     }
     public static boolean initialFilter(String sentence1, String sentence2)
     {
-        if((sentence1.matches("^.*[©~½$#=&Ä±Ã§Â»].*$"))||(sentence2.matches("^.*[©~½$#=&Ä±Ã§Â»].*$")))
+        if((REJECTED_CHARACTERS.matcher(sentence1).matches())||(REJECTED_CHARACTERS.matcher(sentence2).matches()))
         {
             return false;
         }
@@ -0,0 +1,387 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import com.swabunga.spell.engine.SpellDictionaryHashMap;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times every stage of the filter on one thread: normalization, the initial
+ * filter, word counting, translation coverage, both spell checkers, the
+ * language model, both forest implementations and whole pairs, with and
+ * without {@link FilterMetrics} recording. Each stage runs over the corpus
+ * a few times to warm up and then a few measured times. Every call is timed
+ * separately for the latency percentiles, and the bytes the thread
+ * allocated during the measured passes give the allocation per call. The
+ * spell check service is measured with a warm cache.
+ *
+ * This is a quick check that needs no build. Everything runs in one JVM
+ * without forks, so the tail percentiles include GC pauses and safepoints;
+ * numbers to compare between releases come from the JMH benchmarks in the
+ * benchmarks module (StageBenchmarks).
+ *
+ * Without corpus files a synthetic English-Turkish corpus is made from the
+ * dictionary, so the benchmark needs nothing but the scoring resources.
+ * Results are printed as a table and written as JSON for comparing runs.
+ *
+ * Usage: PipelineBenchmark &lt;dictionary_file&gt; &lt;model_or_arff_file&gt;
+ * [english_file turkish_file] [--lm F] [--spell-dict F] [--pairs N]
+ * [--warmup N] [--rounds N] [--json F]
+ *
+ * @author Eray
+ */
+public class PipelineBenchmark {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /** One measured operation; the result is summed so it cannot be optimized away. */
+    private abstract static class Stage {
+        final String name;
+        final int operations;
+
+        Stage(String name, int operations)
+        {
+            this.name = name;
+            this.operations = operations;
+        }
+
+        abstract double run(int i) throws Exception;
+    }
+
+    private static class Result {
+        final String name;
+        final long operations;
+        final double throughput;
+        final double mean;
+        final long[] percentiles = new long[PERCENTILES.length];
+        final long max;
+        final double allocatedBytes;
+
+        Result(Stage stage, long[] samples, long totalNanos, long allocated)
+        {
+            this.name = stage.name;
+            this.operations = samples.length;
+            this.throughput = samples.length * 1e9 / totalNanos;
+            Arrays.sort(samples);
+            long sum = 0;
+            for(long sample : samples)
+            {
+                sum += sample;
+            }
+            this.mean = (double) sum / samples.length;
+            for(int p = 0; p < PERCENTILES.length; p++)
+            {
+                int index = (int)Math.ceil(PERCENTILES[p] / 100 * samples.length) - 1;
+                percentiles[p] = samples[Math.max(0, Math.min(index, samples.length - 1))];
+            }
+            this.max = samples[samples.length - 1];
+            this.allocatedBytes = allocated < 0 ? -1 : (double) allocated / samples.length;
+        }
+    }
+
+    private static double sink = 0;
+
+    public static void main(String[] args) throws Exception
+    {
+        RunOptions options = RunOptions.parse(args);
+        args = options.getArguments();
+        if(args.length != 2 && args.length != 4)
+        {
+            System.err.println("Kullanım: PipelineBenchmark <dictionary_file> <model_or_arff_file> [english_file turkish_file] [--lm F] [--spell-dict F] [--pairs N] [--warmup N] [--rounds N] [--json F]");
+            System.exit(1);
+        }
+        int warmup = options.getInt("warmup", 3);
+        int rounds = options.getInt("rounds", 5);
+        final ScoringResources resources = ScoringResources.load(args[0], options.get("lm", ScoringResources.DEFAULT_LM_FILE),
+                options.get("spell-dict", ScoringResources.DEFAULT_SPELL_DICTIONARY));
+        final QualityModel model = QualityModel.open(args[1]);
+        final List<SentencePair> corpus = args.length == 4 ? readCorpus(args[2], args[3], options.getInt("pairs", Integer.MAX_VALUE))
+                : syntheticCorpus(resources.getDictionary(), options.getInt("pairs", 2000), 42);
+        String corpusName = args.length == 4 ? args[2] + " " + args[3] : "synthetic";
+
+        // inputs of the later stages, computed once
+        final List<String[]> normalized = new ArrayList<>();
+        final List<String[]> scored = new ArrayList<>();
+        for(SentencePair pair : corpus)
+        {
+            String[] sentences = {ParallelSentenceClassifier.initialize(pair.getEnglish()), ParallelSentenceClassifier.initialize(pair.getTurkish())};
+            normalized.add(sentences);
+            if(ParallelSentenceClassifier.initialFilter(sentences[0], sentences[1]))
+            {
+                scored.add(sentences);
+            }
+        }
+        if(scored.isEmpty())
+        {
+            System.err.println("Hiçbir çift ilk süzgeçten geçmedi.");
+            System.exit(1);
+        }
+        final FeatureExtractor extractor = new FeatureExtractor(resources);
+        final List<String> spellInput = new ArrayList<>();
+        final List<double[]> vectors = new ArrayList<>();
+        for(String[] sentences : scored)
+        {
+            spellInput.add(new SentenceNormalizer().forSpellChecker(sentences[0]));
+            vectors.add(extractor.extract(sentences[0], sentences[1]));
+        }
+        final PairProcessor processor = new PairProcessor(extractor, model);
+        final SpellDictionaryHashMap spellDictionary = (SpellDictionaryHashMap)resources.getSpellChecker().getDictionary();
+        final double[] distribution = new double[2];
+
+        List<Stage> stages = new ArrayList<>();
+        stages.add(new Stage("initialize", corpus.size()) {
+            @Override
+            double run(int i)
+            {
+                return ParallelSentenceClassifier.initialize(corpus.get(i).getEnglish()).length()
+                        + ParallelSentenceClassifier.initialize(corpus.get(i).getTurkish()).length();
+            }
+        });
+        stages.add(new Stage("initialFilter", normalized.size()) {
+            @Override
+            double run(int i)
+            {
+                return ParallelSentenceClassifier.initialFilter(normalized.get(i)[0], normalized.get(i)[1]) ? 1 : 0;
+            }
+        });
+        stages.add(new Stage("WordCount", scored.size()) {
+            @Override
+            double run(int i)
+            {
+                return ParallelSentenceClassifier.WordCount(scored.get(i)[0]) + ParallelSentenceClassifier.WordCount(scored.get(i)[1]);
+            }
+        });
+        stages.add(new Stage("TokenizedSentence", scored.size()) {
+            @Override
+            double run(int i)
+            {
+                return new TokenizedSentence(scored.get(i)[0], true).getKeyCount() + new TokenizedSentence(scored.get(i)[1], false).getKeyCount();
+            }
+        });
+        stages.add(new Stage("ContentFilter", scored.size()) {
+            @Override
+            double run(int i)
+            {
+                return new ContentFilter(resources.getDictionaryIndex(), scored.get(i)[0], scored.get(i)[1]).get_ratio();
+            }
+        });
+        stages.add(new Stage("JazzySpellChecker", spellInput.size()) {
+            @Override
+            double run(int i)
+            {
+                return new JazzySpellChecker(spellDictionary).getMisspelledWords(spellInput.get(i)).size();
+            }
+        });
+        stages.add(new Stage("SpellCheckService", spellInput.size()) {
+            @Override
+            double run(int i)
+            {
+                return resources.getSpellChecker().countMisspelledWords(spellInput.get(i));
+            }
+        });
+        stages.add(new Stage("NgramScore", scored.size()) {
+            @Override
+            double run(int i)
+            {
+                return new NgramScore(resources.getLanguageModel(), scored.get(i)[0]).score;
+            }
+        });
+        stages.add(new Stage("RandomForest", vectors.size()) {
+            @Override
+            double run(int i) throws Exception
+            {
+                return model.wekaDistribution(vectors.get(i))[0];
+            }
+        });
+        if(model.getFlatForest() != null)
+        {
+            stages.add(new Stage("FlatForest", vectors.size()) {
+                @Override
+                double run(int i)
+                {
+                    model.getFlatForest().distribution(vectors.get(i), distribution);
+                    return distribution[0];
+                }
+            });
+        }
+        stages.add(new Stage("pair", corpus.size()) {
+            @Override
+            double run(int i) throws Exception
+            {
+                return processor.process(corpus.get(i)).isScored() ? 1 : 0;
+            }
+        });
+        // the same with metrics recording, to see what the instrumentation costs
+        FilterMetrics metrics = new FilterMetrics();
+        final PairProcessor measured = new PairProcessor(new FeatureExtractor(resources, metrics), model, metrics, null, null, null);
+        stages.add(new Stage("pair+metrics", corpus.size()) {
+            @Override
+            double run(int i) throws Exception
+            {
+                return measured.process(corpus.get(i)).isScored() ? 1 : 0;
+            }
+        });
+
+        System.out.println(corpus.size() + " çift (" + corpusName + "), " + scored.size() + " tanesi ilk süzgeçten geçiyor.");
+        System.out.println(String.format(Locale.ROOT, "%-18s %12s %10s %10s %10s %10s %12s", "aşama", "işlem/s", "p50 ns", "p90 ns", "p99 ns", "p99.9 ns", "bayt/işlem"));
+        List<Result> results = new ArrayList<>();
+        for(Stage stage : stages)
+        {
+            Result result = measure(stage, warmup, rounds);
+            results.add(result);
+            System.out.println(String.format(Locale.ROOT, "%-18s %12.1f %10d %10d %10d %10d %12.0f", result.name, result.throughput,
+                    result.percentiles[0], result.percentiles[1], result.percentiles[2], result.percentiles[3], result.allocatedBytes));
+        }
+        String json = toJson(corpusName, corpus.size(), scored.size(), warmup, rounds, results);
+        String jsonFile = options.get("json", "benchmark.json");
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8")))
+        {
+            out.print(json);
+        }
+        System.out.println("Sonuçlar yazıldı: " + jsonFile + " (" + sink + ")");
+    }
+
+    private static Result measure(Stage stage, int warmup, int rounds) throws Exception
+    {
+        for(int w = 0; w < warmup; w++)
+        {
+            for(int i = 0; i < stage.operations; i++)
+            {
+                sink += stage.run(i);
+            }
+        }
+        long[] samples = new long[stage.operations * rounds];
+        int k = 0;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for(int r = 0; r < rounds; r++)
+        {
+            for(int i = 0; i < stage.operations; i++)
+            {
+                long t = System.nanoTime();
+                sink += stage.run(i);
+                samples[k++] = System.nanoTime() - t;
+            }
+        }
+        long total = System.nanoTime() - start;
+        long after = allocatedBytes();
+        return new Result(stage, samples, total, allocated < 0 || after < 0 ? -1 : after - allocated);
+    }
+
+    /** Bytes allocated by the calling thread so far, -1 when the JVM cannot tell. */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+            if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+            {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static String toJson(String corpus, int pairs, int scoredPairs, int warmup, int rounds, List<Result> results)
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"corpus\": \"").append(corpus.replace("\\", "\\\\").replace("\"", "\\\"")).append("\",\n");
+        json.append("  \"pairs\": ").append(pairs).append(",\n");
+        json.append("  \"scored_pairs\": ").append(scoredPairs).append(",\n");
+        json.append("  \"warmup_rounds\": ").append(warmup).append(",\n");
+        json.append("  \"measured_rounds\": ").append(rounds).append(",\n");
+        json.append("  \"java_version\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"stages\": [\n");
+        for(int s = 0; s < results.size(); s++)
+        {
+            Result result = results.get(s);
+            json.append("    {\"name\": \"").append(result.name).append("\"");
+            json.append(", \"operations\": ").append(result.operations);
+            json.append(String.format(Locale.ROOT, ", \"ops_per_second\": %.1f", result.throughput));
+            json.append(String.format(Locale.ROOT, ", \"mean_ns\": %.1f", result.mean));
+            for(int p = 0; p < PERCENTILES.length; p++)
+            {
+                json.append(", \"p").append(String.valueOf(PERCENTILES[p]).replace(".0", "").replace('.', '_')).append("_ns\": ").append(result.percentiles[p]);
+            }
+            json.append(", \"max_ns\": ").append(result.max);
+            json.append(String.format(Locale.ROOT, ", \"allocated_bytes_per_op\": %.1f}", result.allocatedBytes));
+            json.append(s + 1 < results.size() ? ",\n" : "\n");
+        }
+        json.append("  ]\n}\n");
+        return json.toString();
+    }
+
+    private static List<SentencePair> readCorpus(String englishFile, String turkishFile, int max) throws IOException
+    {
+        List<SentencePair> corpus = new ArrayList<>();
+        try (PairSource source = new ReaderPairSource(new File(englishFile), new File(turkishFile)))
+        {
+            List<SentencePair> batch;
+            while(corpus.size() < max && !(batch = source.nextBatch(Math.min(256, max - corpus.size()))).isEmpty())
+            {
+                corpus.addAll(batch);
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * Sentences of random dictionary words: most pairs are word-by-word
+     * translations, every fifth has unrelated Turkish words, and some are too
+     * short for the initial filter.
+     */
+    static List<SentencePair> syntheticCorpus(Map<String,String> dictionary, int pairs, long seed)
+    {
+        List<String> englishWords = new ArrayList<>();
+        for(String word : dictionary.keySet())
+        {
+            if(!word.isEmpty() && word.indexOf(' ') < 0 && !dictionary.get(word).isEmpty())
+            {
+                englishWords.add(word);
+            }
+        }
+        Collections.sort(englishWords);
+        Random random = new Random(seed);
+        List<SentencePair> corpus = new ArrayList<>(pairs);
+        for(int i = 0; i < pairs; i++)
+        {
+            int length = random.nextInt(10) == 0 ? 2 + random.nextInt(3) : 5 + random.nextInt(16);
+            boolean unrelated = random.nextInt(5) == 0;
+            StringBuilder english = new StringBuilder();
+            StringBuilder turkish = new StringBuilder();
+            for(int w = 0; w < length; w++)
+            {
+                String word = englishWords.get(random.nextInt(englishWords.size()));
+                String translation = dictionary.get(unrelated ? englishWords.get(random.nextInt(englishWords.size())) : word);
+                if(w > 0)
+                {
+                    english.append(' ');
+                    turkish.append(' ');
+                }
+                english.append(word);
+                turkish.append(translation.split(" ")[0]);
+            }
+            english.setCharAt(0, Character.toUpperCase(english.charAt(0)));
+            turkish.setCharAt(0, Character.toUpperCase(turkish.charAt(0)));
+            english.append('.');
+            turkish.append('.');
+            corpus.add(new SentencePair(i + 1, english.toString(), turkish.toString()));
+        }
+        return corpus;
+    }
+}
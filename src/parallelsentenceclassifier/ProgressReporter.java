@@ -0,0 +1,65 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.PrintStream;
+
+/**
+ * Prints "lines read, percent of input bytes" with a carriage return, at most
+ * once per interval. The percentage comes from the bytes the readers have
+ * consumed, so the input never has to be counted in advance.
+ *
+ * @author Eray
+ */
+public class ProgressReporter {
+    private final PrintStream out;
+    private final long totalBytes;
+    private final long intervalNanos;
+    private long lastReport;
+
+    /**
+     * @param intervalMillis minimum time between two reports, 0 or less
+     * disables reporting
+     */
+    public ProgressReporter(PrintStream out, long totalBytes, long intervalMillis)
+    {
+        this.out = out;
+        this.totalBytes = totalBytes;
+        this.intervalNanos = intervalMillis * 1000000L;
+        this.lastReport = System.nanoTime();
+    }
+
+    public void update(long lines, long bytes)
+    {
+        if(intervalNanos <= 0)
+        {
+            return;
+        }
+        long now = System.nanoTime();
+        if(now - lastReport >= intervalNanos)
+        {
+            lastReport = now;
+            print(lines, bytes);
+        }
+    }
+
+    /** Prints the final state regardless of the interval and ends the line. */
+    public void finish(long lines, long bytes)
+    {
+        if(intervalNanos <= 0)
+        {
+            return;
+        }
+        print(lines, bytes);
+        out.println();
+    }
+
+    private void print(long lines, long bytes)
+    {
+        double percent = totalBytes > 0 ? 100.0 * bytes / totalBytes : 100.0;
+        out.print(lines + " satır, %" + String.format("%.1f", Math.min(percent, 100.0)) + "\r");
+        out.flush();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+import weka.core.converters.ArffLoader;
+
+/**
+ * The trained quality classifier together with the ARFF header it was
+ * trained on. Prediction only reads the forest, so it can be called from
+ * several threads at once.
+ *
+ * @author Eray
+ */
+public class QualityModel {
+    private final RandomForest classifier;
+    private final Instances header;
+    /** Compiled copy of the classifier, null when it could not be compiled. */
+    private final FlatForest flatForest;
+
+    public QualityModel(RandomForest classifier, Instances header)
+    {
+        this.classifier = classifier;
+        this.header = header;
+        this.flatForest = FlatForest.compileOrNull(classifier, header);
+    }
+
+    /**
+     * Trains a RandomForest on the given ARFF file (class attribute last).
+     */
+    public static QualityModel train(String arffFile) throws Exception
+    {
+        ArffLoader loader = new ArffLoader();
+        loader.setFile(new File(arffFile));
+        RandomForest classifier = new RandomForest();
+        Instances data = loader.getDataSet();
+        data.setClassIndex(6);
+        checkSchema(data, arffFile);
+        classifier.buildClassifier(data);
+        return new QualityModel(classifier, new Instances(data, 0));
+    }
+
+    /**
+     * Writes the fitted forest and its attribute header, see {@link #load}.
+     */
+    public void save(String modelFile) throws Exception
+    {
+        SerializationHelper.writeAll(modelFile, new Object[] {classifier, header});
+    }
+
+    /**
+     * Reads a model written by {@link #save}, checking that its attributes
+     * are the features {@link FeatureExtractor} produces.
+     */
+    public static QualityModel load(String modelFile) throws Exception
+    {
+        Object[] objects = SerializationHelper.readAll(modelFile);
+        if(objects.length != 2 || !(objects[0] instanceof RandomForest) || !(objects[1] instanceof Instances))
+        {
+            throw new IOException("Model dosyası tanınmadı: " + modelFile);
+        }
+        Instances header = (Instances)objects[1];
+        checkSchema(header, modelFile);
+        return new QualityModel((RandomForest)objects[0], header);
+    }
+
+    /**
+     * Loads a model saved with -train-model, or trains one when the file is
+     * an ARFF training set.
+     */
+    public static QualityModel open(String file) throws Exception
+    {
+        return isSerialized(new File(file)) ? load(file) : train(file);
+    }
+
+    /** Java serialization streams start with 0xACED, ARFF files are text. */
+    static boolean isSerialized(File file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            return in.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+        }
+        catch(EOFException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * The vectors passed to {@link #distribution} are positional, so a model
+     * trained on other attributes would silently give wrong answers.
+     */
+    static void checkSchema(Instances header, String source) throws IOException
+    {
+        if(header.numAttributes() != FeatureExtractor.FEATURE_COUNT + 1 || header.classIndex() != FeatureExtractor.FEATURE_COUNT)
+        {
+            throw new IOException("Model şeması uyumsuz (" + source + "): " + FeatureExtractor.FEATURE_COUNT + " özellik ve sonda sınıf bekleniyordu, "
+                    + header.numAttributes() + " nitelik var");
+        }
+        for(int j = 0; j < FeatureExtractor.FEATURE_COUNT; j++)
+        {
+            Attribute attribute = header.attribute(j);
+            if(!attribute.isNumeric() || !attribute.name().equals(FeatureExtractor.FEATURE_NAMES[j]))
+            {
+                throw new IOException("Model şeması uyumsuz (" + source + "): " + (j + 1) + ". nitelik sayısal '" + FeatureExtractor.FEATURE_NAMES[j]
+                        + "' olmalı, '" + attribute.name() + "' bulundu");
+            }
+        }
+        Attribute classAttribute = header.classAttribute();
+        if(!classAttribute.isNominal() || classAttribute.numValues() != 2 || classAttribute.indexOfValue("kaliteli") != 0 || classAttribute.indexOfValue("kalitesiz") != 1)
+        {
+            throw new IOException("Model şeması uyumsuz (" + source + "): sınıf {'kaliteli', 'kalitesiz'} olmalı");
+        }
+    }
+
+    /**
+     * @return class distribution, index 0 is 'kaliteli'
+     */
+    public double[] distribution(double[] vector) throws Exception
+    {
+        if(flatForest == null || FlatForest.hasMissing(vector, 0, FeatureExtractor.FEATURE_COUNT))
+        {
+            return wekaDistribution(vector);
+        }
+        double[] result = new double[flatForest.getNumClasses()];
+        flatForest.distribution(vector, result);
+        return result;
+    }
+
+    /**
+     * Same as {@link #distribution}, computed by the Weka forest itself.
+     */
+    double[] wekaDistribution(double[] vector) throws Exception
+    {
+        double[] values = new double[FeatureExtractor.FEATURE_COUNT + 1];
+        System.arraycopy(vector, 0, values, 0, FeatureExtractor.FEATURE_COUNT);
+        values[FeatureExtractor.FEATURE_COUNT] = Utils.missingValue();
+        Instance instance = new DenseInstance(1.0, values);
+        instance.setDataset(header);
+        return classifier.distributionForInstance(instance);
+    }
+
+    /**
+     * @return the compiled forest, or null when scoring goes through Weka
+     */
+    public FlatForest getFlatForest()
+    {
+        return flatForest;
+    }
+}
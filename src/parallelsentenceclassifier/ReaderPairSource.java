@@ -0,0 +1,141 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the English and Turkish files line by line through two UTF-8
+ * readers. Used for inputs that cannot be memory mapped, such as pipes;
+ * regular files go through {@link MappedPairSource}.
+ *
+ * @author Eray
+ */
+public class ReaderPairSource implements PairSource {
+    private final CountingInputStream in1;
+    private final CountingInputStream in2;
+    private final BufferedReader oku;
+    private final BufferedReader oku2;
+    private final ProgressReporter progress;
+    private final File englishFile;
+    private final File turkishFile;
+    private long lineNumber = 0;
+    private boolean finished = false;
+
+    public ReaderPairSource(File englishFile, File turkishFile) throws IOException
+    {
+        this(englishFile, turkishFile, 0);
+    }
+
+    /**
+     * @param progressMillis interval of the progress line printed to
+     * System.out, 0 for none
+     */
+    public ReaderPairSource(File englishFile, File turkishFile, long progressMillis) throws IOException
+    {
+        this.englishFile = englishFile;
+        this.turkishFile = turkishFile;
+        this.in1 = new CountingInputStream(new FileInputStream(englishFile));
+        this.in2 = new CountingInputStream(new FileInputStream(turkishFile));
+        this.oku = new BufferedReader(new InputStreamReader(in1, "UTF-8"));
+        this.oku2 = new BufferedReader(new InputStreamReader(in2, "UTF-8"));
+        this.progress = new ProgressReporter(System.out, englishFile.length() + turkishFile.length(), progressMillis);
+    }
+
+    @Override
+    public List<SentencePair> nextBatch(int max) throws IOException
+    {
+        List<SentencePair> batch = new ArrayList<>(max);
+        while(batch.size() < max && !finished)
+        {
+            // ready() only says whether a read would block, which ends pipes early
+            String english = oku.readLine();
+            String turkish = oku2.readLine();
+            if(english == null || turkish == null)
+            {
+                finished = true;
+                if(english != null || turkish != null)
+                {
+                    System.err.println("Uyarı: " + (english == null ? englishFile : turkishFile) + " " + lineNumber + ". satırda bitti, "
+                            + (english == null ? turkishFile : englishFile) + " daha uzun; kalan satırlar atlandı.");
+                }
+                break;
+            }
+            lineNumber++;
+            batch.add(new SentencePair(lineNumber, english, turkish));
+        }
+        if(batch.isEmpty())
+        {
+            progress.finish(lineNumber, getBytesRead());
+        }
+        else
+        {
+            progress.update(lineNumber, getBytesRead());
+        }
+        return batch;
+    }
+
+    /** Includes what the readers have buffered ahead. */
+    @Override
+    public long getBytesRead()
+    {
+        return in1.count + in2.count;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        oku.close();
+        oku2.close();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        // written by the reader thread only
+        long count = 0;
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if(b >= 0)
+            {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if(n > 0)
+            {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits the command line into the positional arguments the program always
+ * had (dictionary_file english_file turkish_file -train|-test ...) and
+ * optional "--name value" switches that may appear anywhere.
+ *
+ * @author Eray
+ */
+public class RunOptions {
+    /** Options that take no value. */
+    private static final Set<String> SWITCHES = new HashSet<>(Arrays.asList("gzip", "dedup-off-heap", "drop-duplicates", "exact-word-count"));
+
+    private final List<String> arguments = new ArrayList<>();
+    private final Map<String,String> options = new HashMap<>();
+
+    public static RunOptions parse(String[] args)
+    {
+        RunOptions result = new RunOptions();
+        for(int i = 0; i < args.length; i++)
+        {
+            if(args[i].startsWith("--") && args[i].length() > 2)
+            {
+                String name = args[i].substring(2);
+                String value = "true";
+                int eq = name.indexOf('=');
+                if(eq >= 0)
+                {
+                    value = name.substring(eq + 1);
+                    name = name.substring(0, eq);
+                }
+                else if(!SWITCHES.contains(name))
+                {
+                    if(i + 1 >= args.length)
+                    {
+                        throw new IllegalArgumentException("--" + name + " için değer eksik");
+                    }
+                    value = args[++i];
+                }
+                result.options.put(name, value);
+            }
+            else
+            {
+                result.arguments.add(args[i]);
+            }
+        }
+        return result;
+    }
+
+    public String[] getArguments()
+    {
+        return arguments.toArray(new String[arguments.size()]);
+    }
+
+    public boolean has(String name)
+    {
+        return options.containsKey(name);
+    }
+
+    public String get(String name, String defaultValue)
+    {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    public int getInt(String name, int defaultValue)
+    {
+        String value = options.get(name);
+        if(value == null)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("--" + name + " bir tam sayı olmalı: " + value);
+        }
+    }
+
+    public double getDouble(String name, double defaultValue)
+    {
+        String value = options.get(name);
+        if(value == null)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Double.parseDouble(value.trim());
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("--" + name + " bir sayı olmalı: " + value);
+        }
+    }
+}
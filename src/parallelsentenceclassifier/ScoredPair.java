@@ -0,0 +1,136 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+/**
+ * Result of processing one {@link SentencePair}: the normalized sentences
+ * and, when the pair passed the initial filter, its feature vector and the
+ * class distribution (kaliteli, kalitesiz). A duplicate of an earlier pair
+ * carries that pair's verdict instead of features and a distribution of its
+ * own. A pair decided early by a {@link CascadeModel} has only the cheap
+ * features. A pair found in a {@link VerdictStore} carries the verdict of an
+ * earlier run, without features.
+ *
+ * @author Eray
+ */
+public class ScoredPair {
+    private final SentencePair source;
+    private final String english;
+    private final String turkish;
+    private final double[] features;
+    private final double[] distribution;
+    private final boolean duplicate;
+    private final boolean early;
+    private final boolean recalled;
+
+    public ScoredPair(SentencePair source, String english, String turkish, double[] features, double[] distribution)
+    {
+        this(source, english, turkish, features, distribution, false, false, false);
+    }
+
+    private ScoredPair(SentencePair source, String english, String turkish, double[] features, double[] distribution, boolean duplicate, boolean early,
+            boolean recalled)
+    {
+        this.source = source;
+        this.english = english;
+        this.turkish = turkish;
+        this.features = features;
+        this.distribution = distribution;
+        this.duplicate = duplicate;
+        this.early = early;
+        this.recalled = recalled;
+    }
+
+    /**
+     * A pair identical, after normalization, to one scored before. Its
+     * distribution is {1, 0} or {0, 1} after the earlier verdict.
+     */
+    public static ScoredPair duplicate(SentencePair source, String english, String turkish, boolean kept)
+    {
+        return new ScoredPair(source, english, turkish, null, kept ? new double[] {1, 0} : new double[] {0, 1}, true, false, false);
+    }
+
+    /**
+     * A pair the cheap stage of a cascade was confident about. features has
+     * NaN for the expensive features; the distribution is {1, 0} or {0, 1}.
+     */
+    public static ScoredPair early(SentencePair source, String english, String turkish, double[] features, boolean kept)
+    {
+        return new ScoredPair(source, english, turkish, features, kept ? new double[] {1, 0} : new double[] {0, 1}, false, true, false);
+    }
+
+    /**
+     * A pair whose verdict an earlier run stored. Like a duplicate it has no
+     * features, and its distribution is {1, 0} or {0, 1}.
+     */
+    public static ScoredPair recalled(SentencePair source, String english, String turkish, boolean kept)
+    {
+        return new ScoredPair(source, english, turkish, null, kept ? new double[] {1, 0} : new double[] {0, 1}, false, false, true);
+    }
+
+    public SentencePair getSource()
+    {
+        return source;
+    }
+
+    public long getLineNumber()
+    {
+        return source.getLineNumber();
+    }
+
+    /** Normalized English sentence. */
+    public String getEnglish()
+    {
+        return english;
+    }
+
+    /** Normalized Turkish sentence. */
+    public String getTurkish()
+    {
+        return turkish;
+    }
+
+    /** False when the pair was dropped by the initial filter. */
+    public boolean isScored()
+    {
+        return features != null || duplicate || recalled;
+    }
+
+    /** True when the verdict was taken over from an identical earlier pair. */
+    public boolean isDuplicate()
+    {
+        return duplicate;
+    }
+
+    /** True when the verdict was read from the store of an earlier run. */
+    public boolean isRecalled()
+    {
+        return recalled;
+    }
+
+    /** True when the cheap stage of a cascade decided the pair. */
+    public boolean isEarly()
+    {
+        return early;
+    }
+
+    /** Null for a duplicate or a recalled pair. */
+    public double[] getFeatures()
+    {
+        return features;
+    }
+
+    /** Null in -train mode, where no classifier is loaded. */
+    public double[] getDistribution()
+    {
+        return distribution;
+    }
+
+    /** A pair is kept only when the forest is unanimous for 'kaliteli'. */
+    public boolean isKept()
+    {
+        return distribution != null && distribution[0] == 1;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Holds the bilingual dictionary, the language model and the spell checking
+ * dictionary. Everything is loaded once at startup and only read afterwards,
+ * so the same instance can be handed to every feature extractor.
+ *
+ * @author Eray
+ */
+public class ScoringResources {
+    /** Looked up in the working directory, the project folder when run from the IDE. */
+    public static final String DEFAULT_LM_FILE = "big_test.arpa";
+    public static final String DEFAULT_SPELL_DICTIONARY = "words.utf-8.txt";
+
+    private final Map<String,String> dictionary;
+    private final DictionaryIndex dictionaryIndex;
+    private final LanguageModel languageModel;
+    private final SpellCheckService spellChecker;
+    private final long loadMillis;
+
+    private ScoringResources(Map<String,String> dictionary, LanguageModel languageModel, SpellCheckService spellChecker, long loadMillis)
+    {
+        this.dictionary = Collections.unmodifiableMap(dictionary);
+        this.dictionaryIndex = new DictionaryIndex(dictionary);
+        this.languageModel = languageModel;
+        this.spellChecker = spellChecker;
+        this.loadMillis = loadMillis;
+    }
+
+    /**
+     * Loads and validates all scoring resources.
+     * @param dictFile bilingual dictionary ("en <> tr" per line)
+     * @param lmFile ARPA language model, or its {@link ArpaConverter} binary,
+     * or a {@link Web1T5Converter} count store scored with stupid backoff
+     * @param spellDictFile word list for the spell checker
+     */
+    public static ScoringResources load(String dictFile, String lmFile, String spellDictFile) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        Map<String,String> dictionary = ContentFilter.loadDict(requireFile(dictFile, "sözlük").getPath());
+        if(dictionary.isEmpty())
+        {
+            throw new IOException("Sözlük dosyası boş: " + dictFile);
+        }
+        File lm = requireFile(lmFile, "dil modeli");
+        LanguageModel languageModel;
+        if(MappedLanguageModel.isBinary(lm))
+        {
+            languageModel = MappedLanguageModel.open(lm.getPath());
+        }
+        else if(NgramCountStore.isCountStore(lm))
+        {
+            languageModel = StupidBackoffModel.open(lm.getPath());
+        }
+        else
+        {
+            languageModel = BerkeleyLanguageModel.readArpa(lm.getPath());
+        }
+        if(languageModel.getOrder() < 1)
+        {
+            throw new IOException("Dil modeli okunamadı: " + lmFile);
+        }
+        SpellCheckService spellChecker = SpellCheckService.load(requireFile(spellDictFile, "yazım denetimi sözlüğü"));
+        return new ScoringResources(dictionary, languageModel, spellChecker, System.currentTimeMillis() - start);
+    }
+
+    private static File requireFile(String fileName, String description) throws FileNotFoundException
+    {
+        File file = new File(fileName);
+        if(!file.isFile() || !file.canRead())
+        {
+            throw new FileNotFoundException("Bulunamadı (" + description + "): " + file.getAbsolutePath());
+        }
+        return file;
+    }
+
+    public Map<String,String> getDictionary()
+    {
+        return dictionary;
+    }
+
+    /** Translation index used for the translation_score feature. */
+    public DictionaryIndex getDictionaryIndex()
+    {
+        return dictionaryIndex;
+    }
+
+    public LanguageModel getLanguageModel()
+    {
+        return languageModel;
+    }
+
+    /** Source of the wrong_words_count feature. */
+    public SpellCheckService getSpellChecker()
+    {
+        return spellChecker;
+    }
+
+    public long getLoadMillis()
+    {
+        return loadMillis;
+    }
+}
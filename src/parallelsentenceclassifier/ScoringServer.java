@@ -0,0 +1,751 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the dictionary, language model, spell checker and forest loaded and
+ * scores sentence pairs sent over HTTP, so a crawler pays the start-up cost
+ * once instead of per call.
+ *
+ * POST /score takes JSON lines, one {"en": "...", "tr": "..."} object per
+ * pair with an optional "id" that is echoed back, and answers with one JSON
+ * line per pair in the same order: whether it passed the initial filter,
+ * the verdict, the feature vector and the class distribution. GET /health
+ * answers "ok" and GET /metrics gives the {@link FilterMetrics} counters and
+ * stage times, including whole requests, in Prometheus format.
+ *
+ * Pairs of all requests go into one queue served by --threads workers; a
+ * worker takes up to --max-batch waiting pairs at a time, without waiting
+ * for more to arrive, so a single pair is scored at once. At most --queue
+ * pairs may be waiting or in work. A request that cannot get room for its
+ * pairs within --queue-timeout milliseconds gets 503 with Retry-After, and
+ * at most --connections requests are read and answered at once.
+ *
+ * @author Eray
+ */
+public class ScoringServer {
+    private static final Pattern JSON_LITERAL = Pattern.compile("-?(0|[1-9]\\d*)(\\.\\d+)?([eE][+-]?\\d+)?|true|false|null");
+    private static final String[] CLASS_NAMES = {"kaliteli", "kalitesiz"};
+
+    /** Pairs of one request and the latch its handler waits on. */
+    private static class Request {
+        final ScoredPair[] results;
+        final CountDownLatch done;
+        volatile Exception error;
+
+        Request(int size)
+        {
+            results = new ScoredPair[size];
+            done = new CountDownLatch(size);
+        }
+    }
+
+    private static class Job {
+        final Request request;
+        final int index;
+        final SentencePair pair;
+
+        Job(Request request, int index, SentencePair pair)
+        {
+            this.request = request;
+            this.index = index;
+            this.pair = pair;
+        }
+    }
+
+    private final PairProcessor processor;
+    private final FilterMetrics metrics;
+    private final int maxBatch;
+    private final int queueSize;
+    private final long queueTimeoutMillis;
+    private final Semaphore room;
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong refused = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService connections;
+
+    public ScoringServer(PairProcessor processor, FilterMetrics metrics, int threads, int maxBatch, int queueSize, long queueTimeoutMillis)
+    {
+        if(threads < 1 || maxBatch < 1 || queueSize < 1)
+        {
+            throw new IllegalArgumentException("threads, max-batch ve queue pozitif olmalı");
+        }
+        this.processor = processor;
+        this.metrics = metrics;
+        this.maxBatch = maxBatch;
+        this.queueSize = queueSize;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.room = new Semaphore(queueSize);
+        for(int i = 0; i < threads; i++)
+        {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    work();
+                }
+            }, "scorer-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Loads the scoring resources and the model the way a -test run does and
+     * serves until the process is stopped. Used by the -serve command.
+     */
+    public static void serve(String dictFile, String modelFile, RunOptions options) throws Exception
+    {
+        System.err.println("Sınıflandırıcı ayarlanıyor...");
+        QualityModel model = QualityModel.open(modelFile);
+        CascadeModel cascade = null;
+        if(options.has("cascade"))
+        {
+            cascade = CascadeModel.open(options.get("cascade", null)).withThresholds(options.getDouble("cascade-accept", CascadeModel.OFF),
+                    options.getDouble("cascade-reject", 1));
+        }
+        System.err.println("Sözlük, dil modeli ve yazım denetimi sözlüğü yükleniyor...");
+        ScoringResources resources = ScoringResources.load(dictFile, options.get("lm", ScoringResources.DEFAULT_LM_FILE),
+                options.get("spell-dict", ScoringResources.DEFAULT_SPELL_DICTIONARY));
+        System.err.println("Kaynaklar " + resources.getLoadMillis() + " ms içinde yüklendi.");
+        DuplicateIndex duplicates = null;
+        if(options.has("dedup"))
+        {
+            duplicates = new DuplicateIndex(options.getInt("dedup", 10000000), options.has("dedup-off-heap"));
+        }
+        FilterMetrics metrics = new FilterMetrics();
+        int threads = options.getInt("threads", 0);
+        threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        PairProcessor processor = new PairProcessor(new FeatureExtractor(resources, metrics, options.has("exact-word-count")), model, metrics, duplicates, cascade, null);
+        final ScoringServer server = new ScoringServer(processor, metrics, threads, options.getInt("max-batch", 64),
+                options.getInt("queue", 10000), options.getInt("queue-timeout", 100));
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(options.get("bind", "127.0.0.1")), options.getInt("port", 8080));
+        server.start(address, options.getInt("connections", 4 * threads));
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run()
+            {
+                server.stop();
+            }
+        });
+        System.err.println("http://" + address.getHostString() + ":" + address.getPort() + "/score adresinde " + threads + " iş parçacığıyla dinleniyor.");
+    }
+
+    public void start(InetSocketAddress address, int connectionCount) throws IOException
+    {
+        // Without TCP_NODELAY every small answer waits for the client's
+        // delayed ACK, about 40 ms. The JDK server reads this once.
+        if(System.getProperty("sun.net.httpserver.nodelay") == null)
+        {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/score", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handleScore(exchange);
+            }
+        });
+        server.createContext("/health", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                send(exchange, 200, "ok\n");
+            }
+        });
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                send(exchange, 200, metrics.toPrometheus() + counterText());
+            }
+        });
+        connections = Executors.newFixedThreadPool(connectionCount);
+        server.setExecutor(connections);
+        server.start();
+    }
+
+    public void stop()
+    {
+        if(server != null)
+        {
+            server.stop(1);
+            connections.shutdownNow();
+        }
+        for(Thread worker : workers)
+        {
+            worker.interrupt();
+        }
+    }
+
+    private String counterText()
+    {
+        return "# HELP parallel_filter_requests_refused_total Requests answered 503 because the queue was full\n"
+                + "# TYPE parallel_filter_requests_refused_total counter\n"
+                + "parallel_filter_requests_refused_total " + refused.get() + "\n";
+    }
+
+    /** Requests answered 503 because the queue stayed full. */
+    public long getRefused()
+    {
+        return refused.get();
+    }
+
+    private void work()
+    {
+        List<Job> batch = new ArrayList<>(maxBatch);
+        try
+        {
+            while(true)
+            {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+                for(Job job : batch)
+                {
+                    try
+                    {
+                        job.request.results[job.index] = processor.process(job.pair);
+                    }
+                    catch(Exception e)
+                    {
+                        job.request.error = e;
+                    }
+                    finally
+                    {
+                        room.release();
+                        job.request.done.countDown();
+                    }
+                }
+                batch.clear();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scores the pairs on the worker threads and waits for all of them.
+     * @throws RejectedExecutionException when the queue has no room for
+     * them within the queue timeout
+     */
+    public ScoredPair[] score(List<SentencePair> pairs) throws Exception
+    {
+        if(pairs.size() > queueSize)
+        {
+            throw new IllegalArgumentException("Bir istekte en çok " + queueSize + " çift olabilir, " + pairs.size() + " geldi");
+        }
+        if(!room.tryAcquire(pairs.size(), queueTimeoutMillis, TimeUnit.MILLISECONDS))
+        {
+            refused.incrementAndGet();
+            throw new RejectedExecutionException("Kuyruk dolu");
+        }
+        Request request = new Request(pairs.size());
+        for(int i = 0; i < pairs.size(); i++)
+        {
+            queue.add(new Job(request, i, pairs.get(i)));
+        }
+        request.done.await();
+        if(request.error != null)
+        {
+            throw request.error;
+        }
+        return request.results;
+    }
+
+    private void handleScore(HttpExchange exchange) throws IOException
+    {
+        long start = metrics.start();
+        try
+        {
+            if(!"POST".equals(exchange.getRequestMethod()))
+            {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                send(exchange, 405, error("POST bekleniyordu"));
+                return;
+            }
+            List<String> ids = new ArrayList<>();
+            List<SentencePair> pairs = new ArrayList<>();
+            try
+            {
+                readPairs(exchange.getRequestBody(), ids, pairs, queueSize);
+            }
+            catch(IllegalArgumentException e)
+            {
+                send(exchange, 400, error(e.getMessage()));
+                return;
+            }
+            if(pairs.size() > queueSize)
+            {
+                send(exchange, 413, error("Bir istekte en çok " + queueSize + " çift olabilir"));
+                return;
+            }
+            ScoredPair[] results;
+            try
+            {
+                results = score(pairs);
+            }
+            catch(RejectedExecutionException e)
+            {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, error(e.getMessage()));
+                return;
+            }
+            StringBuilder body = new StringBuilder(256 * results.length);
+            for(int i = 0; i < results.length; i++)
+            {
+                appendResult(body, ids.get(i), results[i]);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+            send(exchange, 200, body.toString());
+        }
+        catch(Exception e)
+        {
+            System.err.println("İstek puanlanamadı: " + e);
+            send(exchange, 500, error(e.toString()));
+        }
+        finally
+        {
+            metrics.record(FilterMetrics.REQUEST, start);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads the request lines into ids and pairs, stopping after limit + 1
+     * pairs: a request that big is refused anyway, so the rest of the body
+     * is not read.
+     */
+    private static void readPairs(InputStream body, List<String> ids, List<SentencePair> pairs, int limit) throws IOException
+    {
+        BufferedReader in = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while(pairs.size() <= limit && (line = in.readLine()) != null)
+        {
+            lineNumber++;
+            if(line.trim().isEmpty())
+            {
+                continue;
+            }
+            Map<String,String> fields;
+            String english;
+            String turkish;
+            try
+            {
+                fields = parseObject(line);
+                english = fields.get("en");
+                turkish = fields.get("tr");
+                if(english == null || turkish == null || !english.startsWith("\"") || !turkish.startsWith("\""))
+                {
+                    throw new IllegalArgumentException("\"en\" ve \"tr\" metin olmalı");
+                }
+                english = unquote(english);
+                turkish = unquote(turkish);
+            }
+            catch(IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException(lineNumber + ". satır: " + e.getMessage());
+            }
+            ids.add(fields.get("id"));
+            pairs.add(new SentencePair(pairs.size() + 1, english, turkish));
+        }
+    }
+
+    private static void appendResult(StringBuilder out, String id, ScoredPair pair)
+    {
+        out.append('{');
+        if(id != null)
+        {
+            out.append("\"id\": ").append(id).append(", ");
+        }
+        out.append("\"scored\": ").append(pair.isScored());
+        out.append(", \"kept\": ").append(pair.isKept());
+        if(pair.isScored())
+        {
+            out.append(", \"early\": ").append(pair.isEarly());
+            out.append(", \"duplicate\": ").append(pair.isDuplicate());
+            out.append(", \"features\": ");
+            double[] features = pair.getFeatures();
+            if(features == null)
+            {
+                out.append("null");
+            }
+            else
+            {
+                out.append('{');
+                for(int j = 0; j < features.length; j++)
+                {
+                    out.append(j == 0 ? "\"" : ", \"").append(FeatureExtractor.FEATURE_NAMES[j]).append("\": ");
+                    appendNumber(out, features[j]);
+                }
+                out.append('}');
+            }
+            double[] distribution = pair.getDistribution();
+            out.append(", \"distribution\": {");
+            for(int c = 0; c < CLASS_NAMES.length; c++)
+            {
+                out.append(c == 0 ? "\"" : ", \"").append(CLASS_NAMES[c]).append("\": ");
+                appendNumber(out, distribution[c]);
+            }
+            out.append('}');
+        }
+        out.append("}\n");
+    }
+
+    /** NaN, which an early or missing feature has, is written as null. */
+    private static void appendNumber(StringBuilder out, double value)
+    {
+        if(Double.isNaN(value) || Double.isInfinite(value))
+        {
+            out.append("null");
+        }
+        else
+        {
+            out.append(value);
+        }
+    }
+
+    private static String error(String message)
+    {
+        StringBuilder out = new StringBuilder("{\"error\": ");
+        appendString(out, message);
+        return out.append("}\n").toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads one flat JSON object. Values are kept as their JSON text, so a
+     * string still has its quotes and escapes; nested objects and arrays
+     * are not accepted.
+     */
+    static Map<String,String> parseObject(String text)
+    {
+        Map<String,String> fields = new LinkedHashMap<>();
+        int[] pos = {skipSpace(text, 0)};
+        expect(text, pos, '{');
+        if(peek(text, pos) == '}')
+        {
+            pos[0]++;
+        }
+        else
+        {
+            while(true)
+            {
+                if(peek(text, pos) != '"')
+                {
+                    throw new IllegalArgumentException("alan adı bekleniyordu, konum " + pos[0]);
+                }
+                String name = unquote(readString(text, pos));
+                expect(text, pos, ':');
+                char c = peek(text, pos);
+                String value;
+                if(c == '"')
+                {
+                    value = readString(text, pos);
+                }
+                else if(c == '{' || c == '[')
+                {
+                    throw new IllegalArgumentException("iç içe değerler desteklenmiyor: " + name);
+                }
+                else
+                {
+                    int from = pos[0];
+                    while(pos[0] < text.length() && ",} \t\r\n".indexOf(text.charAt(pos[0])) < 0)
+                    {
+                        pos[0]++;
+                    }
+                    value = text.substring(from, pos[0]);
+                    if(!JSON_LITERAL.matcher(value).matches())
+                    {
+                        throw new IllegalArgumentException("geçersiz değer: " + value);
+                    }
+                }
+                fields.put(name, value);
+                c = peek(text, pos);
+                pos[0]++;
+                if(c == '}')
+                {
+                    break;
+                }
+                if(c != ',')
+                {
+                    throw new IllegalArgumentException("',' veya '}' bekleniyordu, konum " + (pos[0] - 1));
+                }
+                pos[0] = skipSpace(text, pos[0]);
+            }
+        }
+        if(skipSpace(text, pos[0]) != text.length())
+        {
+            throw new IllegalArgumentException("nesneden sonra fazladan metin var");
+        }
+        return fields;
+    }
+
+    private static int skipSpace(String text, int pos)
+    {
+        while(pos < text.length() && " \t\r\n".indexOf(text.charAt(pos)) >= 0)
+        {
+            pos++;
+        }
+        return pos;
+    }
+
+    /** The next character after white space, which is not consumed. */
+    private static char peek(String text, int[] pos)
+    {
+        pos[0] = skipSpace(text, pos[0]);
+        if(pos[0] >= text.length())
+        {
+            throw new IllegalArgumentException("satır erken bitti");
+        }
+        return text.charAt(pos[0]);
+    }
+
+    private static void expect(String text, int[] pos, char c)
+    {
+        if(peek(text, pos) != c)
+        {
+            throw new IllegalArgumentException("'" + c + "' bekleniyordu, konum " + pos[0]);
+        }
+        pos[0]++;
+    }
+
+    /** The quoted string at pos, quotes included. */
+    private static String readString(String text, int[] pos)
+    {
+        int from = pos[0];
+        int i = from + 1;
+        while(i < text.length() && text.charAt(i) != '"')
+        {
+            i += text.charAt(i) == '\\' ? 2 : 1;
+        }
+        if(i >= text.length())
+        {
+            throw new IllegalArgumentException("kapanmamış metin, konum " + from);
+        }
+        pos[0] = i + 1;
+        return text.substring(from, i + 1);
+    }
+
+    /** Decodes a quoted JSON string. */
+    static String unquote(String quoted)
+    {
+        StringBuilder out = new StringBuilder(quoted.length());
+        for(int i = 1; i < quoted.length() - 1; i++)
+        {
+            char c = quoted.charAt(i);
+            if(c != '\\')
+            {
+                out.append(c);
+                continue;
+            }
+            c = quoted.charAt(++i);
+            switch(c)
+            {
+                case '"': case '\\': case '/': out.append(c); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'u':
+                {
+                    if(i + 4 >= quoted.length())
+                    {
+                        throw new IllegalArgumentException("eksik \\u kaçışı");
+                    }
+                    try
+                    {
+                        out.append((char)Integer.parseInt(quoted.substring(i + 1, i + 5), 16));
+                    }
+                    catch(NumberFormatException e)
+                    {
+                        throw new IllegalArgumentException("geçersiz \\u kaçışı: " + quoted.substring(i + 1, i + 5));
+                    }
+                    i += 4;
+                    break;
+                }
+                default: throw new IllegalArgumentException("geçersiz kaçış: \\" + c);
+            }
+        }
+        return out.toString();
+    }
+
+    static void appendString(StringBuilder out, String text)
+    {
+        out.append('"');
+        for(int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if(c == '"' || c == '\\')
+            {
+                out.append('\\').append(c);
+            }
+            else if(c < 0x20)
+            {
+                out.append(String.format("\\u%04x", (int)c));
+            }
+            else
+            {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Load test: sends the pairs of a corpus to a running server from
+     * several client threads, each request carrying --pairs pairs, and
+     * prints the throughput and the request latency percentiles.
+     * Usage: ScoringServer &lt;url&gt; &lt;english_file&gt; &lt;turkish_file&gt;
+     * [--clients N] [--pairs N] [--requests N]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        RunOptions options = RunOptions.parse(args);
+        args = options.getArguments();
+        if(args.length != 3)
+        {
+            System.err.println("Kullanım: ScoringServer <url> <english_file> <turkish_file> [--clients N] [--pairs N] [--requests N]");
+            System.exit(1);
+        }
+        final URL url = new URL(args[0]);
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader english = new BufferedReader(new InputStreamReader(new FileInputStream(args[1]), "UTF-8"));
+             BufferedReader turkish = new BufferedReader(new InputStreamReader(new FileInputStream(args[2]), "UTF-8")))
+        {
+            String en;
+            String tr;
+            while((en = english.readLine()) != null && (tr = turkish.readLine()) != null)
+            {
+                StringBuilder line = new StringBuilder("{\"id\": ").append(lines.size() + 1).append(", \"en\": ");
+                appendString(line, en);
+                line.append(", \"tr\": ");
+                appendString(line, tr);
+                lines.add(line.append("}\n").toString());
+            }
+        }
+        final int clients = options.getInt("clients", 1);
+        final int pairsPerRequest = options.getInt("pairs", 1);
+        final int requests = options.getInt("requests", Math.max(1, lines.size() / pairsPerRequest));
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong next = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        Thread[] threads = new Thread[clients];
+        long start = System.nanoTime();
+        for(int t = 0; t < clients; t++)
+        {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    long r;
+                    while((r = next.getAndIncrement()) < requests)
+                    {
+                        StringBuilder body = new StringBuilder();
+                        for(int i = 0; i < pairsPerRequest; i++)
+                        {
+                            body.append(lines.get((int)((r * pairsPerRequest + i) % lines.size())));
+                        }
+                        try
+                        {
+                            long begin = System.nanoTime();
+                            int status = post(url, body.toString().getBytes(StandardCharsets.UTF_8));
+                            latency.record(System.nanoTime() - begin);
+                            if(status != 200)
+                            {
+                                failed.incrementAndGet();
+                            }
+                        }
+                        catch(IOException e)
+                        {
+                            failed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%d istek (%d başarısız), %d istemci, istek başına %d çift: %.0f istek/s, %.0f çift/s", requests, failed.get(),
+                clients, pairsPerRequest, requests / seconds, (requests - failed.get()) * pairsPerRequest / seconds));
+        System.out.println(String.format(Locale.ROOT, "gecikme ms: ort. %.2f, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, en çok %.2f", latency.getMean() / 1e6,
+                latency.getPercentile(50) / 1e6, latency.getPercentile(90) / 1e6, latency.getPercentile(99) / 1e6, latency.getPercentile(99.9) / 1e6,
+                latency.getMax() / 1e6));
+        System.exit(failed.get() == 0 ? 0 : 1);
+    }
+
+    private static int post(URL url, byte[] body) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/x-ndjson");
+        try (OutputStream out = connection.getOutputStream())
+        {
+            out.write(body);
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if(in != null)
+        {
+            byte[] buffer = new byte[8192];
+            while(in.read(buffer) >= 0)
+            {
+            }
+            in.close();
+        }
+        return status;
+    }
+}
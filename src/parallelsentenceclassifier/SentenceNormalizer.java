@@ -0,0 +1,420 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sentence clean-up used before feature extraction. Produces exactly the
+ * output of the old replaceAll chain in
+ * {@link ParallelSentenceClassifier#initialize(String)}, but the patterns are
+ * compiled once, every rule is skipped with a plain indexOf when the
+ * sentence cannot match it, and matchers and the output buffer are reused.
+ * An instance is therefore not thread-safe; use one per thread.
+ *
+ * @author Eray
+ */
+public class SentenceNormalizer {
+    private static final String TR_LETTER = "[a-zA-ZÜĞİŞÇüğışçöÖ]";
+
+    /**
+     * The rules of the old initialize(), in order. The second column is a
+     * substring every match contains; when the sentence lacks it the rule
+     * cannot change anything and is skipped.
+     */
+    private static final String[][] RULES = {
+        {"(" + TR_LETTER + ")' *(" + TR_LETTER + ")", "'", "$1'$2"},
+        // remove extra spaces
+        {"\\(", "(", " \\("},
+        {"\\)", ")", "\\) "},
+        {" +", "  ", " "},
+        {"\\) ([\\.\\!\\:\\?\\;\\,])", ") ", "\\)$1"},
+        {"\\( ", "( ", "\\("},
+        {" \\)", " )", "\\)"},
+        {"(\\d) \\%", " %", "$1\\%"},
+        {"\\% (\\d)", "% ", "\\%$1"},
+        // normalize unicode punctuation
+        {"„", "„", "\\\""},
+        {"“", "“", "\\\""},
+        {"”", "”", "\\\""},
+        {"–", "–", "-"},
+        {"—", "—", " - "},
+        {" +", "  ", " "},
+        {"´", "´", "\\'"},
+        {"(" + TR_LETTER + ")‘(" + TR_LETTER + ")", "‘", "$1\\'$2"},
+        {"(" + TR_LETTER + ")’(" + TR_LETTER + ")", "’", "$1\\'$2"},
+        {"‘", "‘", ""},
+        {"‚", "‚", ""},
+        {"’", "’", ""},
+        {"''", "''", "\\\""},
+        {"´´", "´´", "\\\""},
+        {"…", "…", "..."},
+        // French quotes
+        {" « ", " « ", " \\\""},
+        {"« ", "« ", "\\\""},
+        {"«", "«", "\\\""},
+        {" » ", " » ", "\\\" "},
+        {" »", " »", "\\\""},
+        {"»", "»", "\\\""},
+        // handle pseudo-spaces
+        {"nº ", "nº ", ""},
+        {" :", " :", ":"},
+        {" \\?", " ?", "\\?"},
+        {" \\!", " !", "\\!"},
+        {" ;", " ;", ";"},
+        {" \\.", " .", "."},
+        {" :", " :", ":"},
+        {" ,", " ,", ","},
+        // (the old ", " -> ", " rule was the identity and is left out)
+        //for subtitles
+        {" \\[ Getty Images \\]$", " [ Getty Images ]", ""},
+        {"\\.([A-ZÜĞİŞÇÖ])", ".", ". $1"},
+        {";([A-Za-züğışçöÜĞİŞÇÖ])", ";", "; $1"},
+        {",([A-Za-züğışçöÜĞİŞÇÖ])", ",", ", $1"},
+        {"\\?([A-Za-züğışçöÜĞİŞÇÖ])", "?", "? $1"},
+        {"\\!([A-Za-züğışçöÜĞİŞÇÖ])", "!", "! $1"},
+        {"\\.\\.+ *\\.\\.+", "..", " "},
+        {"^ *-", "-", ""},
+        {"\\. *[\\[\\(\\{]?\\d*[\\)\\]\\}]?$", ".", "."},
+        // the old "^ *\t* *" rule only removed a prefix that trim() removes anyway
+    };
+
+    private static final Pattern[] PATTERNS = new Pattern[RULES.length];
+    static
+    {
+        for(int i = 0; i < RULES.length; i++)
+        {
+            PATTERNS[i] = Pattern.compile(RULES[i][0]);
+        }
+    }
+    private static final Pattern SPACES = Pattern.compile(" +");
+
+    private static final ThreadLocal<SentenceNormalizer> PER_THREAD = new ThreadLocal<SentenceNormalizer>() {
+        @Override
+        protected SentenceNormalizer initialValue()
+        {
+            return new SentenceNormalizer();
+        }
+    };
+
+    private final Matcher[] matchers = new Matcher[RULES.length];
+    private final Matcher spaces = SPACES.matcher("");
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    public SentenceNormalizer()
+    {
+        for(int i = 0; i < RULES.length; i++)
+        {
+            matchers[i] = PATTERNS[i].matcher("");
+        }
+    }
+
+    /** The calling thread's normalizer. */
+    public static SentenceNormalizer forCurrentThread()
+    {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Same result as the old {@link ParallelSentenceClassifier#initialize(String)}.
+     */
+    public String normalize(String sentence)
+    {
+        // a single unbalanced double quote is dropped
+        int quote = sentence.indexOf('"');
+        if(quote >= 0 && sentence.indexOf('"', quote + 1) < 0)
+        {
+            sentence = sentence.substring(0, quote) + sentence.substring(quote + 1);
+        }
+        for(int i = 0; i < RULES.length; i++)
+        {
+            if(sentence.indexOf(RULES[i][1]) >= 0)
+            {
+                sentence = replace(matchers[i], sentence, RULES[i][2]);
+            }
+        }
+        //spaces
+        sentence = sentence.trim();
+        if(sentence.indexOf("  ") >= 0)
+        {
+            sentence = replace(spaces, sentence, " ");
+        }
+        return sentence;
+    }
+
+    /**
+     * True for the UTF-8 bytes next to which {@link #normalize} may insert a
+     * character: ( ) . ; , ? ! get a space, and 0xE2 starts "…", which
+     * becomes "..." and may get one too. Every other rule keeps or shortens
+     * the text, and a line never has more characters than UTF-8 bytes, so
+     * byte length plus the number of these bytes bounds the normalized
+     * length without decoding the line.
+     */
+    public static boolean mayGrow(byte b)
+    {
+        return b == '(' || b == ')' || b == '.' || b == ';' || b == ',' || b == '?' || b == '!' || b == (byte)0xE2;
+    }
+
+    private String replace(Matcher matcher, String text, String replacement)
+    {
+        matcher.reset(text);
+        if(!matcher.find())
+        {
+            return text;
+        }
+        buffer.setLength(0);
+        do
+        {
+            matcher.appendReplacement(buffer, replacement);
+        }
+        while(matcher.find());
+        matcher.appendTail(buffer);
+        matcher.reset("");
+        return buffer.toString();
+    }
+
+    /**
+     * Prepares an English sentence for the spell checker: digits and
+     * punctuation are removed, capitalized words (names) are dropped and
+     * runs of spaces and tabs become one space. Equivalent to the old regex
+     * chain in the feature loop.
+     */
+    public String forSpellChecker(String sentence)
+    {
+        StringBuilder stripped = buffer;
+        stripped.setLength(0);
+        for(int i = 0; i < sentence.length(); i++)
+        {
+            char c = sentence.charAt(i);
+            if(!((c >= '0' && c <= '9') || ".,;:?!()[]-".indexOf(c) >= 0))
+            {
+                stripped.append(c);
+            }
+        }
+        // " Name..." up to the next space becomes a single space
+        int length = 0;
+        for(int i = 0; i < stripped.length(); length++)
+        {
+            char c = stripped.charAt(i);
+            stripped.setCharAt(length, c);
+            i++;
+            if(c == ' ' && i < stripped.length() && isUpperCaseStart(stripped.charAt(i)))
+            {
+                while(i < stripped.length() && stripped.charAt(i) != ' ')
+                {
+                    i++;
+                }
+            }
+        }
+        stripped.setLength(length);
+        // runs of tabs and spaces become one space
+        length = 0;
+        boolean blank = false;
+        for(int i = 0; i < stripped.length(); i++)
+        {
+            char c = stripped.charAt(i);
+            if(c == ' ' || c == '\t')
+            {
+                if(!blank)
+                {
+                    stripped.setCharAt(length++, ' ');
+                }
+                blank = true;
+            }
+            else
+            {
+                stripped.setCharAt(length++, c);
+                blank = false;
+            }
+        }
+        stripped.setLength(length);
+        return stripped.toString();
+    }
+
+    private static boolean isUpperCaseStart(char c)
+    {
+        return (c >= 'A' && c <= 'Z') || c == 'Ü' || c == 'İ' || c == 'Ş' || c == 'Ç' || c == 'Ö';
+    }
+
+    /**
+     * Removes the punctuation ContentFilter ignores. The English side also
+     * loses double quotes, the Turkish side keeps them.
+     */
+    public static String stripPunctuation(String sentence, boolean english)
+    {
+        StringBuilder result = null;
+        for(int i = 0; i < sentence.length(); i++)
+        {
+            char c = sentence.charAt(i);
+            boolean drop = c == '.' || c == ',' || c == ';' || c == '?' || c == '!' || c == ':' || (english && c == '"');
+            if(drop && result == null)
+            {
+                result = new StringBuilder(sentence.length());
+                result.append(sentence, 0, i);
+            }
+            else if(!drop && result != null)
+            {
+                result.append(c);
+            }
+        }
+        return result == null ? sentence : result.toString();
+    }
+
+    /**
+     * The old initialize() chain, kept as the reference for
+     * {@link #main(String[])} and the benchmarks.
+     */
+    static String legacyNormalize(String sentence)
+    {
+       if(sentence.matches("^[^\\\"]*\\\"[^\\\"]*"))
+        {
+            sentence=sentence.replaceAll("\\\"", "");
+        }
+        sentence=sentence.replaceAll("([a-zA-ZÜĞİŞÇüğışçöÖ])' *([a-zA-ZÜĞİŞÇüğışçöÖ])","$1'$2");
+        sentence=sentence.replaceAll("\\("," \\(");
+        sentence=sentence.replaceAll("\\)","\\) ");
+        sentence=sentence.replaceAll(" +"," ");
+        sentence=sentence.replaceAll("\\) ([\\.\\!\\:\\?\\;\\,])","\\)$1");
+        sentence=sentence.replaceAll("\\( ","\\(");
+        sentence=sentence.replaceAll(" \\)","\\)");
+        sentence=sentence.replaceAll("(\\d) \\%","$1\\%");
+        sentence=sentence.replaceAll("\\% (\\d)","\\%$1");
+        sentence=sentence.replaceAll("„","\\\"");
+        sentence=sentence.replaceAll("“","\\\"");
+        sentence=sentence.replaceAll("”","\\\"");
+        sentence=sentence.replaceAll("–","-");
+        sentence=sentence.replaceAll("—"," - ");
+        sentence=sentence.replaceAll(" +"," ");
+        sentence=sentence.replaceAll("´","\\'");
+        sentence=sentence.replaceAll("([a-zA-ZÜĞİŞÇüğışçöÖ])‘([a-zA-ZÜĞİŞÇüğışçöÖ])","$1\\'$2");
+        sentence=sentence.replaceAll("([a-zA-ZÜĞİŞÇüğışçöÖ])’([a-zA-ZÜĞİŞÇüğışçöÖ])","$1\\'$2");
+        sentence=sentence.replaceAll("‘","");
+        sentence=sentence.replaceAll("‚","");
+        sentence=sentence.replaceAll("’","");
+        sentence=sentence.replaceAll("''","\\\"");
+        sentence=sentence.replaceAll("´´","\\\"");
+        sentence=sentence.replaceAll("…","...");
+        sentence=sentence.replaceAll(" « "," \\\"");
+        sentence=sentence.replaceAll("« ","\\\"");
+        sentence=sentence.replaceAll("«","\\\"");
+        sentence=sentence.replaceAll(" » ","\\\" ");
+        sentence=sentence.replaceAll(" »","\\\"");
+        sentence=sentence.replaceAll("»","\\\"");
+        sentence=sentence.replaceAll("nº ","");
+        sentence=sentence.replaceAll(" :",":");
+        sentence=sentence.replaceAll(" \\?","\\?");
+        sentence=sentence.replaceAll(" \\!","\\!");
+        sentence=sentence.replaceAll(" ;",";");
+        sentence=sentence.replaceAll(" \\.",".");
+        sentence=sentence.replaceAll(" :",":");
+        sentence=sentence.replaceAll(" ,",",");
+        sentence=sentence.replaceAll(", ",", ");
+        sentence=sentence.replaceAll(" \\[ Getty Images \\]$", "");
+        sentence=sentence.replaceAll("\\.([A-ZÜĞİŞÇÖ])",". $1");
+        sentence=sentence.replaceAll(";([A-Za-züğışçöÜĞİŞÇÖ])","; $1");
+        sentence=sentence.replaceAll(",([A-Za-züğışçöÜĞİŞÇÖ])",", $1");
+        sentence=sentence.replaceAll("\\?([A-Za-züğışçöÜĞİŞÇÖ])","? $1");
+        sentence=sentence.replaceAll("\\!([A-Za-züğışçöÜĞİŞÇÖ])","! $1");
+        sentence=sentence.replaceAll("\\.\\.+ *\\.\\.+"," ");
+        sentence=sentence.replaceAll("^ *-", "");
+        sentence=sentence.replaceAll("\\. *[\\[\\(\\{]?\\d*[\\)\\]\\}]?$", ".");
+        sentence=sentence.replaceAll("^ *\t* *", "");
+        sentence=sentence.trim();
+        sentence=sentence.replaceAll(" +"," ");
+        return sentence;
+    }
+
+    /** The old spell checker preparation, reference for {@link #forSpellChecker(String)}. */
+    static String legacyForSpellChecker(String en_sentence)
+    {
+        String en_sentenceforchecker=en_sentence.replaceAll("[\\d\\.,;:\\?!\\(\\)\\[\\]\\-]*", "");
+        en_sentenceforchecker = en_sentenceforchecker.replaceAll(" [A-ZÜİŞÇÖ]+[^ ]*", " ");
+        en_sentenceforchecker = en_sentenceforchecker.replaceAll("([\\(\\[])[A-ZÜİŞÇÖ]+[^ ]*", "$1 ");
+        en_sentenceforchecker=en_sentenceforchecker.replaceAll("\t+", " ");
+        en_sentenceforchecker=en_sentenceforchecker.replaceAll(" +", " ");
+        return en_sentenceforchecker;
+    }
+
+    /**
+     * Golden-file check and timing comparison against the old regex chain.
+     * <pre>
+     * java parallelsentenceclassifier.SentenceNormalizer corpus.txt [golden.txt]
+     * </pre>
+     * Without a golden file every line is compared with the reference chain
+     * above; with one, line n of the output must equal line n of the golden
+     * file (for example the output of a previous release).
+     * testdata/normalizer/corpus.txt and golden.txt are such a pair, made
+     * with the initialize() of the first release; the exit code is 0 when
+     * nothing differs.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        List<String> lines = readLines(new File(args[0]));
+        List<String> golden = args.length > 1 ? readLines(new File(args[1])) : null;
+        SentenceNormalizer normalizer = new SentenceNormalizer();
+        int mismatches = 0;
+        for(int i = 0; i < lines.size(); i++)
+        {
+            String line = lines.get(i);
+            String expected = golden != null ? golden.get(i) : legacyNormalize(line);
+            String actual = normalizer.normalize(line);
+            boolean same = expected.equals(actual);
+            if(golden == null)
+            {
+                same = same && legacyForSpellChecker(expected).equals(normalizer.forSpellChecker(expected));
+            }
+            if(!same)
+            {
+                mismatches++;
+                if(mismatches <= 10)
+                {
+                    System.out.println((i + 1) + ": [" + line + "]\n  beklenen: [" + expected + "]\n  bulunan:  [" + actual + "]");
+                }
+            }
+        }
+        System.out.println(lines.size() + " satır, " + mismatches + " fark.");
+
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(String line : lines)
+            {
+                legacyNormalize(line);
+            }
+            long legacy = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(String line : lines)
+            {
+                normalizer.normalize(line);
+            }
+            long compiled = System.nanoTime() - start;
+            System.out.println(String.format("tur %d: eski %.1f ns/satır, yeni %.1f ns/satır", round + 1,
+                    (double) legacy / lines.size(), (double) compiled / lines.size()));
+        }
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    private static List<String> readLines(File file) throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")))
+        {
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+/**
+ * One aligned English-Turkish line pair as read from the corpus.
+ *
+ * @author Eray
+ */
+public class SentencePair {
+    private final long lineNumber;
+    private final String english;
+    private final String turkish;
+
+    public SentencePair(long lineNumber, String english, String turkish)
+    {
+        this.lineNumber = lineNumber;
+        this.english = english;
+        this.turkish = turkish;
+    }
+
+    /**
+     * A pair the reader already knows the initial filter rejects, handed out
+     * without its text so the line numbers stay continuous.
+     */
+    public static SentencePair rejected(long lineNumber)
+    {
+        return new SentencePair(lineNumber, null, null);
+    }
+
+    /** True for a pair made by {@link #rejected(long)}. */
+    public boolean isRejected()
+    {
+        return english == null;
+    }
+
+    /** 1-based line number in both corpus files. */
+    public long getLineNumber()
+    {
+        return lineNumber;
+    }
+
+    public String getEnglish()
+    {
+        return english;
+    }
+
+    public String getTurkish()
+    {
+        return turkish;
+    }
+}
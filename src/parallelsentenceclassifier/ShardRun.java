@@ -0,0 +1,357 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Runs -test over one slice of the aligned files and makes it resumable.
+ *
+ * A slice is either "--shard k/N", the pairs whose English line starts in
+ * the k-th of N equal byte ranges of the English file, or "--range
+ * start:end", lines start to end (1-based, inclusive, end may be left out).
+ * Its output files carry a suffix (".shard-k-of-N" or ".range-start-end"),
+ * and a manifest &lt;turkish_file&gt;&lt;suffix&gt;.checkpoint records, at
+ * most once per checkpoint interval, the input offsets after the last
+ * written pair together with the output file lengths at that point. The
+ * manifest is replaced by a rename, so it is always complete. A run that
+ * finds a manifest for its slice cuts the outputs back to the recorded
+ * lengths and continues from the recorded offsets; a finished slice is not
+ * run again.
+ *
+ * {@link #merge} joins the outputs of N finished shards, in order, into the
+ * usual output files.
+ *
+ * @author Eray
+ */
+public class ShardRun {
+    private final File englishFile;
+    private final File turkishFile;
+    private final String slice;
+    private final String suffix;
+    private final int shard;
+    private final int shards;
+    private final long firstLine;
+    private final long lastLine;
+    private final File manifest;
+    private final long checkpointNanos;
+    private Properties resumed;
+    private PairSink sink;
+    private boolean finished = false;
+
+    private ShardRun(File englishFile, File turkishFile, String slice, String suffix, int shard, int shards, long firstLine, long lastLine, long checkpointMillis)
+    {
+        this.englishFile = englishFile;
+        this.turkishFile = turkishFile;
+        this.slice = slice;
+        this.suffix = suffix;
+        this.shard = shard;
+        this.shards = shards;
+        this.firstLine = firstLine;
+        this.lastLine = lastLine;
+        this.manifest = new File(turkishFile.getPath() + suffix + ".checkpoint");
+        this.checkpointNanos = checkpointMillis * 1000000L;
+    }
+
+    /**
+     * @return the slice given by --shard or --range, or null for a whole,
+     * non-resumable run
+     */
+    public static ShardRun fromOptions(RunOptions options, File englishFile, File turkishFile)
+    {
+        long checkpointMillis = 1000L * options.getInt("checkpoint-interval", 60);
+        if(options.has("shard") && options.has("range"))
+        {
+            throw new IllegalArgumentException("--shard ve --range birlikte kullanılamaz");
+        }
+        if(options.has("shard"))
+        {
+            String value = options.get("shard", null);
+            String[] parts = value.split("/");
+            int k;
+            int n;
+            try
+            {
+                k = Integer.parseInt(parts[0].trim());
+                n = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : -1;
+            }
+            catch(NumberFormatException e)
+            {
+                n = -1;
+                k = -1;
+            }
+            if(n < 1 || k < 1 || k > n)
+            {
+                throw new IllegalArgumentException("--shard k/N biçiminde olmalı (1 <= k <= N): " + value);
+            }
+            return new ShardRun(englishFile, turkishFile, "shard " + k + "/" + n, shardSuffix(k, n), k, n, 1, Long.MAX_VALUE, checkpointMillis);
+        }
+        if(options.has("range"))
+        {
+            String value = options.get("range", null);
+            int colon = value.indexOf(':');
+            long start;
+            long end;
+            try
+            {
+                start = Long.parseLong(value.substring(0, colon).trim());
+                end = colon == value.length() - 1 ? Long.MAX_VALUE : Long.parseLong(value.substring(colon + 1).trim());
+            }
+            catch(RuntimeException e)
+            {
+                start = -1;
+                end = -1;
+            }
+            if(start < 1 || end < start)
+            {
+                throw new IllegalArgumentException("--range start:end biçiminde olmalı (1 <= start <= end): " + value);
+            }
+            String suffix = ".range-" + start + "-" + (end == Long.MAX_VALUE ? "end" : Long.toString(end));
+            return new ShardRun(englishFile, turkishFile, "range " + value, suffix, 0, 0, start, end, checkpointMillis);
+        }
+        return null;
+    }
+
+    private static String shardSuffix(int k, int n)
+    {
+        int width = Integer.toString(n).length();
+        return String.format(Locale.ROOT, ".shard-%0" + width + "d-of-%d", k, n);
+    }
+
+    /** Added to the output file names. */
+    public String getSuffix()
+    {
+        return suffix;
+    }
+
+    /**
+     * Reads the manifest left by an earlier run of this slice.
+     *
+     * @return false when that run already finished the slice
+     */
+    public boolean loadCheckpoint() throws IOException
+    {
+        if(!manifest.isFile())
+        {
+            return true;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(manifest))
+        {
+            properties.load(in);
+        }
+        if(!slice.equals(properties.getProperty("slice"))
+                || englishFile.length() != Long.parseLong(properties.getProperty("english_size", "-1"))
+                || turkishFile.length() != Long.parseLong(properties.getProperty("turkish_size", "-1")))
+        {
+            throw new IOException("Kayıt dosyası bu girdiye ait değil: " + manifest + " (silip baştan başlatın)");
+        }
+        resumed = properties;
+        return !Boolean.parseBoolean(properties.getProperty("done"));
+    }
+
+    /** Output lengths to resume with, or null for a fresh start. */
+    public long[] getResumeLengths()
+    {
+        if(resumed == null)
+        {
+            return null;
+        }
+        long[] lengths = new long[FilterOutput.FILE_ENDINGS.length];
+        for(int i = 0; i < lengths.length; i++)
+        {
+            lengths[i] = Long.parseLong(resumed.getProperty("output_length." + i));
+        }
+        return lengths;
+    }
+
+    /**
+     * Positions the source at the start of the slice, or where the last
+     * checkpoint left off, and wraps it so that the sink returned by
+     * {@link #getSink} knows the offsets of every written batch.
+     */
+    public PairSource open(final MappedPairSource source, final FilterOutput output)
+    {
+        if(resumed != null)
+        {
+            source.seek(Long.parseLong(resumed.getProperty("english_offset")), Long.parseLong(resumed.getProperty("turkish_offset")),
+                    Long.parseLong(resumed.getProperty("line_number")));
+            System.err.println("Kayıttan devam ediliyor: " + resumed.getProperty("line_number") + ". satırdan sonra.");
+        }
+        else if(shards > 0 && shard > 1)
+        {
+            source.skipToEnglishOffset(boundary(shard - 1));
+        }
+        else if(shards == 0)
+        {
+            source.skipLines(firstLine - 1);
+        }
+        if(shards > 0 && shard < shards)
+        {
+            source.setEnglishEnd(boundary(shard));
+        }
+        source.setLastLine(lastLine);
+        final Deque<long[]> batches = new ArrayDeque<>();
+        final long[] position = {source.getLineNumber(), source.getEnglishOffset(), source.getTurkishOffset()};
+        final long[] lastCheckpoint = {System.nanoTime()};
+        sink = new PairSink() {
+            @Override
+            public void write(ScoredPair pair) throws IOException
+            {
+                output.write(pair);
+                if(!batches.isEmpty() && pair.getLineNumber() == batches.peekFirst()[0])
+                {
+                    long[] done = batches.removeFirst();
+                    System.arraycopy(done, 0, position, 0, position.length);
+                    if(System.nanoTime() - lastCheckpoint[0] >= checkpointNanos)
+                    {
+                        saveCheckpoint(position, output.checkpoint(), false);
+                        lastCheckpoint[0] = System.nanoTime();
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                // after a failure the last periodic checkpoint stays, the
+                // outputs may hold part of a batch beyond it
+                if(finished)
+                {
+                    saveCheckpoint(position, output.checkpoint(), true);
+                }
+                output.close();
+            }
+        };
+        return new PairSource() {
+            @Override
+            public List<SentencePair> nextBatch(int max) throws IOException
+            {
+                List<SentencePair> batch = source.nextBatch(max);
+                if(!batch.isEmpty())
+                {
+                    batches.addLast(new long[] {batch.get(batch.size() - 1).getLineNumber(), source.getEnglishOffset(), source.getTurkishOffset()});
+                }
+                return batch;
+            }
+
+            @Override
+            public long getBytesRead()
+            {
+                return source.getBytesRead();
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                source.close();
+            }
+        };
+    }
+
+    /** Start of the English byte range of shard k + 1 (0-based k). */
+    private long boundary(int k)
+    {
+        long size = englishFile.length();
+        return size / shards * k + Math.min(k, size % shards);
+    }
+
+    /** The sink to hand to the pipeline; closing it writes the final checkpoint. */
+    public PairSink getSink()
+    {
+        return sink;
+    }
+
+    /** Marks the slice as finished, to be recorded when the sink is closed. */
+    public void setFinished()
+    {
+        finished = true;
+    }
+
+    private void saveCheckpoint(long[] position, long[] lengths, boolean done) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("slice", slice);
+        properties.setProperty("english_file", englishFile.getPath());
+        properties.setProperty("turkish_file", turkishFile.getPath());
+        properties.setProperty("english_size", Long.toString(englishFile.length()));
+        properties.setProperty("turkish_size", Long.toString(turkishFile.length()));
+        properties.setProperty("line_number", Long.toString(position[0]));
+        properties.setProperty("english_offset", Long.toString(position[1]));
+        properties.setProperty("turkish_offset", Long.toString(position[2]));
+        for(int i = 0; i < lengths.length; i++)
+        {
+            properties.setProperty("output_length." + i, Long.toString(lengths[i]));
+        }
+        properties.setProperty("done", Boolean.toString(done));
+        File temp = new File(manifest.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp))
+        {
+            properties.store(out, "parallel sentence filter checkpoint");
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Concatenates the outputs of shards 1..N of a corpus into the usual
+     * output files. Every shard must have finished. Compressed shards give a
+     * multi-member gzip file, which gzip reads as one stream.
+     */
+    public static void merge(String englishFile, String turkishFile, int shards) throws IOException
+    {
+        boolean gzip = new File(FilterOutput.fileName(englishFile, 0, shardSuffix(1, shards), true)).isFile();
+        for(int k = 1; k <= shards; k++)
+        {
+            File manifest = new File(turkishFile + shardSuffix(k, shards) + ".checkpoint");
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(manifest))
+            {
+                properties.load(in);
+            }
+            catch(IOException e)
+            {
+                throw new IOException("Parça kaydı okunamadı: " + manifest, e);
+            }
+            if(!Boolean.parseBoolean(properties.getProperty("done")))
+            {
+                throw new IOException("Parça " + k + "/" + shards + " tamamlanmamış: " + manifest);
+            }
+        }
+        byte[] buffer = new byte[1 << 16];
+        for(int file = 0; file < FilterOutput.FILE_ENDINGS.length; file++)
+        {
+            String corpusFile = file == 0 ? englishFile : turkishFile;
+            String target = FilterOutput.fileName(corpusFile, file, "", gzip);
+            try (OutputStream out = new FileOutputStream(target))
+            {
+                for(int k = 1; k <= shards; k++)
+                {
+                    try (InputStream in = new FileInputStream(FilterOutput.fileName(corpusFile, file, shardSuffix(k, shards), gzip)))
+                    {
+                        int n;
+                        while((n = in.read(buffer)) > 0)
+                        {
+                            out.write(buffer, 0, n);
+                        }
+                    }
+                }
+            }
+            System.out.println("Birleştirildi: " + target);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import com.swabunga.spell.engine.Configuration;
+import com.swabunga.spell.engine.SpellDictionary;
+import com.swabunga.spell.engine.SpellDictionaryHashMap;
+import com.swabunga.spell.event.SpellChecker;
+import com.swabunga.spell.event.StringWordTokenizer;
+import com.swabunga.spell.event.TeXWordFinder;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts misspelled words the way {@link JazzySpellChecker} did with a fresh
+ * Jazzy SpellChecker per sentence, without building one. Jazzy's word
+ * tokenizer is still used, but each word is looked up in the dictionary
+ * only once per thread: every thread keeps its own least-recently-used
+ * cache of verdicts, so no locking is needed and frequent words cost a
+ * hash lookup. Jazzy's suggestions, which the feature never used, are not
+ * computed at all.
+ *
+ * The ignore rules (upper case words, words with digits, internet
+ * addresses, mixed case, sentence capitalization) are read once from
+ * Jazzy's configuration, as SpellChecker does. A misspelled word counts
+ * once per sentence, because the old listener told Jazzy to ignore it
+ * afterwards.
+ *
+ * @author Eray
+ */
+public class SpellCheckService {
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+
+    private final SpellDictionary dictionary;
+    private final int cacheSize;
+    private final boolean ignoreUpperCase;
+    private final boolean ignoreMixedCase;
+    private final boolean ignoreDigitWords;
+    private final boolean ignoreInternetAddresses;
+    private final boolean checkCapitalization;
+
+    private final ThreadLocal<Checker> checkers = new ThreadLocal<Checker>() {
+        @Override
+        protected Checker initialValue()
+        {
+            return new Checker();
+        }
+    };
+
+    /**
+     * @param cacheSize verdicts kept per thread
+     */
+    public SpellCheckService(SpellDictionary dictionary, int cacheSize)
+    {
+        this.dictionary = dictionary;
+        this.cacheSize = cacheSize;
+        Configuration config = Configuration.getConfiguration();
+        this.ignoreUpperCase = config.getBoolean(Configuration.SPELL_IGNOREUPPERCASE);
+        this.ignoreMixedCase = config.getBoolean(Configuration.SPELL_IGNOREMIXEDCASE);
+        this.ignoreDigitWords = config.getBoolean(Configuration.SPELL_IGNOREDIGITWORDS);
+        this.ignoreInternetAddresses = config.getBoolean(Configuration.SPELL_IGNOREINTERNETADDRESSES);
+        this.checkCapitalization = !config.getBoolean(Configuration.SPELL_IGNORESENTENCECAPITALIZATION);
+    }
+
+    /**
+     * Loads a word list, one word per line.
+     */
+    public static SpellCheckService load(File wordList) throws IOException
+    {
+        if(wordList.length() == 0)
+        {
+            throw new IOException("Yazım denetimi sözlüğü boş: " + wordList.getAbsolutePath());
+        }
+        return new SpellCheckService(new SpellDictionaryHashMap(wordList), DEFAULT_CACHE_SIZE);
+    }
+
+    public SpellDictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+    /**
+     * Number of misspelled words in text, the wrong_words_count feature.
+     */
+    public int countMisspelledWords(String text)
+    {
+        return checkers.get().count(text);
+    }
+
+    /** State of one thread. */
+    private class Checker {
+        private final Map<String,Boolean> verdicts = new LinkedHashMap<String,Boolean>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Boolean> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+        private final Set<String> counted = new HashSet<>();
+
+        int count(String text)
+        {
+            StringWordTokenizer tokenizer = new StringWordTokenizer(text, new TeXWordFinder());
+            counted.clear();
+            int count = 0;
+            while(tokenizer.hasMoreWords())
+            {
+                String word = tokenizer.nextWord();
+                if(!isCorrect(word))
+                {
+                    if((ignoreMixedCase && isMixedCaseWord(word, tokenizer.isNewSentence())) || (ignoreUpperCase && isUpperCaseWord(word))
+                            || (ignoreDigitWords && isDigitWord(word)) || (ignoreInternetAddresses && SpellChecker.isINETWord(word)))
+                    {
+                        continue;
+                    }
+                    if(counted.add(word))
+                    {
+                        count++;
+                    }
+                }
+                else if(checkCapitalization && tokenizer.isNewSentence() && Character.isLowerCase(word.charAt(0)))
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private boolean isCorrect(String word)
+        {
+            Boolean verdict = verdicts.get(word);
+            if(verdict == null)
+            {
+                verdict = dictionary.isCorrect(word);
+                verdicts.put(word, verdict);
+            }
+            return verdict;
+        }
+    }
+
+    // the word tests below are private in SpellChecker and copied from it
+
+    private static boolean isDigitWord(String word)
+    {
+        for(int i = word.length() - 1; i >= 0; i--)
+        {
+            if(Character.isDigit(word.charAt(i)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUpperCaseWord(String word)
+    {
+        for(int i = word.length() - 1; i >= 0; i--)
+        {
+            if(Character.isLowerCase(word.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMixedCaseWord(String word, boolean startsSentence)
+    {
+        boolean upper = Character.isUpperCase(word.charAt(0));
+        if(startsSentence && upper && word.length() > 1)
+        {
+            upper = Character.isUpperCase(word.charAt(1));
+        }
+        for(int i = word.length() - 1; i > 0; i--)
+        {
+            char c = word.charAt(i);
+            if(upper ? Character.isLowerCase(c) : Character.isUpperCase(c))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the service with {@link JazzySpellChecker} on the English side
+     * of a corpus and times both. Usage: SpellCheckService &lt;word_list&gt;
+     * &lt;english_file&gt;
+     */
+    public static void main(String[] args) throws IOException
+    {
+        SpellCheckService service = load(new File(args[0]));
+        SpellDictionaryHashMap dictionary = (SpellDictionaryHashMap)service.getDictionary();
+        List<String> sentences = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[1]), "UTF-8")))
+        {
+            SentenceNormalizer normalizer = new SentenceNormalizer();
+            String line;
+            while((line = in.readLine()) != null)
+            {
+                sentences.add(normalizer.forSpellChecker(normalizer.normalize(line)));
+            }
+        }
+        int mismatches = 0;
+        for(int i = 0; i < sentences.size(); i++)
+        {
+            int expected = new JazzySpellChecker(dictionary).getMisspelledWords(sentences.get(i)).size();
+            int found = service.countMisspelledWords(sentences.get(i));
+            if(expected != found)
+            {
+                mismatches++;
+                System.out.println((i + 1) + ": [" + sentences.get(i) + "]\n  beklenen: " + expected + "\n  bulunan:  " + found);
+            }
+        }
+        System.out.println(sentences.size() + " satır, " + mismatches + " fark.");
+        long sink = 0;
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(String sentence : sentences)
+            {
+                sink += new JazzySpellChecker(dictionary).getMisspelledWords(sentence).size();
+            }
+            long old = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(String sentence : sentences)
+            {
+                sink += service.countMisspelledWords(sentence);
+            }
+            long now = System.nanoTime() - start;
+            System.out.println(String.format("tur %d: eski %.1f ns/satır, yeni %.1f ns/satır", round + 1, (double) old / sentences.size(), (double) now / sentences.size()));
+        }
+        System.out.println("(" + sink + ")");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
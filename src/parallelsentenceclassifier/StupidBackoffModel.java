@@ -0,0 +1,206 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import edu.berkeley.nlp.lm.ArrayEncodedNgramLanguageModel;
+import edu.berkeley.nlp.lm.io.LmReaders;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stupid backoff (Brants et al. 2007) over an {@link NgramCountStore}, as an
+ * alternative source of the ngram_score feature for count-based resources
+ * such as Web1T5.
+ *
+ * The score follows Berkeley LM's StupidBackoffLm exactly, so a store made
+ * from a Web1T5 directory scores like LmReaders.readLmFromGoogleNgramDir on
+ * the same directory: the longest n-gram ending in the word that is found by
+ * extending it one word at a time to the left gives
+ * ln(count(n-gram) / count(context) * 0.4^(words dropped)), with the unigram
+ * sum as the context of a unigram, and a word with no count gets -100. Note
+ * that this is a natural log score, not a log10 probability; a forest used
+ * with it must be trained on -train output made with the same store.
+ *
+ * Sentences are wrapped in &lt;S&gt; and &lt;/S&gt; (or &lt;s&gt; and
+ * &lt;/s&gt; when the vocabulary has those) and unknown words become
+ * &lt;UNK&gt;.
+ *
+ * @author Eray
+ */
+public class StupidBackoffModel implements LanguageModel {
+    private static final float ALPHA = (float)0.4;
+    /** Berkeley's ConfigOptions.unknownWordLogProb. */
+    private static final float OOV_LOG_PROB = -100.0f;
+
+    private final NgramCountStore store;
+    private final int order;
+    private final int startId;
+    private final int endId;
+    private final int unknownId;
+
+    public StupidBackoffModel(NgramCountStore store)
+    {
+        this.store = store;
+        this.order = store.getOrder();
+        this.startId = symbol("<S>", "<s>");
+        this.endId = symbol("</S>", "</s>");
+        this.unknownId = symbol("<UNK>", "<unk>");
+    }
+
+    public static StupidBackoffModel open(String fileName) throws IOException
+    {
+        return new StupidBackoffModel(NgramCountStore.open(fileName));
+    }
+
+    private int symbol(String web1t5, String arpa)
+    {
+        int id = store.wordId(web1t5);
+        return id >= 0 ? id : store.wordId(arpa);
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return order;
+    }
+
+    public NgramCountStore getStore()
+    {
+        return store;
+    }
+
+    @Override
+    public float scoreSentence(List<String> sentence)
+    {
+        int size = sentence.size();
+        int[] bounded = new int[size + 2];
+        for(int i = 0; i < size; i++)
+        {
+            int id = store.wordId(sentence.get(i));
+            bounded[i + 1] = id < 0 ? unknownId : id;
+        }
+        return scoreBounded(bounded);
+    }
+
+    @Override
+    public float scoreSentence(TokenizedSentence sentence)
+    {
+        int size = sentence.getTokenCount();
+        int[] bounded = new int[size + 2];
+        byte[] bytes = sentence.getUtf8();
+        for(int i = 0; i < size; i++)
+        {
+            int id = store.wordId(bytes, sentence.getUtf8Start(i), sentence.getUtf8End(i));
+            bounded[i + 1] = id < 0 ? unknownId : id;
+        }
+        return scoreBounded(bounded);
+    }
+
+    /** Sums the windows over word ids with room for &lt;s&gt; and &lt;/s&gt; at both ends. */
+    private float scoreBounded(int[] bounded)
+    {
+        int size = bounded.length - 2;
+        bounded[0] = startId;
+        bounded[size + 1] = endId;
+
+        float sentenceScore = 0.0f;
+        for(int i = 1; i < order - 1 && i <= size + 1; ++i)
+        {
+            sentenceScore += getLogProb(bounded, 0, i + 1);
+        }
+        for(int i = order - 1; i < size + 2; ++i)
+        {
+            sentenceScore += getLogProb(bounded, i - order + 1, i + 1);
+        }
+        return sentenceScore;
+    }
+
+    /**
+     * Score of ngram[endPos - 1] given the words before it in [startPos,
+     * endPos). Each longer n-gram is looked up only when the shorter one was
+     * found, as Berkeley does.
+     */
+    public float getLogProb(int[] ngram, int startPos, int endPos)
+    {
+        float score = OOV_LOG_PROB;
+        for(int i = endPos - 1; i >= startPos; --i)
+        {
+            long count = store.getCount(ngram, i, endPos);
+            if(count <= 0)
+            {
+                break;
+            }
+            long context = i == endPos - 1 ? store.getUnigramSum() : store.getCount(ngram, i, endPos - 1);
+            score = (float)Math.log((float)count / (float)context * pow(ALPHA, i - startPos));
+        }
+        return score;
+    }
+
+    private static float pow(float base, int exponent)
+    {
+        float result = 1.0f;
+        for(int i = 0; i < exponent; i++)
+        {
+            result *= base;
+        }
+        return result;
+    }
+
+    /**
+     * Compares the scores with Berkeley LM's StupidBackoffLm read from the
+     * same Web1T5 directory on the sentences of a file, and times both.
+     * Usage: StupidBackoffModel &lt;web1t5_dir&gt; &lt;count_store&gt;
+     * &lt;sentence_file&gt;
+     */
+    public static void main(String[] args) throws IOException
+    {
+        ArrayEncodedNgramLanguageModel<String> berkeley = LmReaders.readLmFromGoogleNgramDir(args[0], false, false);
+        StupidBackoffModel model = open(args[1]);
+        List<List<String>> sentences = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[2]), "UTF-8")))
+        {
+            String line;
+            while((line = in.readLine()) != null)
+            {
+                sentences.add(NgramScore.words(line));
+            }
+        }
+        int mismatches = 0;
+        for(int i = 0; i < sentences.size(); i++)
+        {
+            float expected = berkeley.scoreSentence(sentences.get(i));
+            float found = model.scoreSentence(sentences.get(i));
+            if(Float.floatToIntBits(expected) != Float.floatToIntBits(found))
+            {
+                mismatches++;
+                System.out.println((i + 1) + ": " + sentences.get(i) + "\n  beklenen: " + expected + "\n  bulunan:  " + found);
+            }
+        }
+        System.out.println(sentences.size() + " satır, " + mismatches + " fark.");
+        double sink = 0;
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(List<String> sentence : sentences)
+            {
+                sink += berkeley.scoreSentence(sentence);
+            }
+            long old = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(List<String> sentence : sentences)
+            {
+                sink += model.scoreSentence(sentence);
+            }
+            long now = System.nanoTime() - start;
+            System.out.println(String.format("tur %d: Berkeley %.1f µs/satır, sayım dosyası %.1f µs/satır", round + 1, old / 1e3 / sentences.size(), now / 1e3 / sentences.size()));
+        }
+        System.out.println("(" + sink + ")");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
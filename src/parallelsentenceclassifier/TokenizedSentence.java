@@ -0,0 +1,316 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A normalized sentence split on single spaces once, as token offsets into
+ * one char array, with the views the features need computed from the same
+ * spans instead of splitting the text again for each of them:
+ * <ul>
+ * <li>the word count of ParallelSentenceClassifier.WordCount,</li>
+ * <li>the tokens of sentence.split(" "), which the language model scores,
+ * with their UTF-8 bytes for the memory mapped models,</li>
+ * <li>the coverage keys: each token without the punctuation
+ * SentenceNormalizer.stripPunctuation removes, lowercased as
+ * String.toLowerCase() does, and whether it has a digit or starts with a
+ * capital; the 5 character prefix of a key is a span of the same array.</li>
+ * </ul>
+ * A token count follows String.split: trailing empty tokens are dropped and
+ * an empty text is one empty token. Instances belong to one pair on one
+ * thread.
+ *
+ * @author Eray
+ */
+public class TokenizedSentence {
+    public static final int PREFIX_LENGTH = 5;
+
+    private final String text;
+    private final char[] chars;
+    /** Tokens of text.split(" ", -1). */
+    private final int spanCount;
+    private final int[] starts;
+    private final int[] ends;
+    private final int tokenCount;
+
+    private char[] keys;
+    private final int[] keyStarts;
+    private final int[] keyEnds;
+    private final boolean[] hasDigit;
+    private final boolean[] capitalized;
+    private final int keyCount;
+
+    private byte[] utf8;
+    private int[] utf8Starts;
+    private int[] utf8Ends;
+
+    /**
+     * @param english true for the English side, where stripPunctuation also
+     * removes double quotes
+     */
+    public TokenizedSentence(String text, boolean english)
+    {
+        this.text = text;
+        this.chars = text.toCharArray();
+        int spaces = 0;
+        for(char c : chars)
+        {
+            if(c == ' ')
+            {
+                spaces++;
+            }
+        }
+        this.spanCount = spaces + 1;
+        this.starts = new int[spanCount];
+        this.ends = new int[spanCount];
+        int token = 0;
+        for(int i = 0; i < chars.length; i++)
+        {
+            if(chars[i] == ' ')
+            {
+                ends[token] = i;
+                starts[++token] = i + 1;
+            }
+        }
+        ends[token] = chars.length;
+
+        this.keys = new char[chars.length];
+        this.keyStarts = new int[spanCount];
+        this.keyEnds = new int[spanCount];
+        this.hasDigit = new boolean[spanCount];
+        this.capitalized = new boolean[spanCount];
+        String language = Locale.getDefault().getLanguage();
+        boolean plainLowerCase = !(language.equals("tr") || language.equals("az") || language.equals("lt"));
+        int lastToken = -1;
+        int lastKey = -1;
+        int length = 0;
+        for(int t = 0; t < spanCount; t++)
+        {
+            if(ends[t] > starts[t])
+            {
+                lastToken = t;
+            }
+            keyStarts[t] = length;
+            boolean digit = false;
+            boolean lineBreak = false;
+            boolean simple = plainLowerCase;
+            int first = -1;
+            for(int i = starts[t]; i < ends[t]; i++)
+            {
+                char c = chars[i];
+                if(c == '.' || c == ',' || c == ';' || c == '?' || c == '!' || c == ':' || (english && c == '"'))
+                {
+                    continue;
+                }
+                if(first < 0)
+                {
+                    first = c;
+                }
+                digit |= c >= '0' && c <= '9';
+                lineBreak |= c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+                simple &= c != '\u0130' && c != '\u03a3' && !Character.isSurrogate(c);
+                keys[length++] = c;
+            }
+            if(simple)
+            {
+                for(int i = keyStarts[t]; i < length; i++)
+                {
+                    keys[i] = Character.toLowerCase(keys[i]);
+                }
+            }
+            else
+            {
+                // dotted capital I becomes two chars, a final sigma depends
+                // on its neighbours and tr, az and lt have rules of their own
+                String lower = new String(keys, keyStarts[t], length - keyStarts[t]).toLowerCase();
+                length = keyStarts[t];
+                ensureKeys(length + lower.length() + chars.length - ends[t]);
+                lower.getChars(0, lower.length(), keys, length);
+                length += lower.length();
+            }
+            keyEnds[t] = length;
+            // the old code matched ".*[0-9]+.*" and "^[A-Z].*", where . stops at line breaks
+            hasDigit[t] = digit && !lineBreak;
+            capitalized[t] = first >= 'A' && first <= 'Z' && !lineBreak;
+            if(length > keyStarts[t])
+            {
+                lastKey = t;
+            }
+        }
+        this.tokenCount = chars.length == 0 ? 1 : lastToken + 1;
+        this.keyCount = length == 0 && spanCount == 1 ? 1 : lastKey + 1;
+    }
+
+    private void ensureKeys(int size)
+    {
+        if(size > keys.length)
+        {
+            char[] larger = new char[Math.max(size, 2 * keys.length)];
+            System.arraycopy(keys, 0, larger, 0, keys.length);
+            keys = larger;
+        }
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * Words of the sentence as ParallelSentenceClassifier.WordCount counts
+     * them: the tokens of the trimmed text, plus one unless exact.
+     * @param exact leave out the +1 the feature always had
+     */
+    public int wordCount(boolean exact)
+    {
+        int from = 0;
+        int to = chars.length;
+        while(from < to && chars[from] <= ' ')
+        {
+            from++;
+        }
+        while(to > from && chars[to - 1] <= ' ')
+        {
+            to--;
+        }
+        int count = 1;
+        for(int i = from; i < to; i++)
+        {
+            if(chars[i] == ' ')
+            {
+                count++;
+            }
+        }
+        return exact ? count : count + 1;
+    }
+
+    /** Number of tokens of text.split(" "). */
+    public int getTokenCount()
+    {
+        return tokenCount;
+    }
+
+    /** The tokens of text.split(" "), the words the language model scores. */
+    public List<String> words()
+    {
+        List<String> words = new ArrayList<>(tokenCount);
+        for(int t = 0; t < tokenCount; t++)
+        {
+            words.add(new String(chars, starts[t], ends[t] - starts[t]));
+        }
+        return words;
+    }
+
+    /** UTF-8 bytes of all tokens; token t is [getUtf8Start(t), getUtf8End(t)). */
+    public byte[] getUtf8()
+    {
+        if(utf8 == null)
+        {
+            encodeUtf8();
+        }
+        return utf8;
+    }
+
+    public int getUtf8Start(int token)
+    {
+        getUtf8();
+        return utf8Starts[token];
+    }
+
+    public int getUtf8End(int token)
+    {
+        getUtf8();
+        return utf8Ends[token];
+    }
+
+    /** Encodes as String.getBytes(UTF_8) does, with '?' for a lone surrogate. */
+    private void encodeUtf8()
+    {
+        byte[] bytes = new byte[3 * chars.length];
+        utf8Starts = new int[tokenCount];
+        utf8Ends = new int[tokenCount];
+        int n = 0;
+        for(int t = 0; t < tokenCount; t++)
+        {
+            utf8Starts[t] = n;
+            for(int i = starts[t]; i < ends[t]; i++)
+            {
+                char c = chars[i];
+                if(c < 0x80)
+                {
+                    bytes[n++] = (byte)c;
+                }
+                else if(c < 0x800)
+                {
+                    bytes[n++] = (byte)(0xC0 | (c >> 6));
+                    bytes[n++] = (byte)(0x80 | (c & 0x3F));
+                }
+                else if(Character.isHighSurrogate(c) && i + 1 < ends[t] && Character.isLowSurrogate(chars[i + 1]))
+                {
+                    int codePoint = Character.toCodePoint(c, chars[++i]);
+                    bytes[n++] = (byte)(0xF0 | (codePoint >> 18));
+                    bytes[n++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[n++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[n++] = (byte)(0x80 | (codePoint & 0x3F));
+                }
+                else if(Character.isSurrogate(c))
+                {
+                    bytes[n++] = '?';
+                }
+                else
+                {
+                    bytes[n++] = (byte)(0xE0 | (c >> 12));
+                    bytes[n++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                    bytes[n++] = (byte)(0x80 | (c & 0x3F));
+                }
+            }
+            utf8Ends[t] = n;
+        }
+        utf8 = bytes;
+    }
+
+    /** Number of tokens of stripPunctuation(text).split(" "). */
+    public int getKeyCount()
+    {
+        return keyCount;
+    }
+
+    /** Lowercased coverage keys; key t is [getKeyStart(t), getKeyEnd(t)). */
+    public char[] getKeys()
+    {
+        return keys;
+    }
+
+    public int getKeyStart(int token)
+    {
+        return keyStarts[token];
+    }
+
+    public int getKeyEnd(int token)
+    {
+        return keyEnds[token];
+    }
+
+    /** End of the first {@link #PREFIX_LENGTH} chars of key t. */
+    public int getPrefixEnd(int token)
+    {
+        return Math.min(keyStarts[token] + PREFIX_LENGTH, keyEnds[token]);
+    }
+
+    /** True when key t, before lowercasing, has a digit. */
+    public boolean hasDigit(int token)
+    {
+        return hasDigit[token];
+    }
+
+    /** True when key t, before lowercasing, starts with A-Z. */
+    public boolean isCapitalized(int token)
+    {
+        return capitalized[token];
+    }
+}
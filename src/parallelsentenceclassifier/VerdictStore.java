@@ -0,0 +1,749 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verdicts of earlier -test runs on disk, so that filtering a corpus again
+ * after new text was appended to it scores only the pairs no earlier run has
+ * seen. Pairs are keyed by the {@link DuplicateIndex#hash} of their
+ * normalized sentences, as for --dedup.
+ *
+ * A store is a directory. The verdicts made with one set of resources are in
+ * verdicts-&lt;fingerprint&gt;.log and a matching index, where the
+ * fingerprint is a hash of the contents of the dictionary, language model,
+ * spell checking dictionary, model and cascade files and of the settings
+ * that change a verdict (see {@link #fingerprint}). A run with another model
+ * or dictionary therefore never sees the verdicts of the old one; it gets
+ * files of its own, and going back to the old model finds the old verdicts
+ * again. Reading a language model of several GB for this would undo the
+ * instant start of the memory mapped formats, so the hash of each file is
+ * kept in content-hashes.properties in the directory, under its canonical
+ * path, size and modification time, and a file is only read again when one
+ * of those changes.
+ *
+ * The log is the store: a header with the fingerprint, then one 8-byte
+ * record per pair, the hash with its lowest two bits cleared and the lowest
+ * one set for a kept pair. Records are only appended. The index is an open
+ * addressing table of the same longs with linear probing in a memory mapped
+ * file, so opening a store with 100 million verdicts does not read them
+ * all. It is only a cache of the log: its header records how much of the
+ * log it covers and whether it was closed cleanly, and an index that is
+ * missing, stale or left behind by a crash is rebuilt from the log. A
+ * record of the last few thousand verdicts that was still buffered when a
+ * run crashed is lost, and those pairs are scored again next time. The
+ * table doubles into a new file when it is three quarters full. Two pairs
+ * with the same 62 hash bits would share a verdict; see DuplicateIndex for
+ * the odds.
+ *
+ * While a store is open, the second bit of an index slot marks a verdict
+ * added by this run, so a pair that repeats within the run is told apart
+ * from one an earlier run stored (see {@link #getVerdict}). close() clears
+ * the marks by going over the records this run appended to the log.
+ *
+ * One process at a time may use a store directory; the log is locked while
+ * it is open, so shards of one corpus need directories of their own. All
+ * methods are synchronized.
+ *
+ * @author Eray
+ */
+public class VerdictStore implements Closeable {
+    /**
+     * Part of every fingerprint. Increase it when a change to the
+     * normalization, the features or the classification changes verdicts.
+     */
+    public static final int VERSION = 1;
+
+    /** Added by {@link #getVerdict} to a verdict stored by this run. */
+    public static final int THIS_RUN = 2;
+
+    private static final long LOG_MAGIC = 0x5053435645524431L;   // PSCVERD1
+    private static final long INDEX_MAGIC = 0x5053435649445832L; // PSCVIDX2
+    private static final int LOG_HEADER_SIZE = 16;
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 8;
+    private static final long KEPT_BIT = 1;
+    private static final long RUN_BIT = 2;
+    private static final long HASH_MASK = ~3L;
+    private static final long MIN_SLOTS = 1 << 16;
+    private static final int CHUNK_BITS = 24;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File directory;
+    private final long fingerprint;
+    private final FileChannel log;
+    private final FileLock lock;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long logLength;
+    private long openLength;
+
+    private File indexFile;
+    private FileChannel index;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] tables;
+    private LongBuffer[] chunks;
+    private long slots;
+    private long mask;
+    private long size;
+
+    private long hits = 0;
+    private long repeats = 0;
+    private long added = 0;
+    private boolean closed = false;
+
+    private VerdictStore(File directory, long fingerprint, FileChannel log, FileLock lock)
+    {
+        this.directory = directory;
+        this.fingerprint = fingerprint;
+        this.log = log;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens the verdicts of the given fingerprint in directory, creating
+     * the directory and the files as needed.
+     */
+    public static VerdictStore open(File directory, long fingerprint) throws IOException
+    {
+        if(!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Karar deposu dizini oluşturulamadı: " + directory);
+        }
+        File logFile = new File(directory, String.format("verdicts-%016x.log", fingerprint));
+        FileChannel log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            FileLock lock = log.tryLock();
+            if(lock == null)
+            {
+                throw new IOException("Karar deposunu başka bir işlem kullanıyor: " + logFile);
+            }
+            VerdictStore store = new VerdictStore(directory, fingerprint, log, lock);
+            store.openLog(logFile);
+            store.openIndex();
+            store.openLength = store.logLength;
+            return store;
+        }
+        catch(IOException | RuntimeException e)
+        {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Hash of everything a verdict depends on: {@link #VERSION}, the
+     * settings string and the contents of the files (null entries are
+     * skipped but keep their place). File hashes are cached in directory;
+     * a file rewritten in place with the same size and modification time
+     * is not noticed.
+     */
+    public static long fingerprint(File directory, String settings, File... files) throws IOException
+    {
+        if(!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Karar deposu dizini oluşturulamadı: " + directory);
+        }
+        File cacheFile = new File(directory, "content-hashes.properties");
+        Properties cache = new Properties();
+        if(cacheFile.isFile())
+        {
+            try (InputStream in = new FileInputStream(cacheFile))
+            {
+                cache.load(in);
+            }
+        }
+        boolean changed = false;
+        long h = DuplicateIndex.hash(settings, Integer.toString(VERSION));
+        for(File file : files)
+        {
+            if(file == null)
+            {
+                h = DuplicateIndex.mix(h, -1);
+                continue;
+            }
+            String path = file.getCanonicalPath();
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            String key = attributes.size() + " " + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            String cached = cache.getProperty(path);
+            long contentHash;
+            if(cached != null && cached.startsWith(key + " "))
+            {
+                contentHash = Long.parseUnsignedLong(cached.substring(key.length() + 1), 16);
+            }
+            else
+            {
+                contentHash = contentHash(file);
+                cache.setProperty(path, key + " " + String.format("%016x", contentHash));
+                changed = true;
+            }
+            h = DuplicateIndex.mix(h, contentHash);
+        }
+        if(changed)
+        {
+            File temp = new File(directory, "content-hashes.properties." + ProcessHandle.current().pid() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp))
+            {
+                cache.store(out, "path = size, modification time (ns), content hash");
+            }
+            Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return DuplicateIndex.finish(h);
+    }
+
+    private static long contentHash(File file) throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long h = DuplicateIndex.mix(0, channel.size());
+            while(channel.read(block) >= 0)
+            {
+                block.flip();
+                while(block.remaining() >= 8)
+                {
+                    h = DuplicateIndex.mix(h, block.getLong());
+                }
+                block.compact();
+            }
+            block.flip();
+            long k = 0;
+            while(block.hasRemaining())
+            {
+                k = k << 8 | (block.get() & 0xFF);
+            }
+            return DuplicateIndex.finish(DuplicateIndex.mix(h, k));
+        }
+    }
+
+    private void openLog(File logFile) throws IOException
+    {
+        long length = log.size();
+        ByteBuffer head = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        if(length < LOG_HEADER_SIZE)
+        {
+            head.putLong(LOG_MAGIC).putLong(fingerprint).flip();
+            log.truncate(0);
+            write(head, 0);
+            log.force(false);
+            logLength = LOG_HEADER_SIZE;
+            return;
+        }
+        read(head, 0);
+        if(head.getLong(0) != LOG_MAGIC || head.getLong(8) != fingerprint)
+        {
+            throw new IOException("Karar deposu dosyası değil ya da başka bir parmak izine ait: " + logFile);
+        }
+        // a record cut short by a crash is dropped
+        logLength = length - (length - LOG_HEADER_SIZE) % RECORD_SIZE;
+        if(logLength != length)
+        {
+            log.truncate(logLength);
+        }
+    }
+
+    private File indexFile(long slotCount)
+    {
+        return new File(directory, String.format("verdicts-%016x-%d.index", fingerprint, slotCount));
+    }
+
+    /**
+     * Opens the newest clean index of this fingerprint and adds the records
+     * it does not cover, or builds one from the whole log. Index files left
+     * by a crash or a resize are deleted.
+     */
+    private void openIndex() throws IOException
+    {
+        String prefix = String.format("verdicts-%016x-", fingerprint);
+        File best = null;
+        long bestSlots = 0;
+        long bestCovered = 0;
+        File[] files = directory.listFiles();
+        for(File file : files == null ? new File[0] : files)
+        {
+            String name = file.getName();
+            if(!name.startsWith(prefix) || !name.endsWith(".index"))
+            {
+                continue;
+            }
+            long covered = -1;
+            long slotCount = 0;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+            {
+                ByteBuffer head = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+                if(channel.read(head, 0) == INDEX_HEADER_SIZE)
+                {
+                    slotCount = head.getLong(40);
+                    boolean valid = head.getLong(0) == INDEX_MAGIC && head.getLong(8) == fingerprint && head.getLong(32) == 1
+                            && slotCount >= MIN_SLOTS && Long.bitCount(slotCount) == 1 && channel.size() == INDEX_HEADER_SIZE + 8 * slotCount
+                            && head.getLong(16) >= LOG_HEADER_SIZE && head.getLong(16) <= logLength && head.getLong(24) <= slotCount / 4 * 3;
+                    covered = valid ? head.getLong(16) : -1;
+                }
+            }
+            if(covered >= 0 && slotCount > bestSlots)
+            {
+                if(best != null)
+                {
+                    best.delete();
+                }
+                best = file;
+                bestSlots = slotCount;
+                bestCovered = covered;
+            }
+            else
+            {
+                file.delete();
+            }
+        }
+        if(best == null)
+        {
+            long records = (logLength - LOG_HEADER_SIZE) / RECORD_SIZE;
+            createIndex(Math.max(MIN_SLOTS, Long.highestOneBit(records + records / 3) << 1));
+            replay(LOG_HEADER_SIZE);
+        }
+        else
+        {
+            mapIndex(best, bestSlots, false);
+            size = header.getLong(24);
+            replay(bestCovered);
+        }
+        writeHeader(false);
+    }
+
+    private void createIndex(long slotCount) throws IOException
+    {
+        File file = indexFile(slotCount);
+        file.delete();
+        mapIndex(file, slotCount, true);
+        size = 0;
+    }
+
+    private void mapIndex(File file, long slotCount, boolean create) throws IOException
+    {
+        FileChannel channel = create ? FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int chunkSize = (int)Math.min(slotCount, 1L << CHUNK_BITS);
+        MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[(int)(slotCount / chunkSize)];
+        LongBuffer[] views = new LongBuffer[mapped.length];
+        for(int i = 0; i < mapped.length; i++)
+        {
+            mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, INDEX_HEADER_SIZE + 8L * chunkSize * i, 8L * chunkSize);
+            views[i] = mapped[i].asLongBuffer();
+        }
+        indexFile = file;
+        index = channel;
+        header = head;
+        tables = mapped;
+        chunks = views;
+        slots = slotCount;
+        mask = slotCount - 1;
+    }
+
+    /** Adds the log records from position on to the index. */
+    private void replay(long position) throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocate(1 << 20);
+        while(position < logLength)
+        {
+            block.clear();
+            block.limit((int)Math.min(block.capacity(), logLength - position));
+            read(block, position);
+            position += block.limit();
+            while(block.hasRemaining())
+            {
+                long value = block.getLong();
+                // a crash can leave zeros where records were not written yet
+                if(value != 0)
+                {
+                    insert(key(value) | (value & KEPT_BIT));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param clean true when the index is consistent with the log up to
+     * logLength, false while records may still be added
+     */
+    private void writeHeader(boolean clean)
+    {
+        header.putLong(0, INDEX_MAGIC);
+        header.putLong(8, fingerprint);
+        header.putLong(16, logLength);
+        header.putLong(24, size);
+        header.putLong(32, clean ? 1 : 0);
+        header.putLong(40, slots);
+        header.force();
+    }
+
+    /** The value stored for a hash, without the verdict; never 0, which marks an empty slot. */
+    private static long key(long hash)
+    {
+        long key = hash & HASH_MASK;
+        return key == 0 ? 4 : key;
+    }
+
+    private long get(long slot)
+    {
+        return chunks[(int)(slot >>> CHUNK_BITS)].get((int)(slot & ((1 << CHUNK_BITS) - 1)));
+    }
+
+    private void set(long slot, long value)
+    {
+        chunks[(int)(slot >>> CHUNK_BITS)].put((int)(slot & ((1 << CHUNK_BITS) - 1)), value);
+    }
+
+    /** Slot holding the key, or the empty slot where it would go. */
+    private long find(long key)
+    {
+        long slot = (key >>> 1) & mask;
+        long value;
+        while((value = get(slot)) != 0 && (value & HASH_MASK) != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** @return false when the key of value is already in the index */
+    private boolean insert(long value) throws IOException
+    {
+        if(4 * (size + 1) > 3 * slots)
+        {
+            grow();
+        }
+        long slot = find(value & HASH_MASK);
+        if(get(slot) != 0)
+        {
+            return false;
+        }
+        set(slot, value);
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the table into a file twice the size. The old file is deleted
+     * when the system allows it while it is still mapped, or at the next
+     * open otherwise.
+     */
+    private void grow() throws IOException
+    {
+        LongBuffer[] oldChunks = chunks;
+        long oldSlots = slots;
+        File oldFile = indexFile;
+        FileChannel oldIndex = index;
+        createIndex(2 * oldSlots);
+        int chunkSize = oldChunks[0].capacity();
+        for(LongBuffer chunk : oldChunks)
+        {
+            for(int i = 0; i < chunkSize; i++)
+            {
+                long value = chunk.get(i);
+                if(value != 0)
+                {
+                    set(find(value & HASH_MASK), value);
+                    size++;
+                }
+            }
+        }
+        writeHeader(false);
+        oldIndex.close();
+        oldFile.delete();
+    }
+
+    /**
+     * @return {@link DuplicateIndex#KEPT}, {@link DuplicateIndex#ELIMINATED}
+     * or {@link DuplicateIndex#UNKNOWN}; a verdict this run added has
+     * {@link #THIS_RUN} added to it and counts as a repeat, not as a hit
+     */
+    public synchronized int getVerdict(long hash)
+    {
+        long value = get(find(key(hash)));
+        if(value == 0)
+        {
+            return DuplicateIndex.UNKNOWN;
+        }
+        int verdict = (value & KEPT_BIT) != 0 ? DuplicateIndex.KEPT : DuplicateIndex.ELIMINATED;
+        if((value & RUN_BIT) != 0)
+        {
+            repeats++;
+            return verdict | THIS_RUN;
+        }
+        hits++;
+        return verdict;
+    }
+
+    /** Stores the verdict of a pair scored in this run. */
+    public synchronized void put(long hash, boolean kept) throws IOException
+    {
+        long value = key(hash) | (kept ? KEPT_BIT : 0);
+        if(!insert(value | RUN_BIT))
+        {
+            return;
+        }
+        if(!buffer.hasRemaining())
+        {
+            flushBuffer();
+        }
+        buffer.putLong(value);
+        added++;
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        buffer.flip();
+        write(buffer, logLength);
+        logLength += buffer.limit();
+        buffer.clear();
+    }
+
+    /** Writes the buffered records to the log. */
+    public synchronized void flush() throws IOException
+    {
+        if(buffer.position() > 0)
+        {
+            flushBuffer();
+        }
+    }
+
+    /** Writes the buffered records, syncs both files and releases the directory. */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if(closed)
+        {
+            return;
+        }
+        closed = true;
+        try
+        {
+            flush();
+            log.force(false);
+            clearRunBits();
+            // the table must be on disk before the header says it is clean
+            for(MappedByteBuffer table : tables)
+            {
+                table.force();
+            }
+            writeHeader(true);
+            index.close();
+        }
+        finally
+        {
+            lock.release();
+            log.close();
+        }
+    }
+
+    /** Unmarks the verdicts of this run, found from its records in the log. */
+    private void clearRunBits() throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocate(1 << 20);
+        long position = openLength;
+        while(position < logLength)
+        {
+            block.clear();
+            block.limit((int)Math.min(block.capacity(), logLength - position));
+            read(block, position);
+            position += block.limit();
+            while(block.hasRemaining())
+            {
+                long slot = find(block.getLong() & HASH_MASK);
+                set(slot, get(slot) & ~RUN_BIT);
+            }
+        }
+    }
+
+    private void read(ByteBuffer target, long position) throws IOException
+    {
+        while(target.hasRemaining())
+        {
+            if(log.read(target, position + target.position()) < 0)
+            {
+                throw new IOException("Karar deposu günlüğü beklenenden kısa");
+            }
+        }
+        target.flip();
+    }
+
+    private void write(ByteBuffer source, long position) throws IOException
+    {
+        while(source.hasRemaining())
+        {
+            log.write(source, position + source.position());
+        }
+    }
+
+    /** Verdicts in the store, from this run and earlier ones. */
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    /** Lookups that found a verdict stored by an earlier run. */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /** Lookups that found a verdict this run added: pairs repeated within the run. */
+    public synchronized long getRepeats()
+    {
+        return repeats;
+    }
+
+    /** Verdicts stored in this run. */
+    public synchronized long getAdded()
+    {
+        return added;
+    }
+
+    public long getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * Checks the store against a HashMap on random verdicts: writes them in
+     * two runs, reopens after a clean close, after a run that was not closed
+     * (a crash, which rebuilds the index) and with another fingerprint, and
+     * times lookups. Usage: VerdictStore &lt;scratch_directory&gt; [pairs]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        File directory = new File(args[0]);
+        int pairs = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        File[] old = directory.listFiles();
+        for(File file : old == null ? new File[0] : old)
+        {
+            if(file.getName().startsWith("verdicts-"))
+            {
+                file.delete();
+            }
+        }
+        Random random = new Random(21);
+        long[] hashes = new long[pairs];
+        Map<Long,Boolean> expected = new HashMap<>();
+        for(int i = 0; i < pairs; i++)
+        {
+            hashes[i] = random.nextLong();
+            expected.put(key(hashes[i]), random.nextBoolean());
+        }
+        long fingerprint = 0x1234;
+        int mismatches = 0;
+        // the first run stores half, the second a quarter more, the third the rest and crashes
+        VerdictStore store = open(directory, fingerprint);
+        for(int i = 0; i < pairs / 2; i++)
+        {
+            store.put(hashes[i], expected.get(key(hashes[i])));
+        }
+        store.close();
+        store = open(directory, fingerprint);
+        for(int i = 0; i < pairs; i++)
+        {
+            int verdict = store.getVerdict(hashes[i]);
+            int want = i < pairs / 2 ? (expected.get(key(hashes[i])) ? DuplicateIndex.KEPT : DuplicateIndex.ELIMINATED) : DuplicateIndex.UNKNOWN;
+            if(verdict != want)
+            {
+                mismatches++;
+                System.out.println("2. çalıştırma, " + i + ": beklenen " + want + ", bulunan " + verdict);
+            }
+            if(verdict == DuplicateIndex.UNKNOWN && i < pairs / 4 * 3)
+            {
+                store.put(hashes[i], expected.get(key(hashes[i])));
+                // a repeat within the run is marked as such
+                want = (expected.get(key(hashes[i])) ? DuplicateIndex.KEPT : DuplicateIndex.ELIMINATED) | THIS_RUN;
+                verdict = store.getVerdict(hashes[i]);
+                if(verdict != want)
+                {
+                    mismatches++;
+                    System.out.println("2. çalıştırmada tekrar, " + i + ": beklenen " + want + ", bulunan " + verdict);
+                }
+            }
+        }
+        if(store.getHits() != pairs / 2 || store.getRepeats() != pairs / 4 * 3 - pairs / 2)
+        {
+            mismatches++;
+            System.out.println("2. çalıştırma: " + store.getHits() + " önceki, " + store.getRepeats() + " tekrar");
+        }
+        store.close();
+        store = open(directory, fingerprint);
+        for(int i = pairs / 4 * 3; i < pairs; i++)
+        {
+            store.put(hashes[i], expected.get(key(hashes[i])));
+        }
+        store.flush();
+        store.lock.release();
+        store.log.close();
+        store.index.close();
+        store = open(directory, fingerprint);
+        for(int i = 0; i < pairs; i++)
+        {
+            int verdict = store.getVerdict(hashes[i]);
+            int want = expected.get(key(hashes[i])) ? DuplicateIndex.KEPT : DuplicateIndex.ELIMINATED;
+            if(verdict != want)
+            {
+                mismatches++;
+                System.out.println("çökme sonrası, " + i + ": beklenen " + want + ", bulunan " + verdict);
+            }
+        }
+        store.close();
+        VerdictStore other = open(directory, fingerprint + 1);
+        for(int i = 0; i < pairs; i++)
+        {
+            if(other.getVerdict(hashes[i]) != DuplicateIndex.UNKNOWN)
+            {
+                mismatches++;
+                System.out.println("başka parmak izi, " + i + ": karar bulundu");
+            }
+        }
+        other.close();
+        System.out.println(pairs + " çift, " + mismatches + " fark.");
+        store = open(directory, fingerprint);
+        System.out.println(String.format("depo: %d karar, günlük %d bayt, dizin %d bayt", store.size(), store.logLength, INDEX_HEADER_SIZE + 8 * store.slots));
+        long sink = 0;
+        for(int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            for(long hash : hashes)
+            {
+                sink += expected.get(key(hash)) ? 1 : 0;
+            }
+            long map = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(long hash : hashes)
+            {
+                sink += store.getVerdict(hash);
+            }
+            long now = System.nanoTime() - start;
+            System.out.println(String.format("tur %d: HashMap %.1f ns/çift, depo %.1f ns/çift", round + 1, (double) map / pairs, (double) now / pairs));
+        }
+        store.close();
+        System.out.println("(" + sink + ")");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,600 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package parallelsentenceclassifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offline import of a Web1T5 n-gram count directory (1gms/vocab_cs.gz,
+ * 2gms/2gm-0000.gz, ...) into the memory mapped format read by
+ * {@link NgramCountStore}, the Java counterpart of the SQLite databases made
+ * by Web1T5/perl/mk_vocab_db.perl and mk_ngram_db.perl.
+ *
+ * Only the vocabulary is held in memory. The n-grams of each order are
+ * encoded as word ids and sorted in runs of --sort-buffer n-grams; runs
+ * that do not fit are written to temporary files and merged, so orders of
+ * billions of n-grams need disk space, not heap. An n-gram listed twice
+ * gets the sum of its counts. Words missing from the vocabulary become
+ * &lt;UNK&gt; when the vocabulary has it.
+ *
+ * Usage: Web1T5Converter &lt;web1t5_dir&gt; &lt;count_store&gt; [--max-order N]
+ * [--sort-buffer N] [--temp DIR]
+ *
+ * @author Eray
+ */
+public class Web1T5Converter {
+    private static final String[] VOCABULARY_FILES = {"vocab_cs.gz", "vocab.gz", "vocab_cs", "vocab"};
+    private static final Pattern NGRAM_FILE = Pattern.compile("\\d+gm-\\d+(\\.gz)?");
+
+    private final File directory;
+    private final int sortBuffer;
+    private final File tempDirectory;
+    private String[] words;
+    private long[] unigramCounts;
+    private Map<String,Integer> wordIds;
+    private int unknownId;
+
+    public Web1T5Converter(File directory, int sortBuffer, File tempDirectory)
+    {
+        if(sortBuffer < 1)
+        {
+            throw new IllegalArgumentException("--sort-buffer pozitif olmalı: " + sortBuffer);
+        }
+        this.directory = directory;
+        this.sortBuffer = sortBuffer;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        RunOptions options = RunOptions.parse(args);
+        args = options.getArguments();
+        if(args.length != 2)
+        {
+            System.err.println("Kullanım: Web1T5Converter <web1t5_dir> <count_store> [--max-order N] [--sort-buffer N] [--temp DIR]");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        File temp = new File(options.get("temp", new File(args[1]).getAbsoluteFile().getParent()));
+        Web1T5Converter converter = new Web1T5Converter(new File(args[0]), options.getInt("sort-buffer", 4000000), temp);
+        converter.convert(args[1], options.getInt("max-order", 5));
+        System.err.println("Dönüştürme " + (System.currentTimeMillis() - start) + " ms sürdü.");
+    }
+
+    public void convert(String storeFile, int maxOrder) throws IOException
+    {
+        readVocabulary();
+        List<List<File>> orders = new ArrayList<>();
+        for(int k = 2; k <= maxOrder; k++)
+        {
+            List<File> files = ngramFiles(k);
+            if(files.isEmpty())
+            {
+                break;
+            }
+            orders.add(files);
+        }
+        int order = orders.size() + 1;
+        int vocabularySize = words.length;
+        int headerSize = NgramCountStore.HEADER_SIZE + order * NgramCountStore.ORDER_HEADER_SIZE;
+        try (ArpaConverter.Output out = new ArpaConverter.Output(storeFile, headerSize))
+        {
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.put(NgramCountStore.MAGIC).putInt(NgramCountStore.VERSION).putInt(order).putLong(vocabularySize);
+
+            byte[][] encoded = new byte[vocabularySize][];
+            long wordOffsets = out.position();
+            long offset = 0;
+            out.putLong(0);
+            for(int i = 0; i < vocabularySize; i++)
+            {
+                encoded[i] = words[i].getBytes(StandardCharsets.UTF_8);
+                offset += encoded[i].length;
+                out.putLong(offset);
+            }
+            long wordBytes = out.position();
+            for(int i = 0; i < vocabularySize; i++)
+            {
+                out.put(encoded[i]);
+            }
+            long unigramSum = 0;
+            long maxCount = 0;
+            for(long count : unigramCounts)
+            {
+                unigramSum += count;
+                maxCount = Math.max(maxCount, count);
+            }
+            header.putLong(wordOffsets).putLong(wordBytes).putLong(unigramSum);
+
+            int width = countWidth(maxCount);
+            out.align();
+            long recordsAt = out.position();
+            for(long count : unigramCounts)
+            {
+                putCount(out, count, width);
+            }
+            putOrderHeader(header, vocabularySize, 0, recordsAt, width);
+            System.err.println("1-gram: " + vocabularySize + " kelime, toplam sayım " + unigramSum);
+
+            for(int k = 2; k <= order; k++)
+            {
+                writeOrder(out, header, k, orders.get(k - 2));
+            }
+            out.putHeader(header);
+        }
+    }
+
+    private void readVocabulary() throws IOException
+    {
+        File vocabulary = null;
+        for(String name : VOCABULARY_FILES)
+        {
+            File candidate = new File(new File(directory, "1gms"), name);
+            if(candidate.isFile())
+            {
+                vocabulary = candidate;
+                break;
+            }
+        }
+        if(vocabulary == null)
+        {
+            throw new IOException("Kelime listesi bulunamadı: " + new File(directory, "1gms/vocab_cs.gz"));
+        }
+        final Map<String,Long> counts = new HashMap<>();
+        try (BufferedReader in = open(vocabulary))
+        {
+            String line;
+            long lineNumber = 0;
+            while((line = in.readLine()) != null)
+            {
+                lineNumber++;
+                int tab = line.lastIndexOf('\t');
+                if(tab <= 0)
+                {
+                    throw new IOException("Satır okunamadı, " + vocabulary + " " + lineNumber + ". satır: " + line);
+                }
+                String word = line.substring(0, tab);
+                Long previous = counts.get(word);
+                counts.put(word, (previous == null ? 0 : previous) + parseCount(line.substring(tab + 1), vocabulary, lineNumber));
+            }
+        }
+        if(counts.isEmpty())
+        {
+            throw new IOException("Kelime listesi boş: " + vocabulary);
+        }
+        words = counts.keySet().toArray(new String[counts.size()]);
+        final byte[][] encoded = new byte[words.length][];
+        Integer[] sorted = new Integer[words.length];
+        for(int i = 0; i < words.length; i++)
+        {
+            encoded[i] = words[i].getBytes(StandardCharsets.UTF_8);
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                return ArpaConverter.compareBytes(encoded[a], encoded[b]);
+            }
+        });
+        String[] byRank = new String[words.length];
+        unigramCounts = new long[words.length];
+        wordIds = new HashMap<>(words.length * 2);
+        for(int i = 0; i < words.length; i++)
+        {
+            byRank[i] = words[sorted[i]];
+            unigramCounts[i] = counts.get(byRank[i]);
+            wordIds.put(byRank[i], i);
+        }
+        words = byRank;
+        Integer unknown = wordIds.get("<UNK>");
+        unknownId = unknown == null ? -1 : unknown;
+    }
+
+    private List<File> ngramFiles(int k)
+    {
+        List<File> files = new ArrayList<>();
+        File[] listed = new File(directory, k + "gms").listFiles();
+        if(listed == null)
+        {
+            return files;
+        }
+        for(File file : listed)
+        {
+            if(file.isFile() && NGRAM_FILE.matcher(file.getName()).matches() && file.getName().startsWith(k + "gm-"))
+            {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Reads all n-grams of order k into sorted runs, then merges them twice:
+     * once to size the count field and the first word index, once to write.
+     */
+    private void writeOrder(ArpaConverter.Output out, ByteBuffer header, int k, List<File> files) throws IOException
+    {
+        if((long)sortBuffer * k > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("--sort-buffer çok büyük: " + sortBuffer);
+        }
+        int[] ids = new int[sortBuffer * k];
+        long[] counts = new long[sortBuffer];
+        int n = 0;
+        List<File> runs = new ArrayList<>();
+        try
+        {
+            for(File file : files)
+            {
+                System.err.println(k + "-gram okunuyor: " + file);
+                try (BufferedReader in = open(file))
+                {
+                    String line;
+                    long lineNumber = 0;
+                    while((line = in.readLine()) != null)
+                    {
+                        lineNumber++;
+                        int tab = line.lastIndexOf('\t');
+                        String[] ngram = tab < 0 ? new String[0] : line.substring(0, tab).split(" ");
+                        if(ngram.length != k)
+                        {
+                            throw new IOException("Satır okunamadı, " + file + " " + lineNumber + ". satır: " + line);
+                        }
+                        for(int i = 0; i < k; i++)
+                        {
+                            Integer id = wordIds.get(ngram[i]);
+                            if(id == null && unknownId < 0)
+                            {
+                                throw new IOException("Kelime listesinde yok, " + file + " " + lineNumber + ". satır: " + ngram[i]);
+                            }
+                            ids[n * k + i] = id == null ? unknownId : id;
+                        }
+                        counts[n] = parseCount(line.substring(tab + 1), file, lineNumber);
+                        if(++n == sortBuffer)
+                        {
+                            runs.add(spill(ids, counts, n, k));
+                            n = 0;
+                        }
+                    }
+                }
+            }
+            int[] sorted = null;
+            if(runs.isEmpty())
+            {
+                sorted = sort(ids, k, n);
+            }
+            else if(n > 0)
+            {
+                runs.add(spill(ids, counts, n, k));
+            }
+
+            // first pass: distinct n-grams per first word and the largest count
+            long[] index = new long[words.length + 1];
+            long maxCount = 0;
+            long entries = 0;
+            Merger merger = new Merger(runs, ids, counts, sorted, n, k);
+            while(merger.next())
+            {
+                index[merger.ids[0] + 1]++;
+                maxCount = Math.max(maxCount, merger.count);
+                entries++;
+            }
+            for(int w = 0; w < words.length; w++)
+            {
+                index[w + 1] += index[w];
+            }
+
+            int width = countWidth(maxCount);
+            out.align();
+            long recordsAt = out.position();
+            merger = new Merger(runs, ids, counts, sorted, n, k);
+            while(merger.next())
+            {
+                for(int i = 1; i < k; i++)
+                {
+                    out.putInt(merger.ids[i]);
+                }
+                putCount(out, merger.count, width);
+            }
+            out.align();
+            long indexAt = out.position();
+            for(long start : index)
+            {
+                out.putLong(start);
+            }
+            putOrderHeader(header, entries, indexAt, recordsAt, width);
+            System.err.println(k + "-gram: " + entries + " kayıt, " + Math.max(1, runs.size()) + " sıralı parça, sayım " + width + " bayt");
+        }
+        finally
+        {
+            for(File run : runs)
+            {
+                run.delete();
+            }
+        }
+    }
+
+    /** Writes the first n records, sorted, to a temporary file. */
+    private File spill(int[] ids, long[] counts, int n, int k) throws IOException
+    {
+        int[] sorted = sort(ids, k, n);
+        File run = File.createTempFile("web1t5-" + k + "gm-", ".run", tempDirectory);
+        run.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16)))
+        {
+            for(int r : sorted)
+            {
+                for(int i = 0; i < k; i++)
+                {
+                    out.writeInt(ids[r * k + i]);
+                }
+                out.writeLong(counts[r]);
+            }
+        }
+        return run;
+    }
+
+    /** Record numbers 0..n-1 in the order of their k word ids (merge sort). */
+    static int[] sort(int[] ids, int k, int n)
+    {
+        int[] order = new int[n];
+        for(int i = 0; i < n; i++)
+        {
+            order[i] = i;
+        }
+        int[] buffer = new int[n];
+        for(int width = 1; width < n; width *= 2)
+        {
+            for(int low = 0; low < n - width; low += 2 * width)
+            {
+                int mid = low + width;
+                int high = Math.min(low + 2 * width, n);
+                int a = low;
+                int b = mid;
+                int t = low;
+                while(a < mid && b < high)
+                {
+                    buffer[t++] = compare(ids, order[a] * k, ids, order[b] * k, k) <= 0 ? order[a++] : order[b++];
+                }
+                while(a < mid)
+                {
+                    buffer[t++] = order[a++];
+                }
+                while(b < high)
+                {
+                    buffer[t++] = order[b++];
+                }
+                System.arraycopy(buffer, low, order, low, high - low);
+            }
+        }
+        return order;
+    }
+
+    static int compare(int[] a, int aFrom, int[] b, int bFrom, int k)
+    {
+        for(int i = 0; i < k; i++)
+        {
+            int c = Integer.compare(a[aFrom + i], b[bFrom + i]);
+            if(c != 0)
+            {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static int countWidth(long maxCount)
+    {
+        return maxCount <= 0xFFFFFFFFL ? 4 : 8;
+    }
+
+    private static void putCount(ArpaConverter.Output out, long count, int width) throws IOException
+    {
+        if(width == 4)
+        {
+            out.putInt((int)count);
+        }
+        else
+        {
+            out.putLong(count);
+        }
+    }
+
+    private static void putOrderHeader(ByteBuffer header, long entries, long indexAt, long recordsAt, int width)
+    {
+        header.putLong(entries).putLong(indexAt).putLong(recordsAt).putInt(width).putInt(0);
+    }
+
+    private static long parseCount(String text, File file, long lineNumber) throws IOException
+    {
+        try
+        {
+            long count = Long.parseLong(text.trim());
+            if(count >= 0)
+            {
+                return count;
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            // reported below
+        }
+        throw new IOException("Geçersiz sayım, " + file + " " + lineNumber + ". satır: " + text);
+    }
+
+    private static BufferedReader open(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        if(file.getName().endsWith(".gz"))
+        {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Merges the sorted runs, or the sorted in-memory records when nothing
+     * was spilled, into one stream of distinct n-grams with summed counts.
+     */
+    private static final class Merger {
+        private final PriorityQueue<Run> queue;
+        private final int k;
+        final int[] ids;
+        long count;
+
+        Merger(List<File> runs, int[] memoryIds, long[] memoryCounts, int[] sorted, int n, final int k) throws IOException
+        {
+            this.k = k;
+            this.ids = new int[k];
+            this.queue = new PriorityQueue<>(Math.max(1, runs.size()), new Comparator<Run>() {
+                @Override
+                public int compare(Run a, Run b)
+                {
+                    return Web1T5Converter.compare(a.ids, 0, b.ids, 0, k);
+                }
+            });
+            List<Run> sources = new ArrayList<>();
+            if(runs.isEmpty())
+            {
+                sources.add(new MemoryRun(memoryIds, memoryCounts, sorted, n, k));
+            }
+            for(File run : runs)
+            {
+                sources.add(new FileRun(run, k));
+            }
+            for(Run run : sources)
+            {
+                if(run.next())
+                {
+                    queue.add(run);
+                }
+            }
+        }
+
+        boolean next() throws IOException
+        {
+            if(queue.isEmpty())
+            {
+                return false;
+            }
+            Run run = queue.poll();
+            System.arraycopy(run.ids, 0, ids, 0, k);
+            count = run.count;
+            advance(run);
+            while(!queue.isEmpty() && compare(queue.peek().ids, 0, ids, 0, k) == 0)
+            {
+                run = queue.poll();
+                count += run.count;
+                advance(run);
+            }
+            return true;
+        }
+
+        private void advance(Run run) throws IOException
+        {
+            if(run.next())
+            {
+                queue.add(run);
+            }
+        }
+    }
+
+    private abstract static class Run {
+        final int[] ids;
+        long count;
+
+        Run(int k)
+        {
+            this.ids = new int[k];
+        }
+
+        /** Moves to the next record; closes the run at the end. */
+        abstract boolean next() throws IOException;
+    }
+
+    private static final class MemoryRun extends Run {
+        private final int[] memoryIds;
+        private final long[] memoryCounts;
+        private final int[] sorted;
+        private final int n;
+        private int position = 0;
+
+        MemoryRun(int[] memoryIds, long[] memoryCounts, int[] sorted, int n, int k)
+        {
+            super(k);
+            this.memoryIds = memoryIds;
+            this.memoryCounts = memoryCounts;
+            this.sorted = sorted;
+            this.n = n;
+        }
+
+        @Override
+        boolean next()
+        {
+            if(position == n)
+            {
+                return false;
+            }
+            int r = sorted[position++];
+            System.arraycopy(memoryIds, r * ids.length, ids, 0, ids.length);
+            count = memoryCounts[r];
+            return true;
+        }
+    }
+
+    private static final class FileRun extends Run {
+        private final DataInputStream in;
+
+        FileRun(File file, int k) throws IOException
+        {
+            super(k);
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        @Override
+        boolean next() throws IOException
+        {
+            try
+            {
+                for(int i = 0; i < ids.length; i++)
+                {
+                    ids[i] = in.readInt();
+                }
+                count = in.readLong();
+                return true;
+            }
+            catch(EOFException e)
+            {
+                in.close();
+                return false;
+            }
+        }
+    }
+}